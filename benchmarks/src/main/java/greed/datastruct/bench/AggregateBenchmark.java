@@ -0,0 +1,105 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.Monoid;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sum of the values of a key range: aggregateRange on an {@link AVLTree} initialized with {@link Monoid#SUM}, against
+ * the old way of listing the range with searchRange and summing the boxed keys, and against forEachInRange.
+ * insertDelete prices keeping the folds up to date, against the same pair on a plain tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class AggregateBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Number of keys in each range.
+     */
+    @Param({"16", "1024", "65536"})
+    public int rangeKeys;
+
+    private AVLTree plainTree;
+    private AVLTree sumTree;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = KeyDistribution.RANDOM.insertionOrder(size, random);
+        plainTree = AVLTree.initialize();
+        sumTree = AVLTree.initialize(Monoid.SUM);
+        for (int key : keys) {
+            plainTree.insert(key);
+            sumTree.insert(key);
+        }
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, random);
+    }
+
+    private int nextProbe() {
+        return probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    @Benchmark
+    public long aggregateRange() {
+        int lo = nextProbe();
+        return sumTree.aggregateRange(lo, lo + 2 * (rangeKeys - 1));
+    }
+
+    @Benchmark
+    public long searchRangeSum() {
+        int lo = nextProbe();
+        long sum = 0;
+        for (Integer key : plainTree.searchRange(lo, lo + 2 * (rangeKeys - 1))) {
+            sum += key;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long forEachInRangeSum() {
+        int lo = nextProbe();
+        long[] sum = new long[1];
+        plainTree.forEachInRange(lo, lo + 2 * (rangeKeys - 1), key -> sum[0] += key);
+        return sum[0];
+    }
+
+    /**
+     * Insert of an absent (odd) key followed by its delete.
+     */
+    @Benchmark
+    public void insertDeletePlain() {
+        int key = nextProbe() + 1;
+        plainTree.insert(key);
+        plainTree.delete(key);
+    }
+
+    @Benchmark
+    public void insertDeleteSum() {
+        int key = nextProbe() + 1;
+        sumTree.insert(key);
+        sumTree.delete(key);
+    }
+}
@@ -0,0 +1,114 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.TreeListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Strict AVL against WAVL balancing on churn-heavy traces, a tree of {@link #size} keys that keeps its size:
+ * RANDOM deletes a random key if present and inserts it otherwise, SLIDING inserts the key after the greatest and
+ * deletes the smallest, like a time window. The timed step runs without a listener, whose clock reads would dominate;
+ * the rotations per step of the same trace are counted on a separate tree at set up and printed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BalancingBenchmark {
+
+    public enum Trace {
+        RANDOM, SLIDING
+    }
+
+    /**
+     * Steps replayed to count the rotations.
+     */
+    private static final int COUNTED_STEPS = 1 << 20;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"RANDOM", "SLIDING"})
+    public Trace trace;
+
+    @Param({"AVL", "WAVL"})
+    public AVLTree.Balancing balancing;
+
+    private AVLTree tree;
+    private int[] probes;
+    private int cursor;
+    private int low;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // rotations, then height reported by the last delete.
+        int[] counts = new int[2];
+        AVLTree counted = build();
+        counted.setListener(new TreeListener() {
+            @Override
+            public void onRotation(Rotation rotation) {
+                counts[0] += switch (rotation) {
+                    case LR, RL, L1, R_MINUS_1 -> 2;
+                    default -> 1;
+                };
+            }
+
+            @Override
+            public void onDelete(boolean deleted, int pathLength, int height, long nanos) {
+                counts[1] = height;
+            }
+        });
+        for (int i = 0; i < COUNTED_STEPS; i++) {
+            step(counted);
+        }
+        System.out.printf("%n%s %s: %.4f rotations per step, height %d%n", trace, balancing,
+                counts[0] / (double) COUNTED_STEPS, counts[1]);
+        tree = build();
+    }
+
+    private AVLTree build() {
+        Random random = new Random(TreeFixture.SEED);
+        AVLTree built = AVLTree.initialize(balancing);
+        for (int key : KeyDistribution.RANDOM.insertionOrder(size, random)) {
+            // SLIDING keeps the keys low .. low + size - 1.
+            built.insert(trace == Trace.SLIDING ? key / 2 : key);
+        }
+        probes = new int[TreeFixture.PROBES];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(2 * size);
+        }
+        cursor = 0;
+        low = 0;
+        return built;
+    }
+
+    private boolean step(AVLTree target) {
+        if (trace == Trace.SLIDING) {
+            target.insert(low + size);
+            return target.delete(low++);
+        }
+        int key = probes[cursor++ & TreeFixture.PROBE_MASK];
+        return target.delete(key) || target.insert(key);
+    }
+
+    @Benchmark
+    public boolean churn() {
+        return step(tree);
+    }
+}
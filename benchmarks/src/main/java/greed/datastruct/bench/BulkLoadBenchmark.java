@@ -0,0 +1,85 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a snapshot of sorted keys, and merging a shuffled batch into an existing tree,
+ * with single inserts against {@link AVLTree#fromSorted(int[])} and {@link AVLTree#bulkInsert(int[])}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class BulkLoadBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private int[] sortedKeys;
+    // even keys of the tree, in a tree of half the size.
+    private int[] baseKeys;
+    // odd keys, shuffled.
+    private int[] batch;
+    private AVLTree base;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        sortedKeys = KeyDistribution.SEQUENTIAL.insertionOrder(size, new Random(TreeFixture.SEED));
+        baseKeys = Arrays.copyOf(sortedKeys, size / 2);
+        batch = KeyDistribution.RANDOM.insertionOrder(size / 2, new Random(TreeFixture.SEED));
+        for (int i = 0; i < batch.length; i++) {
+            batch[i]++;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTree() {
+        base = AVLTree.fromSorted(baseKeys);
+    }
+
+    @Benchmark
+    public AVLTree insertSorted() {
+        AVLTree tree = AVLTree.initialize();
+        for (int key : sortedKeys) {
+            tree.insert(key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public AVLTree fromSorted() {
+        return AVLTree.fromSorted(sortedKeys);
+    }
+
+    @Benchmark
+    public AVLTree mergeWithInserts() {
+        for (int key : batch) {
+            base.insert(key);
+        }
+        return base;
+    }
+
+    @Benchmark
+    public AVLTree mergeWithBulkInsert() {
+        base.bulkInsert(batch);
+        return base;
+    }
+}
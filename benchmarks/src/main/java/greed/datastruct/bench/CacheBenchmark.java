@@ -0,0 +1,78 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.CachedAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups on an {@link AVLTree} with and without a {@link CachedAVLTree} hot-key cache in front of it.
+ * Zipf probes are the case the cache is for, random probes show what it costs when it cannot help.
+ * The probe stream is much longer than the usual {@link TreeFixture#PROBES}, a stream that fits in the cache would
+ * hit every time. The hit ratio of the trial is printed at tear down.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class CacheBenchmark {
+
+    private static final int PROBES = 1 << 22;
+    private static final int PROBE_MASK = PROBES - 1;
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"ZIPF", "RANDOM"})
+    public KeyDistribution distribution;
+
+    @Param({"4096", "65536"})
+    public int cacheCapacity;
+
+    private AVLTree tree;
+    private CachedAVLTree cachedTree;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = distribution.insertionOrder(size, random);
+        probes = distribution.probes(keys, PROBES, random);
+        // both trees have the same shape, only the cache differs.
+        int[] sortedKeys = KeyDistribution.SEQUENTIAL.insertionOrder(size, random);
+        tree = AVLTree.fromSorted(sortedKeys);
+        cachedTree = CachedAVLTree.of(AVLTree.fromSorted(sortedKeys), cacheCapacity);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nhit ratio %.3f%n", cachedTree.getHitRatio());
+    }
+
+    @Benchmark
+    public boolean uncached() {
+        return tree.contains(probes[cursor++ & PROBE_MASK]);
+    }
+
+    @Benchmark
+    public boolean cached() {
+        return cachedTree.contains(probes[cursor++ & PROBE_MASK]);
+    }
+}
@@ -0,0 +1,141 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.ConcurrentAVLTree;
+import greed.datastruct.PersistentAVLTree;
+import greed.datastruct.VersionedAVLTree;
+import greed.datastruct.common.SearchTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded throughput of {@link ConcurrentAVLTree} and {@link VersionedAVLTree} against an {@link AVLTree}
+ * behind one coarse lock.
+ * readOnly runs on all cores, readWrite runs readers next to a single writer (change the split with -tg).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentTreeBenchmark {
+
+    /**
+     * Locking strategies under benchmark.
+     */
+    public enum Locking {
+        COARSE, OPTIMISTIC, PERSISTENT
+    }
+
+    /**
+     * {@link AVLTree} with every operation serialised on one monitor, the way callers shared it so far.
+     */
+    static final class CoarseLockedTree implements SearchTree {
+        private final AVLTree tree;
+
+        CoarseLockedTree(AVLTree tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public synchronized boolean insert(int key) {
+            return tree.insert(key);
+        }
+
+        @Override
+        public synchronized boolean delete(int key) {
+            return tree.delete(key);
+        }
+
+        @Override
+        public synchronized Integer search(int key) {
+            return tree.search(key);
+        }
+
+        @Override
+        public synchronized List<Integer> searchRange(int smallKey, int bigKey) {
+            return tree.searchRange(smallKey, bigKey);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedTree {
+
+        @Param({"100000", "1000000"})
+        public int size;
+
+        @Param({"COARSE", "OPTIMISTIC", "PERSISTENT"})
+        public Locking locking;
+
+        public SearchTree tree;
+        public int[] probes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int[] keys = KeyDistribution.SEQUENTIAL.insertionOrder(size, new Random(TreeFixture.SEED));
+            tree = switch (locking) {
+                case COARSE -> new CoarseLockedTree(AVLTree.fromSorted(keys));
+                case OPTIMISTIC -> ConcurrentAVLTree.of(AVLTree.fromSorted(keys));
+                case PERSISTENT -> VersionedAVLTree.of(PersistentAVLTree.fromSorted(keys));
+            };
+            probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, new Random(TreeFixture.SEED));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // threads start at different places of the probe ring.
+            next = (int) (Thread.currentThread().getId() * 7919);
+        }
+
+        int nextProbe(SharedTree shared) {
+            return shared.probes[next++ & TreeFixture.PROBE_MASK];
+        }
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Integer readOnly(SharedTree shared, Cursor cursor) {
+        return shared.tree.search(cursor.nextProbe(shared));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Integer reader(SharedTree shared, Cursor cursor) {
+        return shared.tree.search(cursor.nextProbe(shared));
+    }
+
+    /**
+     * Inserts an absent (odd) key and deletes it again, so the tree keeps its size.
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public boolean writer(SharedTree shared, Cursor cursor) {
+        int key = cursor.nextProbe(shared) + 1;
+        shared.tree.insert(key);
+        return shared.tree.delete(key);
+    }
+}
@@ -0,0 +1,89 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.DurableAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Insert throughput of a {@link DurableAVLTree} for each durability setting, against an in-memory {@link AVLTree}.
+ * Every insert adds a new key, so every insert is logged. Checkpoints are off, only the log is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class DurabilityBenchmark {
+
+    /**
+     * Least time between two forces of the log: -1 never forces, 0 forces every group commit.
+     */
+    @Param({"-1", "10", "0"})
+    public long forceIntervalMillis;
+
+    @Param({"1", "256"})
+    public int groupCommitSize;
+
+    private Path directory;
+    private DurableAVLTree durable;
+    private AVLTree inMemory;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("avltree-wal-bench");
+        durable = DurableAVLTree.open(directory, groupCommitSize, forceIntervalMillis, 0);
+        inMemory = AVLTree.initialize();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        durable.close();
+        deleteRecursively(directory);
+    }
+
+    /**
+     * Distinct keys in scattered order, multiplying by an odd constant is a bijection on int.
+     */
+    private int nextKey() {
+        return counter++ * 0x9E3779B9;
+    }
+
+    @Benchmark
+    public boolean durableInsert() {
+        return durable.insert(nextKey());
+    }
+
+    @Benchmark
+    public boolean inMemoryInsert() {
+        return inMemory.insert(nextKey());
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
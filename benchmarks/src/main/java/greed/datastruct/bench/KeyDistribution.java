@@ -0,0 +1,90 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.ZipfSampler;
+
+import java.util.Random;
+
+/**
+ * Key streams used by the benchmarks. A tree of size n always holds the even keys 0, 2, .., 2(n-1),
+ * so odd keys are guaranteed misses and can be inserted and deleted again without changing the tree size.
+ * The distribution decides both the insertion order of the tree and the order of the probe keys.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Ascending insertion order and ascending probes (snapshot dumps, time series).
+     */
+    SEQUENTIAL,
+
+    /**
+     * Shuffled insertion order and uniformly random probes.
+     */
+    RANDOM,
+
+    /**
+     * Shuffled insertion order and Zipf(0.99) skewed probes, the hottest keys being scattered over the key space.
+     */
+    ZIPF;
+
+    /**
+     * Skew used by {@link #ZIPF}.
+     */
+    public static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * Order in which the keys of a tree of the given size are inserted.
+     *
+     * @param size   number of keys in the tree.
+     * @param random source of randomness.
+     * @return keys in insertion order.
+     */
+    public int[] insertionOrder(int size, Random random) {
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = 2 * i;
+        }
+        if (this != SEQUENTIAL) {
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = tmp;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Probe keys for a tree built from the given insertion order. All probes are keys present in the tree.
+     *
+     * @param insertionOrder keys of the tree as returned by {@link #insertionOrder(int, Random)}.
+     * @param count          number of probes to generate.
+     * @param random         source of randomness.
+     * @return probe keys.
+     */
+    public int[] probes(int[] insertionOrder, int count, Random random) {
+        int size = insertionOrder.length;
+        int[] probes = new int[count];
+        switch (this) {
+            case SEQUENTIAL -> {
+                int start = random.nextInt(size);
+                for (int i = 0; i < count; i++) {
+                    probes[i] = 2 * ((start + i) % size);
+                }
+            }
+            case RANDOM -> {
+                for (int i = 0; i < count; i++) {
+                    probes[i] = 2 * random.nextInt(size);
+                }
+            }
+            case ZIPF -> {
+                // the insertion order is a random permutation, so it maps ranks to scattered keys.
+                ZipfSampler sampler = new ZipfSampler(size, ZIPF_EXPONENT);
+                for (int i = 0; i < count; i++) {
+                    probes[i] = insertionOrder[sampler.sample(random) - 1];
+                }
+            }
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,99 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLMap;
+import greed.datastruct.AVLTree;
+import greed.datastruct.LongAVLMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The int tree ({@link AVLTree}) against the long specialisation ({@link LongAVLMap}) and the generic
+ * {@link AVLMap} with boxed Integer keys, on the same random keys. Searches, and a delete plus an insert of the same
+ * key so the size stays constant.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class KeyTypeBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private AVLTree intTree;
+    private LongAVLMap<Boolean> longMap;
+    private AVLMap<Integer, Boolean> genericMap;
+    private int[] probes;
+    private Integer[] boxedProbes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = KeyDistribution.RANDOM.insertionOrder(size, random);
+        intTree = AVLTree.initialize();
+        longMap = LongAVLMap.initialize();
+        genericMap = AVLMap.initialize();
+        for (int key : keys) {
+            intTree.insert(key);
+            longMap.put(key, Boolean.TRUE);
+            genericMap.put(key, Boolean.TRUE);
+        }
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, random);
+        // boxed once up front, so the generic map is not charged for boxing the probes.
+        boxedProbes = new Integer[probes.length];
+        for (int i = 0; i < probes.length; i++) {
+            boxedProbes[i] = probes[i];
+        }
+    }
+
+    @Benchmark
+    public boolean searchInt() {
+        return intTree.contains(probes[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    @Benchmark
+    public boolean searchLong() {
+        return longMap.containsKey(probes[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    @Benchmark
+    public boolean searchGeneric() {
+        return genericMap.containsKey(boxedProbes[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    @Benchmark
+    public boolean deleteInsertInt() {
+        int key = probes[cursor++ & TreeFixture.PROBE_MASK];
+        return intTree.delete(key) & intTree.insert(key);
+    }
+
+    @Benchmark
+    public Boolean deleteInsertLong() {
+        int key = probes[cursor++ & TreeFixture.PROBE_MASK];
+        longMap.remove(key);
+        return longMap.put(key, Boolean.TRUE);
+    }
+
+    @Benchmark
+    public Boolean deleteInsertGeneric() {
+        Integer key = boxedProbes[cursor++ & TreeFixture.PROBE_MASK];
+        genericMap.remove(key);
+        return genericMap.put(key, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,69 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups on an {@link AVLTree}: search, contains, and toString on a small tree.
+ * Small trees stay in cache, so the cost of the walk itself (calls, inlining) dominates there.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class LookupBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private AVLTree tree;
+    private AVLTree smallTree;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = KeyDistribution.RANDOM.insertionOrder(size, random);
+        tree = AVLTree.initialize();
+        for (int key : keys) {
+            tree.insert(key);
+        }
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, random);
+        smallTree = AVLTree.fromSorted(KeyDistribution.SEQUENTIAL.insertionOrder(1000, random));
+    }
+
+    @Benchmark
+    public Integer search() {
+        return tree.search(probes[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        return tree.contains(probes[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    /**
+     * Pre-order rendering of a 1000 key tree, independent of the size parameter.
+     */
+    @Benchmark
+    public String toStringSmall() {
+        return smallTree.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.TreeListener;
+import greed.datastruct.TreeMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of observing an {@link AVLTree}: no listener, a listener that ignores every callback, and {@link TreeMetrics}.
+ * NONE is the case that must match an AVL tree without the listener hooks (compare with {@link TreeOpsBenchmark}),
+ * NOOP prices the clock reads and METRICS the histograms on top. The metrics of the trial are printed at tear down.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class MetricsBenchmark {
+
+    public enum Listener {
+        NONE, NOOP, METRICS
+    }
+
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"RANDOM"})
+    public KeyDistribution distribution;
+
+    @Param({"NONE", "NOOP", "METRICS"})
+    public Listener listener;
+
+    private AVLTree tree;
+    private TreeMetrics metrics;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = distribution.insertionOrder(size, random);
+        tree = AVLTree.initialize();
+        for (int key : keys) {
+            tree.insert(key);
+        }
+        probes = distribution.probes(keys, TreeFixture.PROBES, random);
+        metrics = new TreeMetrics();
+        switch (listener) {
+            case NONE -> tree.setListener(null);
+            case NOOP -> tree.setListener(new TreeListener() { });
+            case METRICS -> tree.setListener(metrics);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (listener == Listener.METRICS) {
+            System.out.printf("%n%s%n", metrics.snapshot());
+        }
+    }
+
+    private int nextProbe() {
+        return probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    @Benchmark
+    public Integer searchHit() {
+        return tree.search(nextProbe());
+    }
+
+    /**
+     * Insert of an absent (odd) key followed by its delete.
+     */
+    @Benchmark
+    public void insertDelete() {
+        int key = nextProbe() + 1;
+        tree.insert(key);
+        tree.delete(key);
+    }
+}
@@ -0,0 +1,67 @@
+package greed.datastruct.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixed read/write throughput. Reads are point searches, writes alternate between inserting an absent key
+ * and deleting it again, so the tree size stays stable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class MixedWorkloadBenchmark {
+
+    /**
+     * Percentage of operations that are reads.
+     */
+    @Param({"50", "90", "99"})
+    public int readPercent;
+
+    private boolean[] isRead;
+    private int cursor;
+    private int pendingKey;
+    private boolean pending;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED + readPercent);
+        isRead = new boolean[TreeFixture.PROBES];
+        for (int i = 0; i < isRead.length; i++) {
+            isRead[i] = random.nextInt(100) < readPercent;
+        }
+    }
+
+    @Benchmark
+    public Integer mixed(TreeFixture fixture) {
+        int i = cursor++ & TreeFixture.PROBE_MASK;
+        int key = fixture.probes[i];
+        if (isRead[i]) {
+            return fixture.tree.search(key);
+        }
+        if (pending) {
+            fixture.tree.delete(pendingKey);
+        } else {
+            pendingKey = key + 1;
+            fixture.tree.insert(pendingKey);
+        }
+        pending = !pending;
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting repeated keys of a Zipf event stream: an {@link AVLTree} multiset against a TreeMap from key to boxed count.
+ * Every key of the tree already has a few occurrences, so an insert only bumps a count; it is paired with a removeOne
+ * of the same key to keep the multiset at a constant size. countRange sums the occurrences of 64 consecutive keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class MultisetBenchmark {
+
+    private static final int OCCURRENCES = 4;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private AVLTree multiset;
+    private TreeMap<Integer, Integer> counts;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        int[] keys = KeyDistribution.ZIPF.insertionOrder(size, random);
+        multiset = AVLTree.initializeMultiset();
+        counts = new TreeMap<>();
+        for (int i = 0; i < OCCURRENCES; i++) {
+            for (int key : keys) {
+                multiset.insert(key);
+                counts.merge(key, 1, Integer::sum);
+            }
+        }
+        probes = KeyDistribution.ZIPF.probes(keys, TreeFixture.PROBES, random);
+    }
+
+    private int nextProbe() {
+        return probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    @Benchmark
+    public boolean insertRemoveOne() {
+        int key = nextProbe();
+        return multiset.insert(key) & multiset.removeOne(key);
+    }
+
+    @Benchmark
+    public Integer treeMapMerge() {
+        int key = nextProbe();
+        counts.merge(key, 1, Integer::sum);
+        return counts.merge(key, -1, Integer::sum);
+    }
+
+    @Benchmark
+    public int count() {
+        return multiset.count(nextProbe());
+    }
+
+    @Benchmark
+    public int countRange() {
+        int lo = nextProbe();
+        return multiset.countRange(lo, lo + 2 * 63);
+    }
+}
@@ -0,0 +1,94 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.common.TreeCursor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Navigation near the previous position: stepping to the next key with higher() from the root against
+ * {@link TreeCursor#next()}, and ceiling lookups that move forward by up to {@link #distance} keys each time with
+ * ceiling() from the root against {@link TreeCursor#seekCeiling(int)} from the finger.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class NavigationBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Greatest number of keys between two successive lookups.
+     */
+    @Param({"16", "65536"})
+    public int distance;
+
+    private AVLTree tree;
+    private TreeCursor cursor;
+    private int[] steps;
+    private int step;
+    private int key;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        tree = AVLTree.initialize();
+        for (int key : KeyDistribution.RANDOM.insertionOrder(size, random)) {
+            tree.insert(key);
+        }
+        // keys are the even numbers below 2 * size.
+        steps = new int[TreeFixture.PROBES];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = 1 + random.nextInt(2 * distance);
+        }
+        cursor = tree.cursor();
+        cursor.seekFirst();
+    }
+
+    private int nextKey() {
+        key += steps[step++ & TreeFixture.PROBE_MASK];
+        if (key >= 2 * size) {
+            key = 0;
+        }
+        return key;
+    }
+
+    @Benchmark
+    public Integer higher() {
+        Integer next = tree.higher(key);
+        key = next != null ? next : -1;
+        return next;
+    }
+
+    @Benchmark
+    public boolean cursorNext() {
+        return cursor.next() || cursor.seekFirst();
+    }
+
+    @Benchmark
+    public Integer ceiling() {
+        return tree.ceiling(nextKey());
+    }
+
+    @Benchmark
+    public boolean cursorSeekCeiling() {
+        return cursor.seekCeiling(nextKey());
+    }
+}
@@ -0,0 +1,93 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counting and paging through ranges with the subtree sizes of {@link AVLTree} against walking the range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class OrderStatisticBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Number of keys in each range, and offset of the page.
+     */
+    @Param({"16", "1024", "65536"})
+    public int width;
+
+    private AVLTree tree;
+    private int[] probes;
+    private int[] ranks;
+    private int cursor;
+    private long sum;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] keys = KeyDistribution.SEQUENTIAL.insertionOrder(size, new Random(TreeFixture.SEED));
+        tree = AVLTree.fromSorted(keys);
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, new Random(TreeFixture.SEED));
+        ranks = new Random(TreeFixture.SEED).ints(TreeFixture.PROBES, 0, size).toArray();
+    }
+
+    private int nextLow() {
+        return probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    private void add(int key) {
+        sum += key;
+    }
+
+    @Benchmark
+    public int countBySearchRange() {
+        int lo = nextLow();
+        return tree.searchRange(lo, lo + 2 * (width - 1)).size();
+    }
+
+    @Benchmark
+    public int countRange() {
+        int lo = nextLow();
+        return tree.countRange(lo, lo + 2 * (width - 1));
+    }
+
+    @Benchmark
+    public int rank() {
+        return tree.rank(nextLow());
+    }
+
+    @Benchmark
+    public int select() {
+        return tree.select(ranks[cursor++ & TreeFixture.PROBE_MASK]);
+    }
+
+    /**
+     * 10 keys after skipping width keys of an unbounded range, the deep pagination case.
+     */
+    @Benchmark
+    public long deepPage() {
+        sum = 0;
+        tree.forEachInRange(nextLow(), Integer.MAX_VALUE, width, 10, this::add);
+        return sum;
+    }
+}
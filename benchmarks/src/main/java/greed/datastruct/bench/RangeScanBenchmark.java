@@ -0,0 +1,106 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summing the keys of a range through the materialised {@link AVLTree#searchRange(int, int)} against the lazy
+ * iterator, stream and callback APIs, and fetching the first page of a range.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RangeScanBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Number of keys in each range.
+     */
+    @Param({"16", "1024", "65536"})
+    public int width;
+
+    private AVLTree tree;
+    private int[] probes;
+    private int cursor;
+    private long sum;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] keys = KeyDistribution.SEQUENTIAL.insertionOrder(size, new Random(TreeFixture.SEED));
+        tree = AVLTree.fromSorted(keys);
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, new Random(TreeFixture.SEED));
+    }
+
+    private int nextLow() {
+        return probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    private void add(int key) {
+        sum += key;
+    }
+
+    @Benchmark
+    public long searchRange() {
+        int lo = nextLow();
+        long total = 0;
+        for (int key : tree.searchRange(lo, lo + 2 * (width - 1))) {
+            total += key;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long rangeIterator() {
+        int lo = nextLow();
+        long total = 0;
+        PrimitiveIterator.OfInt iterator = tree.rangeIterator(lo, lo + 2 * (width - 1));
+        while (iterator.hasNext()) {
+            total += iterator.nextInt();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public long rangeStream() {
+        int lo = nextLow();
+        return tree.rangeStream(lo, lo + 2 * (width - 1)).asLongStream().sum();
+    }
+
+    @Benchmark
+    public long forEachInRange() {
+        int lo = nextLow();
+        sum = 0;
+        tree.forEachInRange(lo, lo + 2 * (width - 1), this::add);
+        return sum;
+    }
+
+    /**
+     * First 10 keys of an unbounded range, the pagination case.
+     */
+    @Benchmark
+    public long firstPage() {
+        sum = 0;
+        tree.forEachInRange(nextLow(), Integer.MAX_VALUE, 0, 10, this::add);
+        return sum;
+    }
+}
@@ -0,0 +1,85 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.DurableAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening a {@link DurableAVLTree} whose whole history is in the write-ahead log, against the same tree recovered from
+ * a checkpoint. Recovery from the log grows with the number of records ever written, recovery from a snapshot only
+ * with the size of the tree.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RecoveryBenchmark {
+
+    /**
+     * Number of records in the log, a quarter of them deletes.
+     */
+    @Param({"100000", "1000000", "4000000"})
+    public int logRecords;
+
+    private Path logOnly;
+    private Path checkpointed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        logOnly = Files.createTempDirectory("avltree-recovery-log");
+        checkpointed = Files.createTempDirectory("avltree-recovery-snapshot");
+        try (DurableAVLTree log = DurableAVLTree.open(logOnly, 4096, -1, 0);
+             DurableAVLTree snapshot = DurableAVLTree.open(checkpointed, 4096, -1, 0)) {
+            Random random = new Random(TreeFixture.SEED);
+            int written = 0;
+            while (written < logRecords) {
+                int key = random.nextInt(logRecords);
+                boolean changed = random.nextInt(4) == 0 ? log.delete(key) : log.insert(key);
+                if (changed) {
+                    written++;
+                }
+            }
+            log.forEachInRange(Integer.MIN_VALUE, Integer.MAX_VALUE, snapshot::insert);
+            snapshot.checkpoint();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DurabilityBenchmark.deleteRecursively(logOnly);
+        DurabilityBenchmark.deleteRecursively(checkpointed);
+    }
+
+    @Benchmark
+    public int recoverFromLog() throws IOException {
+        try (DurableAVLTree tree = DurableAVLTree.open(logOnly, 4096, -1, 0)) {
+            return tree.size();
+        }
+    }
+
+    @Benchmark
+    public int recoverFromSnapshot() throws IOException {
+        try (DurableAVLTree tree = DurableAVLTree.open(checkpointed, 4096, -1, 0)) {
+            return tree.size();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.CommandReplayer;
+import greed.datastruct.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying a command log line by line through {@link Main#decodeAndRunCommands(String, AVLTree, BufferedWriter)}
+ * against {@link CommandReplayer}. The log lives in memory and the output is discarded, so only parsing, the tree
+ * and formatting are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class ReplayBenchmark {
+
+    /**
+     * Number of commands in the log.
+     */
+    @Param({"1000000"})
+    public int commands;
+
+    private byte[] log;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        log = log(commands);
+    }
+
+    /**
+     * Command log of 40% inserts, 20% deletes, 30% searches and 10% range searches of 20 keys over commands / 2 keys.
+     */
+    static byte[] log(int commands) {
+        Random random = new Random(TreeFixture.SEED);
+        int keys = commands / 2;
+        StringBuilder builder = new StringBuilder("Initialize()\n");
+        for (int i = 1; i < commands; i++) {
+            int op = random.nextInt(10);
+            int key = random.nextInt(keys);
+            if (op < 4) {
+                builder.append("Insert(").append(key).append(")\n");
+            } else if (op < 6) {
+                builder.append("Delete(").append(key).append(")\n");
+            } else if (op < 9) {
+                builder.append("Search(").append(key).append(")\n");
+            } else {
+                builder.append("Search(").append(key).append(',').append(key + 20).append(")\n");
+            }
+        }
+        return builder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public AVLTree decodeAndRunCommands() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(log), StandardCharsets.US_ASCII));
+        BufferedWriter writer = new BufferedWriter(Writer.nullWriter());
+        AVLTree tree = null;
+        String line = reader.readLine();
+        while (line != null) {
+            tree = Main.decodeAndRunCommands(line, tree, writer);
+            line = reader.readLine();
+        }
+        writer.flush();
+        return tree;
+    }
+
+    @Benchmark
+    public CommandReplayer.Stats commandReplayer() throws IOException {
+        return CommandReplayer.replay(Channels.newChannel(new ByteArrayInputStream(log)), new DiscardChannel());
+    }
+
+    /**
+     * Output channel that drops everything.
+     */
+    static final class DiscardChannel implements WritableByteChannel {
+
+        @Override
+        public int write(ByteBuffer source) {
+            int remaining = source.remaining();
+            source.position(source.limit());
+            return remaining;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving an {@link AVLTree} to a file with {@link AVLTree#writeTo(java.nio.channels.WritableByteChannel, boolean)} and
+ * loading it back with {@link AVLTree#readFrom(java.nio.channels.ReadableByteChannel)}, plain and deflated.
+ * Keys are a random half of [0, 2 * size), the file sizes are printed at tear down.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    private AVLTree tree;
+    private Path plain;
+    private Path deflated;
+    private Path scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(TreeFixture.SEED);
+        tree = AVLTree.fromSorted(random.ints(0, 2 * size).distinct().limit(size).sorted());
+        plain = Files.createTempFile("avltree-plain", ".bin");
+        deflated = Files.createTempFile("avltree-deflated", ".bin");
+        scratch = Files.createTempFile("avltree-scratch", ".bin");
+        save(plain, false);
+        save(deflated, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.printf("%n%d keys: %d bytes plain, %d bytes deflated%n", tree.size(), Files.size(plain), Files.size(deflated));
+        Files.delete(plain);
+        Files.delete(deflated);
+        Files.delete(scratch);
+    }
+
+    private void save(Path file, boolean compress) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            tree.writeTo(channel, compress);
+        }
+    }
+
+    private static AVLTree load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return AVLTree.readFrom(channel);
+        }
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        save(scratch, false);
+    }
+
+    @Benchmark
+    public void writeDeflated() throws IOException {
+        save(scratch, true);
+    }
+
+    @Benchmark
+    public AVLTree read() throws IOException {
+        return load(plain);
+    }
+
+    @Benchmark
+    public AVLTree readDeflated() throws IOException {
+        return load(deflated);
+    }
+}
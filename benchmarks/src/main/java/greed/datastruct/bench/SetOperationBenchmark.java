@@ -0,0 +1,104 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging a tree of size / ratio keys into a tree of size keys: the join-based {@link AVLTree#union(AVLTree, AVLTree)}
+ * on all cores and on one, against re-inserting the keys one by one and {@link AVLTree#bulkInsert(int[])}.
+ * Both trees are rebuilt before every invocation, the set operations consume them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SetOperationBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    /**
+     * Size of the first tree divided by the size of the second.
+     */
+    @Param({"1", "100"})
+    public int ratio;
+
+    private int[] firstKeys;
+    private int[] secondKeys;
+    private AVLTree first;
+    private AVLTree second;
+    private ForkJoinPool singleThread;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        Random random = new Random(TreeFixture.SEED);
+        // both trees draw from the same key space, so about half of the smaller tree is shared.
+        firstKeys = random.ints(size, 0, 2 * size).sorted().distinct().toArray();
+        secondKeys = random.ints(size / ratio, 0, 2 * size).sorted().distinct().toArray();
+        singleThread = new ForkJoinPool(1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTrees() {
+        first = AVLTree.fromSorted(firstKeys);
+        second = AVLTree.fromSorted(secondKeys);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        singleThread.shutdown();
+    }
+
+    @Benchmark
+    public AVLTree union() {
+        return AVLTree.union(first, second);
+    }
+
+    @Benchmark
+    public AVLTree unionSingleThread() {
+        return AVLTree.union(first, second, singleThread);
+    }
+
+    @Benchmark
+    public AVLTree intersection() {
+        return AVLTree.intersection(first, second);
+    }
+
+    @Benchmark
+    public AVLTree difference() {
+        return AVLTree.difference(first, second);
+    }
+
+    @Benchmark
+    public AVLTree reinsert() {
+        for (int key : secondKeys) {
+            first.insert(key);
+        }
+        return first;
+    }
+
+    @Benchmark
+    public AVLTree bulkInsert() {
+        first.bulkInsert(Arrays.copyOf(secondKeys, secondKeys.length));
+        return first;
+    }
+}
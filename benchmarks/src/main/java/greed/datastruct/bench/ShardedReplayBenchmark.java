@@ -0,0 +1,58 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.CommandReplayer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandReplayer} over 1 shard (the sequential replay) and over several shards, on the log of
+ * {@link ReplayBenchmark}. The sharded replay only gains where there are cores for the worker threads and the parser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class ShardedReplayBenchmark {
+
+    /**
+     * Number of commands in the log.
+     */
+    @Param({"1000000"})
+    public int commands;
+
+    /**
+     * Number of trees and worker threads.
+     */
+    @Param({"1", "2", "4", "8"})
+    public int shards;
+
+    private byte[] log;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        log = ReplayBenchmark.log(commands);
+    }
+
+    @Benchmark
+    public CommandReplayer.Stats replay() throws IOException {
+        return CommandReplayer.replay(Channels.newChannel(new ByteArrayInputStream(log)),
+                new ReplayBenchmark.DiscardChannel(), shards);
+    }
+}
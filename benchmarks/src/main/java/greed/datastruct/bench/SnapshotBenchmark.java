@@ -0,0 +1,79 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.PersistentAVLTree;
+import greed.datastruct.VersionedAVLTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Taking a consistent view of a tree: a {@link VersionedAVLTree} snapshot against copying an {@link AVLTree}, and the
+ * price of path-copying on writes (see gc.alloc.rate.norm for the bytes copied per write).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private AVLTree mutable;
+    private VersionedAVLTree versioned;
+    private int[] probes;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int[] keys = KeyDistribution.SEQUENTIAL.insertionOrder(size, new Random(TreeFixture.SEED));
+        mutable = AVLTree.fromSorted(keys);
+        versioned = VersionedAVLTree.of(PersistentAVLTree.fromSorted(keys));
+        probes = KeyDistribution.RANDOM.probes(keys, TreeFixture.PROBES, new Random(TreeFixture.SEED));
+    }
+
+    @Benchmark
+    public PersistentAVLTree snapshot() {
+        return versioned.snapshot();
+    }
+
+    @Benchmark
+    public AVLTree copy() {
+        return AVLTree.fromSorted(mutable.rangeStream(Integer.MIN_VALUE, Integer.MAX_VALUE).toArray());
+    }
+
+    /**
+     * Inserts an absent (odd) key and deletes it again, so the tree keeps its size.
+     */
+    @Benchmark
+    public boolean mutableWrite() {
+        int key = probes[cursor++ & TreeFixture.PROBE_MASK] + 1;
+        mutable.insert(key);
+        return mutable.delete(key);
+    }
+
+    /**
+     * Same writes, each one path-copies a new version.
+     */
+    @Benchmark
+    public boolean versionedWrite() {
+        int key = probes[cursor++ & TreeFixture.PROBE_MASK] + 1;
+        versioned.insert(key);
+        return versioned.delete(key);
+    }
+}
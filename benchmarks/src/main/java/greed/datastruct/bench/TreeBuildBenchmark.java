@@ -0,0 +1,56 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.common.SearchTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to build a tree of the given size with repeated inserts, the way {@link greed.datastruct.Main} loads a tree.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class TreeBuildBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM"})
+    public KeyDistribution distribution;
+
+    @Param({"AVL", "ARRAY_AVL", "MAPPED"})
+    public TreeImplementation implementation;
+
+    private int[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = distribution.insertionOrder(size, new Random(TreeFixture.SEED));
+    }
+
+    @Benchmark
+    public SearchTree insertAll() {
+        SearchTree tree = implementation.create(size);
+        for (int key : keys) {
+            tree.insert(key);
+        }
+        implementation.commit(tree);
+        return tree;
+    }
+}
@@ -0,0 +1,59 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.common.SearchTree;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+
+/**
+ * Shared benchmark state: a tree of {@link #size} keys built in the order given by {@link #distribution},
+ * plus a ring of probe keys drawn from the same distribution.
+ * The tree is shared by all benchmark threads, so benchmarks that write to it must run single threaded.
+ */
+@State(Scope.Benchmark)
+public class TreeFixture {
+
+    /**
+     * Number of probes pre-generated per trial (power of two so the cursor can be masked).
+     */
+    public static final int PROBES = 1 << 16;
+    public static final int PROBE_MASK = PROBES - 1;
+    /**
+     * Fixed seed so every run, and every version of the tree, sees the same key streams.
+     */
+    public static final long SEED = 0x5EEDL;
+
+    @Param({"1000", "100000", "1000000", "10000000", "50000000"})
+    public int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPF"})
+    public KeyDistribution distribution;
+
+    @Param({"AVL", "ARRAY_AVL", "BPLUS", "MAPPED"})
+    public TreeImplementation implementation;
+
+    public SearchTree tree;
+    public int[] probes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SEED);
+        int[] keys = distribution.insertionOrder(size, random);
+        tree = implementation.create(size);
+        for (int key : keys) {
+            tree.insert(key);
+        }
+        implementation.commit(tree);
+        probes = distribution.probes(keys, PROBES, random);
+    }
+
+    @TearDown(Level.Iteration)
+    public void commit() {
+        implementation.commit(tree);
+    }
+}
@@ -0,0 +1,87 @@
+package greed.datastruct.bench;
+
+import greed.datastruct.AVLTree;
+import greed.datastruct.ArrayAVLTree;
+import greed.datastruct.BPlusTree;
+import greed.datastruct.MappedAVLTree;
+import greed.datastruct.common.SearchTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Tree implementations under benchmark. Every benchmark runs each implementation in its own fork,
+ * so the calls through {@link SearchTree} stay monomorphic.
+ */
+public enum TreeImplementation {
+
+    /**
+     * {@link AVLTree}, one {@link greed.datastruct.AVLNode} object per key.
+     */
+    AVL {
+        @Override
+        public SearchTree create(int expectedSize) {
+            return AVLTree.initialize();
+        }
+    },
+
+    /**
+     * {@link ArrayAVLTree}, parallel primitive arrays.
+     */
+    ARRAY_AVL {
+        @Override
+        public SearchTree create(int expectedSize) {
+            return ArrayAVLTree.initialize(expectedSize);
+        }
+    },
+
+    /**
+     * {@link BPlusTree}, 32 keys per node.
+     */
+    BPLUS {
+        @Override
+        public SearchTree create(int expectedSize) {
+            return BPlusTree.initialize();
+        }
+    },
+
+    /**
+     * {@link MappedAVLTree} on a temporary file. Fixtures commit once per iteration, so writes pay the copy-on-write of
+     * committed nodes and the batches stay the size of one iteration.
+     */
+    MAPPED {
+        @Override
+        public SearchTree create(int expectedSize) {
+            try {
+                Path file = Files.createTempFile("avltree-bench", ".bin");
+                file.toFile().deleteOnExit();
+                return MappedAVLTree.open(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void commit(SearchTree tree) {
+            ((MappedAVLTree) tree).commit();
+        }
+    };
+
+    /**
+     * Create an empty tree.
+     *
+     * @param expectedSize number of keys the tree will hold, implementations may presize for it.
+     * @return empty tree.
+     */
+    public abstract SearchTree create(int expectedSize);
+
+    /**
+     * Make the changes so far durable, for implementations backed by a file. Does nothing for in-memory trees.
+     *
+     * @param tree tree created by {@link #create(int)}.
+     */
+    public void commit(SearchTree tree) {
+    }
+}
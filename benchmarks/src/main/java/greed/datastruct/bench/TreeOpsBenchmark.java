@@ -0,0 +1,81 @@
+package greed.datastruct.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operation latency of insert, delete, search and searchRange on a pre-built tree.
+ * Write benchmarks pair an insert with a delete so the tree keeps its size over the whole trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class TreeOpsBenchmark {
+
+    private int cursor;
+
+    private int nextProbe(TreeFixture fixture) {
+        return fixture.probes[cursor++ & TreeFixture.PROBE_MASK];
+    }
+
+    @Benchmark
+    public Integer searchHit(TreeFixture fixture) {
+        return fixture.tree.search(nextProbe(fixture));
+    }
+
+    @Benchmark
+    public Integer searchMiss(TreeFixture fixture) {
+        return fixture.tree.search(nextProbe(fixture) + 1);
+    }
+
+    /**
+     * Range covering 16 keys.
+     */
+    @Benchmark
+    public List<Integer> searchRangeNarrow(TreeFixture fixture) {
+        int lo = nextProbe(fixture);
+        return fixture.tree.searchRange(lo, lo + 2 * 15);
+    }
+
+    /**
+     * Range covering 1024 keys.
+     */
+    @Benchmark
+    public List<Integer> searchRangeWide(TreeFixture fixture) {
+        int lo = nextProbe(fixture);
+        return fixture.tree.searchRange(lo, lo + 2 * 1023);
+    }
+
+    /**
+     * Insert of an absent (odd) key followed by its delete.
+     */
+    @Benchmark
+    public void insertDelete(TreeFixture fixture) {
+        int key = nextProbe(fixture) + 1;
+        fixture.tree.insert(key);
+        fixture.tree.delete(key);
+    }
+
+    /**
+     * Delete of a present key followed by its re-insert.
+     */
+    @Benchmark
+    public void deleteInsert(TreeFixture fixture) {
+        int key = nextProbe(fixture);
+        fixture.tree.delete(key);
+        fixture.tree.insert(key);
+    }
+}
@@ -0,0 +1,239 @@
+package greed.datastruct;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Join-based algorithms on {@link AVLNode} subtrees, the building blocks of {@link AVLTree#split(int)},
+ * {@link AVLTree#join(AVLTree, int, AVLTree)} and the set operations.
+ * Everything is expressed with join: it links two subtrees and a middle node, walking down the spine of the taller
+ * subtree and restoring balance with the rotations of {@link AVLTree}, in O(|h(left) - h(right)| + 1).
+ * The algorithms reuse the nodes of their inputs, every node ends up in exactly one output, so the inputs are consumed.
+ * Set operations split one tree by the root of the other and recurse on both halves, the halves are independent
+ * and run as fork-join tasks, O(m log(n/m + 1)) work for trees of n ≥ m keys.
+ */
+final class AVLJoin {
+
+    // below this many nodes a set operation is not worth a task.
+    private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+
+    private AVLJoin() {
+    }
+
+    /**
+     * Result of a split.
+     */
+    static final class Split {
+        // keys smaller than the split key.
+        final AVLNode left;
+        // node holding the split key, NULL if the key is not in the tree.
+        final AVLNode found;
+        // keys greater than the split key.
+        final AVLNode right;
+
+        private Split(AVLNode left, AVLNode found, AVLNode right) {
+            this.left = left;
+            this.found = found;
+            this.right = right;
+        }
+    }
+
+    /**
+     * Link two subtrees through a middle node.
+     * @param left subtree whose keys are all smaller than the key of middle.
+     * @param middle detached node.
+     * @param right subtree whose keys are all greater than the key of middle.
+     * @return root of the joined subtree.
+     */
+    static AVLNode join(AVLNode left, AVLNode middle, AVLNode right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            return joinRight(left, middle, right);
+        }
+        if (rightHeight > leftHeight + 1) {
+            return joinLeft(left, middle, right);
+        }
+        return link(middle, left, right);
+    }
+
+    /**
+     * Join when left is taller: walk down the right spine of left to a subtree as high as right.
+     */
+    private static AVLNode joinRight(AVLNode left, AVLNode middle, AVLNode right) {
+        AVLNode l = left.getLeft();
+        AVLNode c = left.getRight();
+        if (height(c) <= height(right) + 1) {
+            AVLNode joined = link(middle, c, right);
+            if (joined.getHeight() <= height(l) + 1) {
+                return link(left, l, joined);
+            }
+            return AVLTree.leftRotate(link(left, l, AVLTree.rightRotate(joined)));
+        }
+        AVLNode joined = joinRight(c, middle, right);
+        AVLNode root = link(left, l, joined);
+        if (joined.getHeight() <= height(l) + 1) {
+            return root;
+        }
+        return AVLTree.leftRotate(root);
+    }
+
+    /**
+     * Join when right is taller: walk down the left spine of right to a subtree as high as left.
+     */
+    private static AVLNode joinLeft(AVLNode left, AVLNode middle, AVLNode right) {
+        AVLNode c = right.getLeft();
+        AVLNode r = right.getRight();
+        if (height(c) <= height(left) + 1) {
+            AVLNode joined = link(middle, left, c);
+            if (joined.getHeight() <= height(r) + 1) {
+                return link(right, joined, r);
+            }
+            return AVLTree.rightRotate(link(right, AVLTree.leftRotate(joined), r));
+        }
+        AVLNode joined = joinLeft(left, middle, c);
+        AVLNode root = link(right, joined, r);
+        if (joined.getHeight() <= height(r) + 1) {
+            return root;
+        }
+        return AVLTree.rightRotate(root);
+    }
+
+    /**
+     * Link two subtrees without a middle node.
+     * @param left subtree whose keys are all smaller than the keys of right.
+     * @param right subtree.
+     * @return root of the joined subtree.
+     */
+    static AVLNode join2(AVLNode left, AVLNode right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        // the largest node of left becomes the middle node.
+        AVLNode[] last = new AVLNode[1];
+        AVLNode rest = splitLast(left, last);
+        return join(rest, last[0], right);
+    }
+
+    private static AVLNode splitLast(AVLNode root, AVLNode[] last) {
+        if (root.getRight() == null) {
+            last[0] = root;
+            return root.getLeft();
+        }
+        AVLNode left = root.getLeft();
+        AVLNode rest = splitLast(root.getRight(), last);
+        return join(left, root, rest);
+    }
+
+    /**
+     * Split a subtree by a key.
+     * @param root root of the subtree.
+     * @param key split key, it does not have to be in the subtree.
+     * @return keys smaller than key, the node of key and keys greater than key.
+     */
+    static Split split(AVLNode root, int key) {
+        if (root == null) {
+            return new Split(null, null, null);
+        }
+        AVLNode left = root.getLeft();
+        AVLNode right = root.getRight();
+        if (key == root.getKey()) {
+            return new Split(left, link(root, null, null), right);
+        }
+        if (key < root.getKey()) {
+            Split split = split(left, key);
+            return new Split(split.left, split.found, join(split.right, root, right));
+        }
+        Split split = split(right, key);
+        return new Split(join(left, root, split.left), split.found, split.right);
+    }
+
+    /**
+     * Set operations, each is a fork-join task over the two halves of the split.
+     */
+    enum Operation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    /**
+     * Run a set operation.
+     * @param operation operation to run.
+     * @param first first subtree (the one keys are removed from for a difference).
+     * @param second second subtree.
+     * @return root of the result.
+     */
+    static AVLNode apply(Operation operation, AVLNode first, AVLNode second) {
+        if (first == null || second == null) {
+            return switch (operation) {
+                case UNION -> first != null ? first : second;
+                case INTERSECTION -> null;
+                case DIFFERENCE -> first;
+            };
+        }
+        boolean sequential = size(first) + size(second) < SEQUENTIAL_THRESHOLD;
+        // split first by the root of second and combine the halves.
+        AVLNode secondLeft = second.getLeft();
+        AVLNode secondRight = second.getRight();
+        AVLNode pivot = link(second, null, null);
+        Split split = split(first, pivot.getKey());
+
+        AVLNode left;
+        AVLNode right;
+        if (sequential) {
+            left = apply(operation, split.left, secondLeft);
+            right = apply(operation, split.right, secondRight);
+        } else {
+            SetTask leftTask = new SetTask(operation, split.left, secondLeft);
+            leftTask.fork();
+            right = apply(operation, split.right, secondRight);
+            left = leftTask.join();
+        }
+        return switch (operation) {
+            case UNION -> join(left, pivot, right);
+            case INTERSECTION -> split.found != null ? join(left, pivot, right) : join2(left, right);
+            case DIFFERENCE -> join2(left, right);
+        };
+    }
+
+    /**
+     * Fork-join task of a set operation on two subtrees.
+     */
+    static final class SetTask extends RecursiveTask<AVLNode> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Operation operation;
+        private final AVLNode first;
+        private final AVLNode second;
+
+        SetTask(Operation operation, AVLNode first, AVLNode second) {
+            this.operation = operation;
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        protected AVLNode compute() {
+            return apply(operation, first, second);
+        }
+    }
+
+    /**
+     * Set the children of a node, height and size are recalculated.
+     */
+    private static AVLNode link(AVLNode node, AVLNode left, AVLNode right) {
+        node.setLeft(left);
+        node.setRight(right);
+        return node;
+    }
+
+    private static int height(AVLNode node) {
+        return node != null ? node.getHeight() : 0;
+    }
+
+    private static int size(AVLNode node) {
+        return node != null ? node.getSize() : 0;
+    }
+}
@@ -0,0 +1,716 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Ordered map on an AVL tree, keys are ordered by a {@link Comparator} and each key carries a value.
+ * Iteration, {@link #entrySet()} and {@link #forEachInRange(Object, Object, BiConsumer)} visit the keys in ascending order.
+ * The {@link SortedMap} views ({@link #headMap(Object)}, {@link #tailMap(Object)}, {@link #subMap(Object, Object)})
+ * are backed by the map, and the iterators of every view support remove.
+ * {@link AVLTree} (int keys) and {@link LongAVLMap} (long keys) are the specialised variants, they compare primitives
+ * directly and never box a key, prefer them on hot integer paths. LongAVLMap copies the re-balancing and the range
+ * walk of this class, which stays their reference.
+ * @param <K> type of the keys.
+ * @param <V> type of the values.
+ */
+public class AVLMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+    private Entry<K, V> root;
+    private int size;
+    // incremented by every structural change, iterators fail fast on it.
+    private int modCount;
+    // path recorded by put and remove, reused so updates do not allocate.
+    private final Entry<K, V>[] path;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a map.
+     */
+    @SuppressWarnings("unchecked")
+    private AVLMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.path = (Entry<K, V>[]) new Entry<?, ?>[SearchTree.MAX_DEPTH];
+    }
+
+    /**
+     * Construct an empty map ordered by the natural order of the keys.
+     * @param <K> type of the keys.
+     * @param <V> type of the values.
+     * @return empty map.
+     */
+    public static <K extends Comparable<? super K>, V> AVLMap<K, V> initialize() {
+        return new AVLMap<>(Comparator.naturalOrder());
+    }
+
+    /**
+     * Construct an empty map ordered by a comparator.
+     * @param comparator order of the keys, keys it finds equal are the same key.
+     * @param <K> type of the keys.
+     * @param <V> type of the values.
+     * @return empty map.
+     */
+    public static <K, V> AVLMap<K, V> initialize(Comparator<? super K> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("comparator must not be null.");
+        }
+        return new AVLMap<>(comparator);
+    }
+
+    /**
+     * Order of the keys.
+     * @return comparator of the map.
+     */
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    /**
+     * Smallest key.
+     * @return first key in the order of the map.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    @Override
+    public K firstKey() {
+        return key(first());
+    }
+
+    /**
+     * Largest key.
+     * @return last key in the order of the map.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    @Override
+    public K lastKey() {
+        return key(last());
+    }
+
+    /**
+     * View of the keys before a key.
+     * @param toKey upper bound of the view, not included.
+     * @return view backed by the map, a put outside of the view throws an {@link IllegalArgumentException}.
+     */
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        comparator.compare(toKey, toKey);
+        return new SubMap(true, null, false, toKey);
+    }
+
+    /**
+     * View of the keys from a key on.
+     * @param fromKey lower bound of the view, included.
+     * @return view backed by the map, a put outside of the view throws an {@link IllegalArgumentException}.
+     */
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        comparator.compare(fromKey, fromKey);
+        return new SubMap(false, fromKey, true, null);
+    }
+
+    /**
+     * View of the keys of a range.
+     * @param fromKey lower bound of the view, included.
+     * @param toKey upper bound of the view, not included.
+     * @return view backed by the map, a put outside of the view throws an {@link IllegalArgumentException}.
+     * @throws IllegalArgumentException if fromKey comes after toKey.
+     */
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (comparator.compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey must not come after toKey.");
+        }
+        return new SubMap(false, fromKey, false, toKey);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Entry<K, V> entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Insert a key with its value, or replace the value if the key is already in the map.
+     * Re-balancing stops at the first node whose height did not change, at most one rotation is needed.
+     * @param key key to be inserted.
+     * @param value value of the key.
+     * @return previous value of the key, NULL if the key was not in the map.
+     */
+    @Override
+    public V put(K key, V value) {
+        int pathLength = 0;
+        int cmp = 0;
+        Entry<K, V> node = root;
+        while (node != null) {
+            cmp = comparator.compare(key, node.key);
+            if (cmp == 0) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            path[pathLength++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        if (root == null) {
+            // type check of the first key, the way TreeMap does it.
+            comparator.compare(key, key);
+        }
+        Entry<K, V> newNode = new Entry<>(key, value);
+        if (pathLength == 0) {
+            root = newNode;
+        } else if (cmp < 0) {
+            path[pathLength - 1].left = newNode;
+        } else {
+            path[pathLength - 1].right = newNode;
+        }
+        size++;
+        modCount++;
+
+        for (int i = pathLength - 1; i >= 0; i--) {
+            Entry<K, V> aNode = path[i];
+            aNode.updateHeight();
+            int balance = aNode.getBalance();
+            if (balance == 0) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                replaceChild(i > 0 ? path[i - 1] : null, aNode, rebalance(aNode));
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove a key. Re-balancing stops at the first node whose height did not change.
+     * @param key key to be removed.
+     * @return value of the removed key, NULL if the key was not in the map.
+     */
+    @Override
+    public V remove(Object key) {
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        int pathLength = 0;
+        Entry<K, V> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(k, node.key);
+            if (cmp == 0) {
+                break;
+            }
+            path[pathLength++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        if (node == null) {
+            return null;
+        }
+        V removed = node.value;
+        if (node.left != null && node.right != null) {
+            // take the entry of the in-order predecessor and remove the predecessor instead.
+            path[pathLength++] = node;
+            Entry<K, V> predecessor = node.left;
+            while (predecessor.right != null) {
+                path[pathLength++] = predecessor;
+                predecessor = predecessor.right;
+            }
+            node.key = predecessor.key;
+            node.value = predecessor.value;
+            node = predecessor;
+        }
+        Entry<K, V> child = node.left != null ? node.left : node.right;
+        replaceChild(pathLength > 0 ? path[pathLength - 1] : null, node, child);
+        size--;
+        modCount++;
+
+        for (int i = pathLength - 1; i >= 0; i--) {
+            Entry<K, V> aNode = path[i];
+            aNode.updateHeight();
+            int balance = aNode.getBalance();
+            if (balance == 1 || balance == -1) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                Entry<K, V> subRoot = rebalance(aNode);
+                replaceChild(i > 0 ? path[i - 1] : null, aNode, subRoot);
+                if (subRoot.getBalance() != 0) {
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Visit the entries of a range in ascending order of the keys, without materialising them.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param action receives the key and the value of each entry of the range.
+     * @return number of entries visited.
+     */
+    public int forEachInRange(K smallKey, K bigKey, BiConsumer<? super K, ? super V> action) {
+        int visited = 0;
+        @SuppressWarnings("unchecked")
+        Entry<K, V>[] stack = (Entry<K, V>[]) new Entry<?, ?>[SearchTree.MAX_DEPTH];
+        int top = 0;
+        Entry<K, V> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (comparator.compare(node.key, smallKey) < 0) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            if (comparator.compare(node.key, bigKey) > 0) {
+                break;
+            }
+            action.accept(node.key, node.value);
+            visited++;
+            node = node.right;
+        }
+        return visited;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator(true, null, true, null);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<K, V> getEntry(Object key) {
+        K k = (K) key;
+        Entry<K, V> node = root;
+        while (node != null) {
+            int cmp = comparator.compare(k, node.key);
+            if (cmp == 0) {
+                return node;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private Entry<K, V> first() {
+        Entry<K, V> node = root;
+        while (node != null && node.left != null) {
+            node = node.left;
+        }
+        return node;
+    }
+
+    private Entry<K, V> last() {
+        Entry<K, V> node = root;
+        while (node != null && node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Entry of the smallest key not before the given key, NULL if there is none.
+     */
+    private Entry<K, V> ceiling(K key) {
+        Entry<K, V> result = null;
+        Entry<K, V> node = root;
+        while (node != null) {
+            if (comparator.compare(node.key, key) >= 0) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Entry of the largest key before the given key, NULL if there is none.
+     */
+    private Entry<K, V> lower(K key) {
+        Entry<K, V> result = null;
+        Entry<K, V> node = root;
+        while (node != null) {
+            if (comparator.compare(node.key, key) < 0) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    private static <K> K key(Entry<K, ?> entry) {
+        if (entry == null) {
+            throw new NoSuchElementException();
+        }
+        return entry.key;
+    }
+
+    private void replaceChild(Entry<K, V> parent, Entry<K, V> oldChild, Entry<K, V> newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+    }
+
+    /**
+     * Restore the balance of a node whose balance factor is 2 or –2. Covers the insert cases (LL, RR, LR and RL)
+     * and the delete cases (R0, R1, R-1, L0, L1 and L-1).
+     * @param aNode unbalanced node.
+     * @return root of the rebalanced subtree.
+     */
+    private static <K, V> Entry<K, V> rebalance(Entry<K, V> aNode) {
+        if (aNode.getBalance() > 1) {
+            if (aNode.left.getBalance() < 0) {
+                aNode.left = leftRotate(aNode.left);
+            }
+            return rightRotate(aNode);
+        }
+        if (aNode.right.getBalance() > 0) {
+            aNode.right = rightRotate(aNode.right);
+        }
+        return leftRotate(aNode);
+    }
+
+    private static <K, V> Entry<K, V> rightRotate(Entry<K, V> node) {
+        Entry<K, V> child = node.left;
+        node.left = child.right;
+        child.right = node;
+        node.updateHeight();
+        child.updateHeight();
+        return child;
+    }
+
+    private static <K, V> Entry<K, V> leftRotate(Entry<K, V> node) {
+        Entry<K, V> child = node.right;
+        node.right = child.left;
+        child.left = node;
+        node.updateHeight();
+        child.updateHeight();
+        return child;
+    }
+
+    /**
+     * Node of the map, also the {@link Map.Entry} handed out by {@link #entrySet()}.
+     */
+    private static final class Entry<K, V> implements Map.Entry<K, V> {
+
+        private K key;
+        private V value;
+        private Entry<K, V> left;
+        private Entry<K, V> right;
+        private int height;
+
+        private Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return value;
+        }
+
+        @Override
+        public V setValue(V value) {
+            V previous = this.value;
+            this.value = value;
+            return previous;
+        }
+
+        private int getBalance() {
+            return (left != null ? left.height : 0) - (right != null ? right.height : 0);
+        }
+
+        private void updateHeight() {
+            height = 1 + Math.max(left != null ? left.height : 0, right != null ? right.height : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return Objects.equals(key, entry.getKey()) && Objects.equals(value, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /**
+     * View of the keys from lo (included) to hi (not included), an open bound ignores its key.
+     */
+    private final class SubMap extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+        private final boolean fromStart;
+        private final K lo;
+        private final boolean toEnd;
+        private final K hi;
+
+        private SubMap(boolean fromStart, K lo, boolean toEnd, K hi) {
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.toEnd = toEnd;
+            this.hi = hi;
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return comparator;
+        }
+
+        /**
+         * Number of keys in the view, counted in O(k + log n).
+         */
+        @Override
+        public int size() {
+            int count = 0;
+            for (EntryIterator it = new EntryIterator(fromStart, lo, toEnd, hi); it.hasNext(); it.next()) {
+                count++;
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !new EntryIterator(fromStart, lo, toEnd, hi).hasNext();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && AVLMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return inRange(key) ? AVLMap.this.get(key) : null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key)) {
+                throw new IllegalArgumentException("key out of the range of the view.");
+            }
+            return AVLMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return inRange(key) ? AVLMap.this.remove(key) : null;
+        }
+
+        @Override
+        public K firstKey() {
+            AVLMap.Entry<K, V> entry = fromStart ? first() : ceiling(lo);
+            return key(entry != null && tooHigh(entry.key) ? null : entry);
+        }
+
+        @Override
+        public K lastKey() {
+            AVLMap.Entry<K, V> entry = toEnd ? last() : lower(hi);
+            return key(entry != null && tooLow(entry.key) ? null : entry);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            checkBound(toKey);
+            return new SubMap(fromStart, lo, false, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            checkBound(fromKey);
+            return new SubMap(false, fromKey, toEnd, hi);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            checkBound(fromKey);
+            checkBound(toKey);
+            if (comparator.compare(fromKey, toKey) > 0) {
+                throw new IllegalArgumentException("fromKey must not come after toKey.");
+            }
+            return new SubMap(false, fromKey, false, toKey);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator(fromStart, lo, toEnd, hi);
+                }
+
+                @Override
+                public int size() {
+                    return SubMap.this.size();
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean inRange(Object key) {
+            return !tooLow((K) key) && !tooHigh((K) key);
+        }
+
+        private boolean tooLow(K key) {
+            return !fromStart && comparator.compare(key, lo) < 0;
+        }
+
+        private boolean tooHigh(K key) {
+            return !toEnd && comparator.compare(key, hi) >= 0;
+        }
+
+        /**
+         * A bound of a view of this view must lie within this view, its upper bound included.
+         */
+        private void checkBound(K key) {
+            if (tooLow(key) || !toEnd && comparator.compare(key, hi) > 0) {
+                throw new IllegalArgumentException("key out of the range of the view.");
+            }
+        }
+    }
+
+    /**
+     * In-order iterator with an explicit stack over the keys from lo (included) to hi (not included), fails fast when
+     * the map changes under it. {@link #remove()} deletes the last key returned and finds its successor again from the
+     * root, the deletion may have rotated the nodes on the stack.
+     */
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        @SuppressWarnings("unchecked")
+        private final Entry<K, V>[] stack = (Entry<K, V>[]) new Entry<?, ?>[SearchTree.MAX_DEPTH];
+        private int top;
+        private int expectedModCount = modCount;
+        private final boolean toEnd;
+        private final K hi;
+        private K lastReturned;
+        private boolean canRemove;
+
+        private EntryIterator(boolean fromStart, K lo, boolean toEnd, K hi) {
+            this.toEnd = toEnd;
+            this.hi = hi;
+            Entry<K, V> node = root;
+            while (node != null) {
+                if (!fromStart && comparator.compare(node.key, lo) < 0) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+
+        private void pushLeft(Entry<K, V> node) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0 && (toEnd || comparator.compare(stack[top - 1].key, hi) < 0);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> node = stack[--top];
+            pushLeft(node.right);
+            lastReturned = node.key;
+            canRemove = true;
+            return node;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException("next() must be called before remove().");
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            AVLMap.this.remove(lastReturned);
+            expectedModCount = modCount;
+            canRemove = false;
+            // the nodes after the removed key.
+            top = 0;
+            Entry<K, V> node = root;
+            while (node != null) {
+                if (comparator.compare(node.key, lastReturned) <= 0) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+    }
+}
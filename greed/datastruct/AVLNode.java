@@ -3,26 +3,38 @@ package greed.datastruct;
 import greed.datastruct.common.Node;
 
 /**
- * AVL node inherits from abstract tree node. Has an additional parameter of height in each node.
+ * AVL node inherits from abstract tree node. Has additional parameters of height, count and subtree size in each node.
+ * Height and size are recalculated whenever a child changes, so rotations keep them up to date.
+ * The count is the number of occurrences of the key, always 1 except in a multiset {@link AVLTree}, and the subtree
+ * size adds up the counts, so order statistics count every occurrence.
  */
 public class AVLNode extends Node<AVLNode> {
 
     private int height;
+    // number of occurrences of the key.
+    private int count;
+    // number of keys in the subtree rooted at this node, occurrences included.
+    private int size;
 
     public AVLNode() {
         super();
         this.height = 1;
+        this.count = 1;
+        this.size = 1;
     }
 
     public AVLNode(int key) {
         super(key);
         this.height = 1;
+        this.count = 1;
+        this.size = 1;
     }
 
     public AVLNode(int key, AVLNode left, AVLNode right) {
         super(key, left, right);
-        // calculate height
-        calculateHeight();
+        this.count = 1;
+        // calculate height and size
+        recalculate();
     }
 
     public int getHeight() {
@@ -33,6 +45,30 @@ public class AVLNode extends Node<AVLNode> {
         this.height = height;
     }
 
+    public int getSize() {
+        return size;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Change the number of occurrences of the key. The sizes of the node and its ancestors are not recalculated.
+     * @param count new number of occurrences, at least 1.
+     */
+    void setCount(int count) {
+        this.count = count;
+    }
+
+    /**
+     * Add to the subtree size without recalculating it, for a change of count below this node.
+     * @param delta occurrences added (or removed if negative) in the subtree.
+     */
+    void addToSize(int delta) {
+        this.size += delta;
+    }
+
     /**
      * get balance factor of the node.
      * @return balance factor.
@@ -44,22 +80,29 @@ public class AVLNode extends Node<AVLNode> {
     @Override
     public void setLeft(AVLNode left) {
         super.setLeft(left);
-        //recalculate height after change in child nodes
-        calculateHeight();
+        //recalculate height and size after change in child nodes
+        recalculate();
     }
 
     @Override
     public void setRight(AVLNode right) {
         super.setRight(right);
-        //recalculate height after change in child nodes
-        calculateHeight();
+        //recalculate height and size after change in child nodes
+        recalculate();
     }
 
     /**
-     * calculate height of the node.
+     * calculate height and subtree size of the node from its children.
      */
-    private void calculateHeight(){
+    public void recalculate(){
         this.height = 1 + Math.max(this.left != null? this.left.getHeight():0, this.right != null? this.right.getHeight():0);
+        calculateSize();
     }
-}
 
+    /**
+     * calculate subtree size of the node from its children.
+     */
+    public void calculateSize(){
+        this.size = this.count + (this.left != null? this.left.size:0) + (this.right != null? this.right.size:0);
+    }
+}
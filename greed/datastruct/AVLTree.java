@@ -3,7 +3,15 @@ package greed.datastruct;
 import greed.datastruct.common.BinarySearchTree;
 import greed.datastruct.common.Node;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
 
 /**
  * Data structure for AVL tree which inherits attributes and functions from its predecessor: Binary Search Tree (BST).
@@ -11,14 +19,62 @@ import java.util.*;
  * The Standard Binary Search Tree is in {@link BinarySearchTree BinarySerachTree.class}.
  * {@link AVLNode greed.datastruct.AVLNode}(concrete implementation of abstract {@link Node greed.datastruct.common.Node}) is used to represent single node in the tree.
  * Supports initialization, insertion, deletion and search on AVL tree while self-balancing after every inset and delete.
+ * A tree made by {@link #initializeMultiset()} is a multiset: a repeated key adds an occurrence to the count of its node
+ * instead of a node, and the order statistics count every occurrence.
+ * A tree made by {@link #initialize(Monoid)} gives every key an int value and folds the values of any key range in
+ * O(log n), see {@link #aggregateRange(int, int)}.
+ * A tree made by {@link #initialize(Balancing)} with {@link Balancing#WAVL} keeps the weaker rank balance of WAVL
+ * trees, trading a little height for fewer rotations on deletes.
  */
 public class AVLTree extends BinarySearchTree<AVLNode> {
 
+    // NULL when nobody observes the tree, the only cost is then a null check per operation.
+    private TreeListener listener;
+    // repeated keys are counted instead of rejected.
+    private final boolean multiset;
+    // NULL unless the nodes are AggregateNodes folding their values with it.
+    private final Monoid monoid;
+    // WAVL rank balance, the nodes are WAVLNodes whose ranks are promoted and demoted explicitly.
+    private final boolean weak;
+
+    /**
+     * Balancing policy of a tree, chosen by {@link #initialize(Balancing)}.
+     */
+    public enum Balancing {
+        /**
+         * Strict AVL balance: the heights of two siblings differ by at most one. A delete may rotate at every level of
+         * its path.
+         */
+        AVL,
+        /**
+         * Weak AVL (rank-balanced) trees of Haeupler, Sen and Tarjan: every node has a rank, one or two above the rank
+         * of each child, and every leaf has rank 0. Inserts rebalance exactly like AVL; a delete rotates at most twice
+         * and the promotions and demotions are amortised O(1) per update. Without deletes the tree is an AVL tree,
+         * with deletes its height stays below 2 log2(n). Split, join, set operations and the AVL invariants they
+         * rely on do not apply.
+         */
+        WAVL
+    }
+
     /**
      * private constructor, {@link #initialize() initialize()} is to initialize a binary tree.
      */
     private AVLTree() {
-        super(AVLNode::new);
+        this(false, null);
+    }
+
+    private AVLTree(boolean multiset, Monoid monoid) {
+        super(monoid == null ? AVLNode::new : () -> new AggregateNode(monoid));
+        this.multiset = multiset;
+        this.monoid = monoid;
+        this.weak = false;
+    }
+
+    private AVLTree(Balancing balancing) {
+        super(balancing == Balancing.WAVL ? WAVLNode::new : AVLNode::new);
+        this.multiset = false;
+        this.monoid = null;
+        this.weak = balancing == Balancing.WAVL;
     }
 
 
@@ -30,75 +86,899 @@ public class AVLTree extends BinarySearchTree<AVLNode> {
         return new AVLTree();
     }
 
+    /**
+     * Construct an empty AVL multiset. Inserting a key already in the tree increments its count in O(log n), without
+     * allocation or rebalancing; {@link #delete(int)} removes one occurrence and the node goes with the last one.
+     * {@link #size()}, {@link #rank(int)}, {@link #select(int)}, {@link #countRange(int, int)} and {@link #median()}
+     * count every occurrence, searches and range listings report each distinct key once, see {@link #count(int)}.
+     * @return empty AVL multiset.
+     */
+    public static AVLTree initializeMultiset(){
+        return new AVLTree(true, null);
+    }
+
+    /**
+     * Construct an empty AVL tree whose keys carry an int value, folded by a monoid over key ranges in O(log n) by
+     * {@link #aggregateRange(int, int)}. Each node keeps the fold of its subtree, updated with its height.
+     * {@link #insert(int)} gives a key its own value, so {@link Monoid#SUM} over plain inserts sums the keys;
+     * {@link #insert(int, int)} sets any value, eg: to use the tree as an ordered interval-sum index.
+     * Nodes take 16 more bytes than in a plain tree.
+     * @param monoid operation folding the values, eg: {@link Monoid#SUM}, {@link Monoid#MIN}, {@link Monoid#MAX}.
+     * @return empty aggregating AVL tree.
+     */
+    public static AVLTree initialize(Monoid monoid){
+        return new AVLTree(false, Objects.requireNonNull(monoid));
+    }
+
+    /**
+     * Construct an empty tree with the given balancing policy.
+     * @param balancing {@link Balancing#AVL} for the tree of {@link #initialize()}, {@link Balancing#WAVL} for fewer
+     *                  rotations under insert and delete churn.
+     * @return empty tree.
+     */
+    public static AVLTree initialize(Balancing balancing){
+        return new AVLTree(Objects.requireNonNull(balancing));
+    }
+
+    /**
+     * Balancing policy of the tree, see {@link #initialize(Balancing)}.
+     * @return {@link Balancing#WAVL} for a weak AVL tree, {@link Balancing#AVL} for any other tree.
+     */
+    public Balancing getBalancing() {
+        return weak ? Balancing.WAVL : Balancing.AVL;
+    }
+
+    /**
+     * Operation folding the values of the tree, see {@link #initialize(Monoid)}.
+     * @return monoid of the tree, NULL if its keys carry no value.
+     */
+    public Monoid getMonoid() {
+        return monoid;
+    }
+
+    /**
+     * Whether the tree counts repeated keys, see {@link #initializeMultiset()}.
+     * @return true for a multiset, false for a set.
+     */
+    public boolean isMultiset() {
+        return multiset;
+    }
+
+    /**
+     * Build a perfectly balanced AVL tree from keys in strictly ascending order in O(n), without any rotation.
+     * @param sortedKeys keys in strictly ascending order.
+     * @return AVL tree holding the given keys.
+     * @throws IllegalArgumentException if the keys are not strictly ascending.
+     */
+    public static AVLTree fromSorted(int[] sortedKeys){
+        for (int i = 1; i < sortedKeys.length; i++) {
+            if (sortedKeys[i - 1] >= sortedKeys[i]) {
+                throw new IllegalArgumentException("keys must be in strictly ascending order, found " + sortedKeys[i - 1] + " before " + sortedKeys[i] + ".");
+            }
+        }
+        AVLNode[] nodes = new AVLNode[sortedKeys.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new AVLNode(sortedKeys[i]);
+        }
+        AVLTree tree = new AVLTree();
+        tree.setRoot(link(nodes, 0, nodes.length));
+        return tree;
+    }
+
+    /**
+     * Build a perfectly balanced AVL tree from a stream of keys in strictly ascending order in O(n).
+     * @param sortedKeys keys in strictly ascending order.
+     * @return AVL tree holding the given keys.
+     * @throws IllegalArgumentException if the keys are not strictly ascending.
+     */
+    public static AVLTree fromSorted(IntStream sortedKeys){
+        return fromSorted(sortedKeys.toArray());
+    }
+
+    /**
+     * Build a perfectly balanced AVL tree from a known number of keys pulled in ascending order, in O(n) and without
+     * buffering the keys: nodes are created in key order and linked on the way back up. The order is not checked.
+     * @param count number of distinct keys.
+     * @param sortedKeys supplies the keys in strictly ascending order, called exactly count times.
+     * @param counts supplies the number of occurrences of each key right after the key, NULL for a set.
+     * @return AVL tree holding the keys, a multiset if counts were given.
+     */
+    static AVLTree fromSorted(int count, IntSupplier sortedKeys, IntSupplier counts){
+        AVLTree tree = new AVLTree(counts != null, null);
+        tree.setRoot(build(count, sortedKeys, counts));
+        return tree;
+    }
+
+    /**
+     * Write the tree in a compact binary form: keys in ascending order, delta-encoded as varints, the counts of a
+     * multiset, and a checksum.
+     * Streams through a fixed buffer, see {@link #readFrom(ReadableByteChannel)} to read it back.
+     * @param output channel receiving the tree.
+     * @throws IOException if the channel cannot be written.
+     * @throws IllegalStateException if the keys carry values, the format only stores keys and counts.
+     */
+    public void writeTo(WritableByteChannel output) throws IOException {
+        TreeCodec.write(output, this, false);
+    }
+
+    /**
+     * Write the tree in a compact binary form, optionally deflated.
+     * @param output channel receiving the tree.
+     * @param compress deflate the delta-encoded keys, worth it for sparse or patterned keys.
+     * @throws IOException if the channel cannot be written.
+     * @throws IllegalStateException if the keys carry values, the format only stores keys and counts.
+     */
+    public void writeTo(WritableByteChannel output, boolean compress) throws IOException {
+        TreeCodec.write(output, this, compress);
+    }
+
+    /**
+     * Read a tree written by {@link #writeTo(WritableByteChannel, boolean)}, rebuilt perfectly balanced in O(n) while
+     * the keys stream in. The channel is read in blocks and may be consumed past the end of the tree, but a read only
+     * waits for bytes of the tree, so the writer may keep a pipe or a socket open.
+     * @param input channel positioned at the start of a tree.
+     * @return tree holding the keys read.
+     * @throws IOException if the data is truncated, corrupt or not a tree.
+     */
+    public static AVLTree readFrom(ReadableByteChannel input) throws IOException {
+        return TreeCodec.read(input);
+    }
+
     /**
      * Inserts a key to the existing AVL tree. This method overrides the functionality of Binary Search Tree insertion.
-     * It uses standard Binary Search Tree insertion of it's super class() ({@link BinarySearchTree BinarySerachTree.class}) and perform re-balancing on the output of BST insertion.
-     * @param key key of the new node to be inserted (Do not support duplicate keys).
-     * @return always returns null although method signature has a stack due to overriding.
+     * It uses standard Binary Search Tree insertion of it's super class() ({@link BinarySearchTree BinarySerachTree.class}) and perform re-balancing on the recorded path.
+     * Re-balancing stops at the first node whose height did not change, at most one rotation is needed.
+     * @param key key of the new node to be inserted (a set ignores duplicate keys, a multiset counts them).
+     * @return true if the key was inserted, false if it was already in a set.
+     * @throws IllegalStateException if a multiset already holds {@link Integer#MAX_VALUE} keys.
      */
     @Override
-    public Stack<AVLNode> insert(int key) {
+    public boolean insert(int key) {
+        return insert(key, key, false);
+    }
+
+    /**
+     * Insert a key with a value, or replace the value of a key already in the tree. The folds of the ancestors are
+     * updated on the way back up, in O(log n).
+     * @param key key to be inserted.
+     * @param value value of the key.
+     * @return true if the key was inserted, false if it was already in the tree and only its value changed.
+     * @throws IllegalStateException if the tree was not made by {@link #initialize(Monoid)}.
+     */
+    public boolean insert(int key, int value) {
+        requireMonoid();
+        return insert(key, value, true);
+    }
+
+    private boolean insert(int key, int value, boolean replace) {
+        if (listener != null) {
+            long start = System.nanoTime();
+            boolean inserted = insertAndBalance(key, value, replace);
+            listener.onInsert(inserted, getPathLength(), heightOf(getRoot()), System.nanoTime() - start);
+            return inserted;
+        }
+        return insertAndBalance(key, value, replace);
+    }
+
+    private boolean insertAndBalance(int key, int value, boolean replace) {
         // Doing standard insertion in BST
-        Stack<AVLNode> nodeTrace = super.insert(key);
-
-        // Re-balancing after insertion to maintain AVL properties.
-        if (nodeTrace.size() > 2) {
-            AVLNode grandChild = nodeTrace.pop();
-            AVLNode child = nodeTrace.pop();
-            AVLNode aNode = nodeTrace.pop();
-            AVLNode root = balanceTreeOnInsert(grandChild, child, aNode);
-            while ( root == null && nodeTrace.size() > 0) {
-                grandChild = child;
-                child = aNode;
-                aNode = nodeTrace.pop();
-                root = balanceTreeOnInsert(grandChild, child, aNode);
-            }
-            if(root != null){
-                try {
-                    AVLNode parent = nodeTrace.pop();
-                    if (parent.getKey() > root.getKey()) {
-                        parent.setLeft(root);
-                    } else {
-                        parent.setRight(root);
-                    }
-                } catch (EmptyStackException e){
-                    setRoot(root);
-                }
+        if (!super.insert(key)) {
+            if (replace) {
+                replaceValue(key, value);
             }
+            return multiset && addOccurrence(key);
         }
-        return null;
+        if (monoid != null) {
+            // the new node is linked with no value yet, the loop below refolds its ancestors.
+            ((AggregateNode) getPathNode(getPathLength() - 1)).setValue(value);
+        }
+        if (weak) {
+            balanceWeakInsert();
+            return true;
+        }
+
+        // Re-balancing after insertion to maintain AVL properties, last node on the path is the new node.
+        int i = getPathLength() - 2;
+        for (; i >= 0; i--) {
+            AVLNode aNode = getPathNode(i);
+            aNode.recalculate();
+            int balance = aNode.getBalance();
+            if (balance == 0) {
+                // height of the subtree did not change, ancestors are balanced.
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                AVLNode root = balanceTreeOnInsert(getPathNode(i + 2), getPathNode(i + 1), aNode);
+                replaceChild(i > 0 ? getPathNode(i - 1) : null, aNode, root);
+                // rotation restores the height the subtree had before the insertion.
+                break;
+            }
+        }
+        // subtree sizes grew all the way up.
+        updateSizesAbove(i);
+        return true;
     }
 
     /**
      * Deletes a key in the existing AVL tree. This method overrides the functionality of Binary Search Tree deletion.
-     * It uses standard binary tree deletion of it's super class and perform re-balancing on the output of BST insertion.
+     * It uses standard binary tree deletion of it's super class and perform re-balancing on the recorded path.
+     * Re-balancing stops at the first node whose height did not change.
+     * In a multiset only one occurrence is removed, the same as {@link #removeOne(int)}.
      * @param key key of the node to be deleted (Will do nothing if the key is not in the tree).
-     * @return always returns null although method signature has a stack due to overriding.
+     * @return true if the key was removed, false if it was not in the tree.
      */
     @Override
-    public Stack<AVLNode> delete(int key) {
+    public boolean delete(int key) {
+        return remove(key, false) > 0;
+    }
+
+    /**
+     * Remove one occurrence of a key. In a multiset the count of the key drops by one in O(log n) without rebalancing
+     * and the node is deleted with the last occurrence, in a set this is {@link #delete(int)}.
+     * @param key key to be removed.
+     * @return true if an occurrence was removed, false if the key was not in the tree.
+     */
+    public boolean removeOne(int key) {
+        return remove(key, false) > 0;
+    }
+
+    /**
+     * Remove a key with all its occurrences.
+     * @param key key to be removed.
+     * @return number of occurrences removed, 0 if the key was not in the tree.
+     */
+    public int removeAll(int key) {
+        return remove(key, true);
+    }
+
+    /**
+     * Number of occurrences of a key. O(log n).
+     * @param key key to be counted.
+     * @return occurrences of the key, 0 or 1 in a set.
+     */
+    public int count(int key) {
+        AVLNode node = getRoot();
+        while (node != null) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return node.getCount();
+            }
+            node = key < nodeKey ? node.getLeft() : node.getRight();
+        }
+        return 0;
+    }
+
+    private int remove(int key, boolean allOccurrences) {
+        if (listener != null) {
+            long start = System.nanoTime();
+            int removed = deleteAndBalance(key, allOccurrences);
+            listener.onDelete(removed > 0, getPathLength(), heightOf(getRoot()), System.nanoTime() - start);
+            return removed;
+        }
+        return deleteAndBalance(key, allOccurrences);
+    }
+
+    private int deleteAndBalance(int key, boolean allOccurrences) {
         // Doing standard deletion in BST
-        Stack<AVLNode> nodeTrace =  super.delete(key);
-
-        // Re-balancing after deletion to maintain AVL properties.
-        while ( nodeTrace.size() > 0) {
-            AVLNode root = balanceTreeOnDelete(nodeTrace.pop());
-            if(root != null){
-                try {
-                    AVLNode parent = nodeTrace.peek();
-                    if (parent.getKey() > root.getKey()) {
-                        parent.setLeft(root);
-                    } else {
-                        parent.setRight(root);
-                    }
-                } catch (EmptyStackException e){
-                    setRoot(root);
+        AVLNode node = find(key);
+        if (node == null) {
+            return 0;
+        }
+        int removed = node.getCount();
+        if (removed > 1 && !allOccurrences) {
+            node.setCount(removed - 1);
+            node.addToSize(-1);
+            addToSizesAbove(-1);
+            return 1;
+        }
+        AVLNode unlinked = unlink(node);
+        if (weak) {
+            balanceWeakDelete(unlinked);
+            return removed;
+        }
+
+        // Re-balancing after deletion to maintain AVL properties, last node on the path is the parent of the removed node.
+        int i = getPathLength() - 1;
+        for (; i >= 0; i--) {
+            AVLNode aNode = getPathNode(i);
+            aNode.recalculate();
+            int balance = aNode.getBalance();
+            if (balance == 1 || balance == -1) {
+                // node was evenly balanced before, its height did not change.
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                AVLNode root = balanceTreeOnDelete(aNode);
+                replaceChild(i > 0 ? getPathNode(i - 1) : null, aNode, root);
+                if (root.getBalance() != 0) {
+                    // cases R0 and L0 keep the height of the subtree.
+                    break;
                 }
             }
         }
+        // subtree sizes shrank all the way up.
+        updateSizesAbove(i);
+        return removed;
+    }
+
+    /**
+     * Count one more occurrence of a key a failed {@link BinarySearchTree#insert(int)} found, whose path it recorded.
+     */
+    private boolean addOccurrence(int key) {
+        if (size() == Integer.MAX_VALUE) {
+            throw new IllegalStateException("multiset is full, it holds " + Integer.MAX_VALUE + " keys.");
+        }
+        int pathLength = getPathLength();
+        AVLNode parent = pathLength > 0 ? getPathNode(pathLength - 1) : null;
+        AVLNode node = parent == null ? getRoot() : key < parent.getKey() ? parent.getLeft() : parent.getRight();
+        node.setCount(node.getCount() + 1);
+        node.addToSize(1);
+        addToSizesAbove(1);
+        return true;
+    }
+
+    /**
+     * Replace the value of a key a failed {@link BinarySearchTree#insert(int)} found, and refold its ancestors.
+     */
+    private void replaceValue(int key, int value) {
+        int pathLength = getPathLength();
+        AVLNode parent = pathLength > 0 ? getPathNode(pathLength - 1) : null;
+        AVLNode node = parent == null ? getRoot() : key < parent.getKey() ? parent.getLeft() : parent.getRight();
+        ((AggregateNode) node).setValue(value);
+        updateSizesAbove(pathLength);
+    }
+
+    /**
+     * The predecessor brings its count and its value along with its key.
+     */
+    @Override
+    protected void moveKey(AVLNode from, AVLNode to) {
+        super.moveKey(from, to);
+        to.setCount(from.getCount());
+        if (monoid != null) {
+            ((AggregateNode) to).setValue(((AggregateNode) from).getValue());
+        }
+    }
+
+    /**
+     * Value of a key.
+     * @param key key to be searched.
+     * @return value of the key, NULL if the key is not in the tree.
+     * @throws IllegalStateException if the tree was not made by {@link #initialize(Monoid)}.
+     */
+    public Integer getValue(int key) {
+        requireMonoid();
+        AVLNode node = getRoot();
+        while (node != null) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return ((AggregateNode) node).getValue();
+            }
+            node = key < nodeKey ? node.getLeft() : node.getRight();
+        }
         return null;
     }
 
+    /**
+     * Fold the values of a key range with the monoid of the tree, in ascending key order, without visiting the keys:
+     * the subtrees inside the range are taken whole from their folds. O(log n).
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @return fold of the values of the keys smallKey ≤key ≤bigKey, the identity of the monoid if there is none.
+     * @throws IllegalStateException if the tree was not made by {@link #initialize(Monoid)}.
+     */
+    public long aggregateRange(int smallKey, int bigKey) {
+        requireMonoid();
+        if (smallKey > bigKey) {
+            return monoid.identity();
+        }
+        return AggregateNode.aggregateRange((AggregateNode) getRoot(), smallKey, bigKey, monoid);
+    }
+
+    /**
+     * Fold the values of the whole tree. O(1).
+     * @return fold of every value, the identity of the monoid if the tree is empty.
+     * @throws IllegalStateException if the tree was not made by {@link #initialize(Monoid)}.
+     */
+    public long aggregate() {
+        requireMonoid();
+        return AggregateNode.aggregateOf(getRoot(), monoid);
+    }
+
+    private void requireMonoid() {
+        if (monoid == null) {
+            throw new IllegalStateException("the keys of this tree carry no value, it was not initialized with a monoid.");
+        }
+    }
+
+    /**
+     * Membership test. Without listener this is the plain walk of {@link BinarySearchTree#contains(int)}, with one the
+     * walk also counts the nodes it visits and is timed. {@link #search(int)} goes through here as well.
+     * @param key key to be searched.
+     * @return true if the key is in the tree.
+     */
+    @Override
+    public boolean contains(int key) {
+        if (listener != null) {
+            return containsObserved(key);
+        }
+        return super.contains(key);
+    }
+
+    private boolean containsObserved(int key) {
+        long start = System.nanoTime();
+        int pathLength = 0;
+        AVLNode node = getRoot();
+        while (node != null && node.getKey() != key) {
+            pathLength++;
+            node = key < node.getKey() ? node.getLeft() : node.getRight();
+        }
+        boolean found = node != null;
+        listener.onSearch(found, found ? pathLength + 1 : pathLength, System.nanoTime() - start);
+        return found;
+    }
+
+    /**
+     * Install a listener notified of every insert, delete, point search and rebalancing, eg: a {@link TreeMetrics}.
+     * Batch and set operations ({@link #bulkInsert(int[])}, {@link #split(int)}, ...) are not reported, and the trees
+     * they return have no listener.
+     * @param listener listener to be notified, NULL to disable notifications.
+     */
+    public void setListener(TreeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Listener installed with {@link #setListener(TreeListener)}.
+     * @return current listener, NULL if there is none.
+     */
+    public TreeListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Inserts a batch of keys. Small batches are inserted one by one, larger ones are sorted and merged with the keys
+     * of the tree, and the tree is relinked perfectly balanced in O(n + m log m), reusing the existing nodes. Either
+     * way the listener is not notified, see {@link #setListener(TreeListener)}.
+     * @param keys keys to be inserted in any order, keys already in the tree or repeated in the batch are skipped by a
+     *             set and counted by a multiset.
+     * @return number of keys actually inserted.
+     * @throws IllegalStateException if a multiset would hold more than {@link Integer#MAX_VALUE} keys.
+     */
+    public int bulkInsert(int[] keys){
+        int size = size();
+        if (multiset && (long) size + keys.length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("multiset is full, it cannot hold " + ((long) size + keys.length) + " keys.");
+        }
+        // m single inserts cost about m log n, the merge costs about n + m log m. The merge relinks the nodes with AVL
+        // heights, a WAVL tree always takes the single inserts.
+        if (weak || (long) keys.length * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+            // no insert and no rotation of a batch is reported.
+            TreeListener saved = listener;
+            listener = null;
+            int inserted = 0;
+            try {
+                for (int key : keys) {
+                    if (insertAndBalance(key, key, false)) {
+                        inserted++;
+                    }
+                }
+            } finally {
+                listener = saved;
+            }
+            return inserted;
+        }
+        int[] batch = keys.clone();
+        Arrays.sort(batch);
+        int nodes = multiset ? countNodes(getRoot()) : size;
+        AVLNode[] existing = new AVLNode[nodes];
+        collectInOrder(getRoot(), existing, 0);
+
+        AVLNode[] merged = new AVLNode[nodes + batch.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < existing.length || j < batch.length) {
+            if (j == batch.length || (i < existing.length && existing[i].getKey() <= batch[j])) {
+                if (i < existing.length && j < batch.length && existing[i].getKey() == batch[j]) {
+                    if (multiset) {
+                        addCount(existing[i], 1);
+                    }
+                    j++;
+                }
+                merged[count++] = existing[i++];
+            } else {
+                if (count == 0 || merged[count - 1].getKey() != batch[j]) {
+                    merged[count++] = newNode(batch[j]);
+                } else if (multiset) {
+                    addCount(merged[count - 1], 1);
+                }
+                j++;
+            }
+        }
+        // link recalculates the sizes from the counts.
+        setRoot(link(merged, 0, count));
+        return multiset ? keys.length : count - nodes;
+    }
+
+    /**
+     * Split the tree at a key in O(log n). This tree keeps the keys smaller than the given key, the keys greater or
+     * equal move to the returned tree.
+     * @param key split key, it does not have to be in the tree.
+     * @return tree holding the keys greater or equal to the given key.
+     * @throws IllegalStateException if the tree is a WAVL tree.
+     */
+    public AVLTree split(int key) {
+        if (weak) {
+            throw new IllegalStateException("a WAVL tree cannot be split, split and join need AVL heights.");
+        }
+        AVLJoin.Split split = AVLJoin.split(getRoot(), key);
+        setRoot(split.left);
+        AVLTree tail = new AVLTree(multiset, monoid);
+        tail.setRoot(split.found != null ? AVLJoin.join(null, split.found, split.right) : split.right);
+        return tail;
+    }
+
+    /**
+     * Join two trees and a key in O(|h(left) - h(right)| + 1). Both trees are emptied, their nodes are reused.
+     * The result is a multiset if either tree is one. The key gets its own value in an aggregating tree.
+     * @param left tree whose keys are all smaller than key.
+     * @param key key in between the two trees.
+     * @param right tree whose keys are all greater than key.
+     * @return tree holding the keys of both trees and the given key.
+     * @throws IllegalArgumentException if a key of left is not smaller, or a key of right is not greater than key, or
+     *                                  if the trees do not fold their values with the same monoid, or if either is a
+     *                                  WAVL tree.
+     */
+    public static AVLTree join(AVLTree left, int key, AVLTree right) {
+        requireSameMonoid(left, right);
+        requireStrict(left, right);
+        AVLNode leftMax = left.getRoot();
+        while (leftMax != null && leftMax.getRight() != null) {
+            leftMax = leftMax.getRight();
+        }
+        AVLNode rightMin = right.getRoot();
+        while (rightMin != null && rightMin.getLeft() != null) {
+            rightMin = rightMin.getLeft();
+        }
+        if ((leftMax != null && leftMax.getKey() >= key) || (rightMin != null && rightMin.getKey() <= key) || (left == right && left.getRoot() != null)) {
+            throw new IllegalArgumentException("keys of left must be smaller and keys of right greater than " + key + ".");
+        }
+        AVLTree joined = new AVLTree(left.multiset || right.multiset, left.monoid);
+        joined.setRoot(AVLJoin.join(left.getRoot(), left.newNode(key), right.getRoot()));
+        left.setRoot(null);
+        right.setRoot(null);
+        return joined;
+    }
+
+    /**
+     * Union of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the common fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first first tree.
+     * @param second second tree.
+     * @return tree holding the keys that are in either tree.
+     */
+    public static AVLTree union(AVLTree first, AVLTree second) {
+        return union(first, second, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Union of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the given fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first first tree.
+     * @param second second tree.
+     * @param pool pool running the subtrees in parallel.
+     * @return tree holding the keys that are in either tree.
+     */
+    public static AVLTree union(AVLTree first, AVLTree second, ForkJoinPool pool) {
+        return setOperation(AVLJoin.Operation.UNION, first, second, pool);
+    }
+
+    /**
+     * Intersection of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the common fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first first tree.
+     * @param second second tree.
+     * @return tree holding the keys that are in both trees.
+     */
+    public static AVLTree intersection(AVLTree first, AVLTree second) {
+        return intersection(first, second, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Intersection of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the given fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first first tree.
+     * @param second second tree.
+     * @param pool pool running the subtrees in parallel.
+     * @return tree holding the keys that are in both trees.
+     */
+    public static AVLTree intersection(AVLTree first, AVLTree second, ForkJoinPool pool) {
+        return setOperation(AVLJoin.Operation.INTERSECTION, first, second, pool);
+    }
+
+    /**
+     * Difference of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the common fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first tree the keys are taken from.
+     * @param second tree of the keys to leave out.
+     * @return tree holding the keys of first that are not in second.
+     */
+    public static AVLTree difference(AVLTree first, AVLTree second) {
+        return difference(first, second, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Difference of two trees, in O(m log(n/m + 1)) work for trees of n ≥ m keys, split over the given fork-join pool.
+     * Both trees are emptied, their nodes are reused.
+     * @param first tree the keys are taken from.
+     * @param second tree of the keys to leave out.
+     * @param pool pool running the subtrees in parallel.
+     * @return tree holding the keys of first that are not in second.
+     */
+    public static AVLTree difference(AVLTree first, AVLTree second, ForkJoinPool pool) {
+        return setOperation(AVLJoin.Operation.DIFFERENCE, first, second, pool);
+    }
+
+    private static AVLTree setOperation(AVLJoin.Operation operation, AVLTree first, AVLTree second, ForkJoinPool pool) {
+        if (first.multiset || second.multiset) {
+            throw new IllegalArgumentException("set operations combine distinct keys, they do not apply to multisets.");
+        }
+        requireSameMonoid(first, second);
+        requireStrict(first, second);
+        AVLTree result = new AVLTree(false, first.monoid);
+        if (first == second) {
+            // a set combined with itself, the nodes must not be used twice.
+            result.setRoot(operation == AVLJoin.Operation.DIFFERENCE ? null : first.getRoot());
+        } else {
+            result.setRoot(pool.invoke(new AVLJoin.SetTask(operation, first.getRoot(), second.getRoot())));
+        }
+        first.setRoot(null);
+        second.setRoot(null);
+        return result;
+    }
+
+    /**
+     * Number of keys in the tree, every occurrence counts in a multiset.
+     * @return number of keys.
+     */
+    public int size() {
+        AVLNode root = getRoot();
+        return root != null ? root.getSize() : 0;
+    }
+
+    /**
+     * Rank of a key, using the subtree sizes kept in {@link AVLNode}. O(log n).
+     * @param key any key, it does not have to be in the tree.
+     * @return number of keys in the tree smaller than the given key.
+     */
+    public int rank(int key) {
+        int rank = 0;
+        AVLNode node = getRoot();
+        while (node != null) {
+            if (key <= node.getKey()) {
+                node = node.getLeft();
+            } else {
+                rank += node.getCount() + sizeOf(node.getLeft());
+                node = node.getRight();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Select the key of a given rank, using the subtree sizes kept in {@link AVLNode}. O(log n).
+     * @param rank position of the key in ascending order, starting at 0.
+     * @return key with exactly rank smaller keys in the tree.
+     * @throws IndexOutOfBoundsException if rank is negative or not smaller than the size of the tree.
+     */
+    public int select(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("rank " + rank + " is out of range for a tree of " + size() + " keys.");
+        }
+        AVLNode node = getRoot();
+        while (true) {
+            int leftSize = sizeOf(node.getLeft());
+            if (rank < leftSize) {
+                node = node.getLeft();
+            } else if (rank < leftSize + node.getCount()) {
+                return node.getKey();
+            } else {
+                rank -= leftSize + node.getCount();
+                node = node.getRight();
+            }
+        }
+    }
+
+    /**
+     * Count the keys in a range without visiting them. O(log n).
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @return number of keys in the range smallKey ≤key ≤bigKey.
+     */
+    public int countRange(int smallKey, int bigKey) {
+        if (smallKey > bigKey) {
+            return 0;
+        }
+        int countUpToBigKey = bigKey == Integer.MAX_VALUE ? size() : rank(bigKey + 1);
+        return countUpToBigKey - rank(smallKey);
+    }
+
+    /**
+     * Lower median of the keys. O(log n).
+     * @return the key of rank (size - 1) / 2, NULL if the tree is empty.
+     */
+    public Integer median() {
+        int size = size();
+        return size > 0 ? select((size - 1) / 2) : null;
+    }
+
+    /**
+     * Page through a range. Skipping the offset costs O(log n) thanks to {@link #rank(int)} and {@link #select(int)},
+     * only the keys of the page are visited. A multiset pages through its distinct keys and skips them one by one.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param offset number of keys of the range to skip.
+     * @param limit maximum number of keys to pass to the action.
+     * @param action receives the keys of the page.
+     * @return number of keys passed to the action.
+     */
+    @Override
+    public int forEachInRange(int smallKey, int bigKey, int offset, int limit, IntConsumer action) {
+        if (offset <= 0 || limit < 0 || multiset) {
+            return super.forEachInRange(smallKey, bigKey, offset, limit, action);
+        }
+        long first = (long) rank(smallKey) + offset;
+        if (first >= size()) {
+            return 0;
+        }
+        int firstKey = select((int) first);
+        if (firstKey > bigKey) {
+            return 0;
+        }
+        return super.forEachInRange(firstKey, bigKey, 0, limit, action);
+    }
+
+    /**
+     * Number of nodes, the distinct keys: {@link #size()} for a set, a walk over the tree in O(n) for a multiset.
+     * @return number of distinct keys.
+     */
+    int nodeCount() {
+        return multiset ? countNodes(getRoot()) : size();
+    }
+
+    /**
+     * Root of the tree, for the wrappers of this package that walk the nodes themselves.
+     * @return root node, null if the tree is empty.
+     */
+    AVLNode root() {
+        return getRoot();
+    }
+
+    /**
+     * Check the invariants of the whole tree: keys in ascending order and every subtree size equal to the one
+     * recalculated from the children. An AVL tree must have the heights of the children within one of each other and
+     * every height recalculated from the children. A WAVL tree must have rank differences of 1 or 2 to every child,
+     * a missing child having rank -1, and rank 0 at every leaf. Used by {@link TreeChecks}.
+     * @throws IllegalStateException naming the first node that breaks an invariant.
+     */
+    void checkInvariants() {
+        checkSubtree(getRoot(), Long.MIN_VALUE, Long.MAX_VALUE, weak);
+    }
+
+    /**
+     * Check the invariants of a subtree whose keys must lie in low .. high.
+     * @return height of the subtree, its rank plus one in a WAVL tree.
+     */
+    private static int checkSubtree(AVLNode node, long low, long high, boolean weak) {
+        if (node == null) {
+            return 0;
+        }
+        int key = node.getKey();
+        if (key < low || key > high) {
+            throw new IllegalStateException("key " + key + " is out of order.");
+        }
+        int left = checkSubtree(node.getLeft(), low, key - 1L, weak);
+        int right = checkSubtree(node.getRight(), key + 1L, high, weak);
+        if (weak) {
+            int leftDifference = node.getHeight() - left;
+            int rightDifference = node.getHeight() - right;
+            if (leftDifference < 1 || leftDifference > 2 || rightDifference < 1 || rightDifference > 2) {
+                throw new IllegalStateException("node " + key + " has rank differences " + leftDifference + " and "
+                        + rightDifference + ".");
+            }
+            if (left == 0 && right == 0 && node.getHeight() != 1) {
+                throw new IllegalStateException("leaf " + key + " has rank " + (node.getHeight() - 1) + ".");
+            }
+        } else if (Math.abs(left - right) > 1 || node.getHeight() != 1 + Math.max(left, right)) {
+            throw new IllegalStateException("node " + key + " has height " + node.getHeight()
+                    + " over children of heights " + left + " and " + right + ".");
+        }
+        if (node.getSize() != node.getCount() + sizeOf(node.getLeft()) + sizeOf(node.getRight())) {
+            throw new IllegalStateException("node " + key + " has a wrong subtree size.");
+        }
+        return node.getHeight();
+    }
+
+    /**
+     * Refresh the subtree sizes of the path nodes above the point where re-balancing stopped.
+     * @param stop index on the path where re-balancing stopped, -1 if it reached the root.
+     */
+    private void updateSizesAbove(int stop) {
+        for (int i = stop - 1; i >= 0; i--) {
+            getPathNode(i).calculateSize();
+        }
+    }
+
+    private static int sizeOf(AVLNode node) {
+        return node != null ? node.getSize() : 0;
+    }
+
+    private static void requireSameMonoid(AVLTree first, AVLTree second) {
+        if (first.monoid != second.monoid) {
+            throw new IllegalArgumentException("trees folding their values with different monoids cannot be combined.");
+        }
+    }
+
+    private static void requireStrict(AVLTree first, AVLTree second) {
+        if (first.weak || second.weak) {
+            throw new IllegalArgumentException("WAVL trees cannot be joined or combined, join needs AVL heights.");
+        }
+    }
+
+    /**
+     * New node for a key, an {@link AggregateNode} valued with its key in an aggregating tree.
+     */
+    private AVLNode newNode(int key) {
+        return monoid != null ? new AggregateNode(key, key, monoid) : new AVLNode(key);
+    }
+
+    private static int heightOf(AVLNode node) {
+        return node != null ? node.getHeight() : 0;
+    }
+
+    /**
+     * Add to the subtree sizes of the nodes on the recorded path, for a change of count right below it.
+     * @param delta occurrences added or removed.
+     */
+    private void addToSizesAbove(int delta) {
+        for (int i = getPathLength() - 1; i >= 0; i--) {
+            getPathNode(i).addToSize(delta);
+        }
+    }
+
+    private static void addCount(AVLNode node, int delta) {
+        node.setCount(node.getCount() + delta);
+    }
+
+    /**
+     * Number of nodes, distinct keys, of a subtree. O(n).
+     */
+    private static int countNodes(AVLNode root) {
+        int nodes = 0;
+        while (root != null) {
+            nodes += 1 + countNodes(root.getLeft());
+            root = root.getRight();
+        }
+        return nodes;
+    }
+
+    /**
+     * Replace a child link after a rotation.
+     * @param parent parent of the rotated subtree, null if the subtree is the whole tree.
+     * @param oldChild root of the subtree before the rotation.
+     * @param newChild root of the subtree after the rotation.
+     */
+    private void replaceChild(AVLNode parent, AVLNode oldChild, AVLNode newChild) {
+        if (parent == null) {
+            setRoot(newChild);
+        } else if (parent.getLeft() == oldChild) {
+            parent.setLeft(newChild);
+        } else {
+            parent.setRight(newChild);
+        }
+    }
+
     /**
      * Balances AVL tree after insertion. Handles 4 cases (LL, RR, LR and RL).
      * @param grandChild the grandchild of aNode, eventually the newly inserted node.
@@ -111,20 +991,24 @@ public class AVLTree extends BinarySearchTree<AVLNode> {
 
         // Case 1 : LL (newly inserted node is in the left subtree of left subtree of aNode)
         if (balance > 1 && grandChild.getKey() < child.getKey()){
+            notifyRotation(TreeListener.Rotation.LL);
             return rightRotate(aNode);
         }
         // Case 2 : RR (newly inserted node is in the right subtree of the right subtree of aNode)
         if (balance < -1 && grandChild.getKey() > child.getKey()){
+            notifyRotation(TreeListener.Rotation.RR);
             return leftRotate(aNode);
         }
         // Case 3 : LR (newly inserted node is in the right subtree of left subtree of aNode)
         if (balance > 1 && grandChild.getKey() > child.getKey()) {
+            notifyRotation(TreeListener.Rotation.LR);
             aNode.setLeft(leftRotate(child));
             return rightRotate(aNode);
         }
 
         // Case 4 : RL (newly inserted node is in the left subtree of right subtree of aNode)
         if (balance < -1 && grandChild.getKey() < child.getKey()) {
+            notifyRotation(TreeListener.Rotation.RL);
             aNode.setRight(rightRotate(child));
             return leftRotate(aNode);
         }
@@ -141,19 +1025,23 @@ public class AVLTree extends BinarySearchTree<AVLNode> {
 
         // Case 1 : R0 and R1
         if ( balance > 1 && aNode.getLeft().getBalance() >= 0){
+            notifyRotation(aNode.getLeft().getBalance() == 0 ? TreeListener.Rotation.R0 : TreeListener.Rotation.R1);
             return rightRotate(aNode);
         }
         // Case 2 : L-1 and L0
         if (balance < -1 && aNode.getRight().getBalance() <= 0){
+            notifyRotation(aNode.getRight().getBalance() == 0 ? TreeListener.Rotation.L0 : TreeListener.Rotation.L_MINUS_1);
             return leftRotate(aNode);
         }
         // Case 3 : R-1
         if (balance > 1 && aNode.getLeft().getBalance() < 0) {
+            notifyRotation(TreeListener.Rotation.R_MINUS_1);
             aNode.setLeft(leftRotate(aNode.getLeft()));
             return rightRotate(aNode);
         }
         // Case 4 : L1
         if (balance < -1 && aNode.getRight().getBalance() > 0) {
+            notifyRotation(TreeListener.Rotation.L1);
             aNode.setRight(rightRotate(aNode.getRight()));
             return leftRotate(aNode);
         }
@@ -161,16 +1049,229 @@ public class AVLTree extends BinarySearchTree<AVLNode> {
     }
 
 
+    /**
+     * Rebalancing of a WAVL tree after an insert, the new leaf being last on the path: while a node has the rank of
+     * its parent, promote the parent if its other child is a 1-child, else rotate and stop. The same steps as the AVL
+     * insert, ranks being explicit.
+     */
+    private void balanceWeakInsert() {
+        int i = getPathLength() - 2;
+        AVLNode x = getPathNode(i + 1);
+        for (; i >= 0; i--) {
+            AVLNode parent = getPathNode(i);
+            parent.recalculate();
+            if (parent.getHeight() != x.getHeight()) {
+                // x is a 1-child again, the ranks are valid.
+                break;
+            }
+            AVLNode sibling = parent.getLeft() == x ? parent.getRight() : parent.getLeft();
+            if (parent.getHeight() - heightOf(sibling) == 1) {
+                promote(parent, 1);
+                x = parent;
+                continue;
+            }
+            replaceChild(i > 0 ? getPathNode(i - 1) : null, parent, rotateWeakInsert(parent, x));
+            break;
+        }
+        updateSizesAbove(i);
+    }
+
+    /**
+     * Rotation fixing a 0-child x whose sibling is a 2-child, cases LL, RR, LR and RL of the AVL insert.
+     * @return root of the rebalanced subtree.
+     */
+    private AVLNode rotateWeakInsert(AVLNode parent, AVLNode x) {
+        if (parent.getLeft() == x) {
+            AVLNode inner = x.getRight();
+            if (x.getHeight() - heightOf(inner) == 2) {
+                notifyRotation(TreeListener.Rotation.LL);
+                AVLNode root = rightRotate(parent);
+                promote(parent, -1);
+                return root;
+            }
+            notifyRotation(TreeListener.Rotation.LR);
+            parent.setLeft(leftRotate(x));
+            AVLNode root = rightRotate(parent);
+            promote(inner, 1);
+            promote(x, -1);
+            promote(parent, -1);
+            return root;
+        }
+        AVLNode inner = x.getLeft();
+        if (x.getHeight() - heightOf(inner) == 2) {
+            notifyRotation(TreeListener.Rotation.RR);
+            AVLNode root = leftRotate(parent);
+            promote(parent, -1);
+            return root;
+        }
+        notifyRotation(TreeListener.Rotation.RL);
+        parent.setRight(rightRotate(x));
+        AVLNode root = leftRotate(parent);
+        promote(inner, 1);
+        promote(x, -1);
+        promote(parent, -1);
+        return root;
+    }
+
+    /**
+     * Rebalancing of a WAVL tree after a delete, the parent of the removed node being last on the path: a 2,2 leaf is
+     * demoted, then while a node is a 3-child its parent is demoted (with its sibling if the sibling is a 2,2 node),
+     * else one single or double rotation ends the rebalancing.
+     * @param unlinked node removed from the tree, it tells on which side of its parent the subtree shrank.
+     */
+    private void balanceWeakDelete(AVLNode unlinked) {
+        int i = getPathLength() - 1;
+        if (i < 0) {
+            // the root went, its only child (a leaf) or nothing is left.
+            return;
+        }
+        AVLNode parent = getPathNode(i);
+        // the predecessor of a key moved into its parent hung on the left, with the same key.
+        boolean left = unlinked.getKey() <= parent.getKey();
+        AVLNode x = left ? parent.getLeft() : parent.getRight();
+        if (parent.getLeft() == null && parent.getRight() == null && parent.getHeight() == 2) {
+            // a 2,2 leaf, leaves have rank 0.
+            parent.recalculate();
+            promote(parent, -1);
+            x = parent;
+            i--;
+            left = i >= 0 && getPathNode(i).getLeft() == x;
+        }
+        for (; i >= 0; i--) {
+            parent = getPathNode(i);
+            parent.recalculate();
+            if (parent.getHeight() - heightOf(x) != 3) {
+                break;
+            }
+            AVLNode sibling = left ? parent.getRight() : parent.getLeft();
+            if (parent.getHeight() - sibling.getHeight() == 2) {
+                promote(parent, -1);
+            } else if (sibling.getHeight() - heightOf(sibling.getLeft()) == 2
+                    && sibling.getHeight() - heightOf(sibling.getRight()) == 2) {
+                promote(parent, -1);
+                promote(sibling, -1);
+            } else {
+                replaceChild(i > 0 ? getPathNode(i - 1) : null, parent, rotateWeakDelete(parent, sibling, left));
+                break;
+            }
+            x = parent;
+            left = i > 0 && getPathNode(i - 1).getLeft() == x;
+        }
+        updateSizesAbove(i);
+    }
+
+    /**
+     * Rotation fixing a 3-child whose sibling is a 1-child and not a 2,2 node. Reported as the AVL delete case of the
+     * same shape: L0, L-1 and L1 when the 3-child is on the left, R0, R1 and R-1 when it is on the right.
+     * @param parent parent of the 3-child.
+     * @param sibling sibling of the 3-child.
+     * @param left whether the 3-child is the left child.
+     * @return root of the rebalanced subtree.
+     */
+    private AVLNode rotateWeakDelete(AVLNode parent, AVLNode sibling, boolean left) {
+        AVLNode inner = left ? sibling.getLeft() : sibling.getRight();
+        AVLNode outer = left ? sibling.getRight() : sibling.getLeft();
+        if (sibling.getHeight() - heightOf(outer) == 1) {
+            boolean even = sibling.getHeight() - heightOf(inner) == 1;
+            notifyRotation(left ? (even ? TreeListener.Rotation.L0 : TreeListener.Rotation.L_MINUS_1)
+                    : (even ? TreeListener.Rotation.R0 : TreeListener.Rotation.R1));
+            AVLNode root = left ? leftRotate(parent) : rightRotate(parent);
+            promote(sibling, 1);
+            promote(parent, parent.getLeft() == null && parent.getRight() == null ? -2 : -1);
+            return root;
+        }
+        notifyRotation(left ? TreeListener.Rotation.L1 : TreeListener.Rotation.R_MINUS_1);
+        if (left) {
+            parent.setRight(rightRotate(sibling));
+        } else {
+            parent.setLeft(leftRotate(sibling));
+        }
+        AVLNode root = left ? leftRotate(parent) : rightRotate(parent);
+        promote(inner, 2);
+        promote(sibling, -1);
+        promote(parent, -2);
+        return root;
+    }
+
+    /**
+     * Change the rank of a WAVL node, held in its height field.
+     * @param delta ranks added, negative to demote.
+     */
+    private static void promote(AVLNode node, int delta) {
+        node.setHeight(node.getHeight() + delta);
+    }
+
+    private void notifyRotation(TreeListener.Rotation rotation) {
+        if (listener != null) {
+            listener.onRotation(rotation);
+        }
+    }
+
+    /**
+     * Link nodes sorted by key into a perfectly balanced subtree, heights are recalculated bottom-up by the setters.
+     * @param nodes nodes sorted by key.
+     * @param from first node of the subtree (inclusive).
+     * @param to last node of the subtree (exclusive).
+     * @return root of the subtree.
+     */
+    private static AVLNode link(AVLNode[] nodes, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        AVLNode root = nodes[mid];
+        root.setLeft(link(nodes, from, mid));
+        root.setRight(link(nodes, mid + 1, to));
+        return root;
+    }
+
+    /**
+     * Build a perfectly balanced subtree of count keys pulled in ascending order, the same shape as {@link #link}.
+     * @param count number of keys in the subtree.
+     * @param sortedKeys supplies the keys in ascending order.
+     * @param counts supplies the occurrences of each key after it, NULL for one occurrence each.
+     * @return root of the subtree.
+     */
+    private static AVLNode build(int count, IntSupplier sortedKeys, IntSupplier counts) {
+        if (count == 0) {
+            return null;
+        }
+        AVLNode left = build(count / 2, sortedKeys, counts);
+        AVLNode root = new AVLNode(sortedKeys.getAsInt());
+        if (counts != null) {
+            root.setCount(counts.getAsInt());
+        }
+        root.setLeft(left);
+        root.setRight(build(count - count / 2 - 1, sortedKeys, counts));
+        return root;
+    }
+
+    /**
+     * Collect the nodes of a subtree in key order.
+     * @param root root of the subtree.
+     * @param nodes destination array.
+     * @param index position of the first node of the subtree in nodes.
+     * @return position after the last node of the subtree.
+     */
+    private static int collectInOrder(AVLNode root, AVLNode[] nodes, int index) {
+        if (root == null) {
+            return index;
+        }
+        index = collectInOrder(root.getLeft(), nodes, index);
+        nodes[index++] = root;
+        return collectInOrder(root.getRight(), nodes, index);
+    }
+
     /**
      * Do a right(anti-clockwise) rotation  of the subtree.
      * @param root of the subtree that needed to be rotated.
      * @return root of the balanced subtree.
      */
-    private AVLNode rightRotate(AVLNode root) {
+    static AVLNode rightRotate(AVLNode root) {
         AVLNode child = root.getLeft();
         AVLNode childRSubTree = child.getRight();
-        child.setRight(root);
         root.setLeft(childRSubTree);
+        child.setRight(root);
         return child;
     }
 
@@ -179,11 +1280,11 @@ public class AVLTree extends BinarySearchTree<AVLNode> {
      * @param root of the subtree that needed to be rotated.
      * @return root of the balanced subtree.
      */
-    private AVLNode leftRotate(AVLNode root) {
+    static AVLNode leftRotate(AVLNode root) {
         AVLNode child = root.getRight();
         AVLNode childLSubTree = child.getLeft();
-        child.setLeft(root);
         root.setRight(childLSubTree);
+        child.setLeft(root);
         return child;
     }
 
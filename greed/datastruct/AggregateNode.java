@@ -0,0 +1,106 @@
+package greed.datastruct;
+
+/**
+ * AVL node of an aggregating {@link AVLTree}: carries an int value and the fold, by a {@link Monoid}, of the values of
+ * its subtree. The fold is recalculated with the subtree size, so setLeft, setRight and the rotations keep it up to
+ * date the same way they keep the height.
+ */
+final class AggregateNode extends AVLNode {
+
+    private final Monoid monoid;
+    private int value;
+    // fold of the values of the subtree, in key order.
+    private long aggregate;
+
+    AggregateNode(Monoid monoid) {
+        super();
+        this.monoid = monoid;
+        this.aggregate = monoid.identity();
+    }
+
+    AggregateNode(int key, int value, Monoid monoid) {
+        super(key);
+        this.monoid = monoid;
+        this.value = value;
+        this.aggregate = value;
+    }
+
+    int getValue() {
+        return value;
+    }
+
+    /**
+     * Change the value of the key. The fold of the node is recalculated, the folds of its ancestors are not.
+     * @param value new value.
+     */
+    void setValue(int value) {
+        this.value = value;
+        calculateSize();
+    }
+
+    long getAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * calculate subtree size and fold of the node from its children.
+     */
+    @Override
+    public void calculateSize() {
+        super.calculateSize();
+        long fold = value;
+        if (left != null) {
+            fold = monoid.combine(((AggregateNode) left).aggregate, fold);
+        }
+        if (right != null) {
+            fold = monoid.combine(fold, ((AggregateNode) right).aggregate);
+        }
+        this.aggregate = fold;
+    }
+
+    /**
+     * Fold the values of the keys in a range. The walk goes down to the highest node in the range, then down both
+     * boundaries of the range: every subtree hanging inside a boundary is taken whole from its fold. O(log n).
+     * @param root root of the tree.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param monoid operation of the tree.
+     * @return fold of the values of the keys smallKey ≤key ≤bigKey, in key order.
+     */
+    static long aggregateRange(AggregateNode root, int smallKey, int bigKey, Monoid monoid) {
+        AVLNode split = root;
+        while (split != null && (split.getKey() < smallKey || split.getKey() > bigKey)) {
+            split = split.getKey() < smallKey ? split.getRight() : split.getLeft();
+        }
+        if (split == null) {
+            return monoid.identity();
+        }
+        // keys ≥ smallKey left of the split node, folded from right to left.
+        long suffix = monoid.identity();
+        AVLNode node = split.getLeft();
+        while (node != null) {
+            if (node.getKey() >= smallKey) {
+                suffix = monoid.combine(monoid.combine(((AggregateNode) node).value, aggregateOf(node.getRight(), monoid)), suffix);
+                node = node.getLeft();
+            } else {
+                node = node.getRight();
+            }
+        }
+        // keys ≤ bigKey right of the split node, folded from left to right.
+        long prefix = monoid.identity();
+        node = split.getRight();
+        while (node != null) {
+            if (node.getKey() <= bigKey) {
+                prefix = monoid.combine(prefix, monoid.combine(aggregateOf(node.getLeft(), monoid), ((AggregateNode) node).value));
+                node = node.getRight();
+            } else {
+                node = node.getLeft();
+            }
+        }
+        return monoid.combine(suffix, monoid.combine(((AggregateNode) split).value, prefix));
+    }
+
+    static long aggregateOf(AVLNode node, Monoid monoid) {
+        return node != null ? ((AggregateNode) node).aggregate : monoid.identity();
+    }
+}
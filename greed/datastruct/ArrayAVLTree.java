@@ -0,0 +1,364 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AVL tree stored as struct-of-arrays instead of {@link AVLNode} objects. Node i is described by keys[i], left[i], right[i]
+ * and height[i], children are linked by index and index 0 is the empty subtree (height 0), so no null checks are needed.
+ * Slots of deleted nodes are chained into a free-list through the left array and reused by later inserts.
+ * About 13 bytes per key and only four objects for the whole tree, which keeps heap footprint and GC scanning flat
+ * for trees of tens of millions of keys. Same semantics as {@link AVLTree}.
+ */
+public class ArrayAVLTree implements SearchTree {
+
+    // index of the empty subtree.
+    private static final int NIL = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] left;
+    private int[] right;
+    // heights are at most 45, a byte is enough.
+    private byte[] height;
+
+    private int root;
+    private int size;
+    // first slot never used so far.
+    private int nextSlot;
+    // head of the free-list of deleted slots, chained through left[].
+    private int freeHead;
+    // path recorded by insert and delete, reused so updates do not allocate.
+    private final int[] path;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a tree.
+     */
+    private ArrayAVLTree(int capacity) {
+        int slots = Math.max(capacity, DEFAULT_CAPACITY) + 1;
+        this.keys = new int[slots];
+        this.left = new int[slots];
+        this.right = new int[slots];
+        this.height = new byte[slots];
+        this.root = NIL;
+        this.size = 0;
+        this.nextSlot = 1;
+        this.freeHead = NIL;
+        this.path = new int[MAX_DEPTH];
+    }
+
+    /**
+     * Construct an empty tree.
+     * @return empty tree.
+     */
+    public static ArrayAVLTree initialize() {
+        return new ArrayAVLTree(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct an empty tree with room for the given number of keys, so loading it does not grow the arrays.
+     * @param expectedSize number of keys the tree is expected to hold.
+     * @return empty tree.
+     */
+    public static ArrayAVLTree initialize(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative.");
+        }
+        return new ArrayAVLTree(expectedSize);
+    }
+
+    /**
+     * Number of keys in the tree.
+     * @return number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean insert(int key) {
+        int pathLength = 0;
+        int node = root;
+        while (node != NIL) {
+            int nodeKey = keys[node];
+            if (key == nodeKey) {
+                return false;
+            }
+            path[pathLength++] = node;
+            node = key < nodeKey ? left[node] : right[node];
+        }
+        int newNode = allocate(key);
+        if (pathLength == 0) {
+            root = newNode;
+        } else {
+            int parent = path[pathLength - 1];
+            if (key < keys[parent]) {
+                left[parent] = newNode;
+            } else {
+                right[parent] = newNode;
+            }
+        }
+        size++;
+
+        // Re-balancing after insertion, stops at the first subtree that kept its height.
+        for (int i = pathLength - 1; i >= 0; i--) {
+            int aNode = path[i];
+            updateHeight(aNode);
+            int balance = getBalance(aNode);
+            if (balance == 0) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                replaceChild(i > 0 ? path[i - 1] : NIL, aNode, rebalance(aNode));
+                break;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean delete(int key) {
+        int pathLength = 0;
+        int node = root;
+        while (node != NIL && key != keys[node]) {
+            path[pathLength++] = node;
+            node = key < keys[node] ? left[node] : right[node];
+        }
+        if (node == NIL) {
+            return false;
+        }
+        if (left[node] != NIL && right[node] != NIL) {
+            // take the key of the in-order predecessor and remove the predecessor instead.
+            path[pathLength++] = node;
+            int predecessor = left[node];
+            while (right[predecessor] != NIL) {
+                path[pathLength++] = predecessor;
+                predecessor = right[predecessor];
+            }
+            keys[node] = keys[predecessor];
+            node = predecessor;
+        }
+        int child = left[node] != NIL ? left[node] : right[node];
+        replaceChild(pathLength > 0 ? path[pathLength - 1] : NIL, node, child);
+        release(node);
+        size--;
+
+        // Re-balancing after deletion, stops at the first subtree that kept its height.
+        for (int i = pathLength - 1; i >= 0; i--) {
+            int aNode = path[i];
+            updateHeight(aNode);
+            int balance = getBalance(aNode);
+            if (balance == 1 || balance == -1) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                int subRoot = rebalance(aNode);
+                replaceChild(i > 0 ? path[i - 1] : NIL, aNode, subRoot);
+                if (getBalance(subRoot) != 0) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Integer search(int key) {
+        int node = root;
+        while (node != NIL) {
+            int nodeKey = keys[node];
+            if (key == nodeKey) {
+                return nodeKey;
+            }
+            node = key < nodeKey ? left[node] : right[node];
+        }
+        return null;
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        List<Integer> result = new ArrayList<>();
+        // in-order walk that skips subtrees outside of the range.
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (keys[node] < smallKey) {
+                    node = right[node];
+                } else {
+                    stack[top++] = node;
+                    node = left[node];
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            if (keys[node] > bigKey) {
+                break;
+            }
+            result.add(keys[node]);
+            node = right[node];
+        }
+        return result;
+    }
+
+    /**
+     * Number of slots taken so far, by keys or by the free-list. Used by {@link TreeChecks} to see deleted slots
+     * reused.
+     * @return slots below the first slot never used.
+     */
+    int slotCount() {
+        return nextSlot - 1;
+    }
+
+    /**
+     * Check the invariants of the whole tree: keys in ascending order, the heights of the children within one of each
+     * other and every height recalculated from the children, the size, and a free-list of slots outside of the tree
+     * that together with the tree covers every slot taken. Used by {@link TreeChecks}.
+     * @throws IllegalStateException naming the first node that breaks an invariant.
+     */
+    void checkInvariants() {
+        int[] nodes = new int[1];
+        checkSubtree(root, Long.MIN_VALUE, Long.MAX_VALUE, nodes);
+        if (nodes[0] != size) {
+            throw new IllegalStateException("the tree holds " + nodes[0] + " nodes, its size is " + size + ".");
+        }
+        int free = 0;
+        for (int slot = freeHead; slot != NIL; slot = left[slot]) {
+            if (height[slot] != 0 || ++free > nextSlot) {
+                throw new IllegalStateException("free slot " + slot + " is in use or on a cycle.");
+            }
+        }
+        if (size + free != nextSlot - 1) {
+            throw new IllegalStateException(size + " nodes and " + free + " free slots do not cover the "
+                    + (nextSlot - 1) + " slots taken.");
+        }
+    }
+
+    /**
+     * Check the invariants of a subtree whose keys must lie in low .. high, counting its nodes.
+     * @return height of the subtree.
+     */
+    private int checkSubtree(int node, long low, long high, int[] nodes) {
+        if (node == NIL) {
+            return 0;
+        }
+        int key = keys[node];
+        if (key < low || key > high) {
+            throw new IllegalStateException("key " + key + " is out of order.");
+        }
+        nodes[0]++;
+        int leftHeight = checkSubtree(left[node], low, key - 1L, nodes);
+        int rightHeight = checkSubtree(right[node], key + 1L, high, nodes);
+        if (Math.abs(leftHeight - rightHeight) > 1 || height[node] != 1 + Math.max(leftHeight, rightHeight)) {
+            throw new IllegalStateException("node " + key + " has height " + height[node]
+                    + " over children of heights " + leftHeight + " and " + rightHeight + ".");
+        }
+        return height[node];
+    }
+
+    /**
+     * Take a slot from the free-list, or a fresh one growing the arrays if needed.
+     */
+    private int allocate(int key) {
+        int slot;
+        if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = left[slot];
+        } else {
+            if (nextSlot == keys.length) {
+                grow();
+            }
+            slot = nextSlot++;
+        }
+        keys[slot] = key;
+        left[slot] = NIL;
+        right[slot] = NIL;
+        height[slot] = 1;
+        return slot;
+    }
+
+    /**
+     * Put a slot on the free-list.
+     */
+    private void release(int slot) {
+        right[slot] = NIL;
+        height[slot] = 0;
+        left[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    private void grow() {
+        int capacity = keys.length + (keys.length >> 1);
+        if (capacity < 0) {
+            capacity = Integer.MAX_VALUE - 8;
+        }
+        if (capacity <= keys.length) {
+            throw new IllegalStateException("ArrayAVLTree is full.");
+        }
+        keys = Arrays.copyOf(keys, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NIL) {
+            root = newChild;
+        } else if (left[parent] == oldChild) {
+            left[parent] = newChild;
+        } else {
+            right[parent] = newChild;
+        }
+    }
+
+    private void updateHeight(int node) {
+        height[node] = (byte) (1 + Math.max(height[left[node]], height[right[node]]));
+    }
+
+    private int getBalance(int node) {
+        return height[left[node]] - height[right[node]];
+    }
+
+    /**
+     * Restore the balance of a node whose balance factor is 2 or –2. Covers the insert cases (LL, RR, LR and RL)
+     * and the delete cases (R0, R1, R-1, L0, L1 and L-1).
+     * @param aNode unbalanced node.
+     * @return root of the rebalanced subtree.
+     */
+    private int rebalance(int aNode) {
+        if (getBalance(aNode) > 1) {
+            if (getBalance(left[aNode]) < 0) {
+                left[aNode] = leftRotate(left[aNode]);
+            }
+            return rightRotate(aNode);
+        }
+        if (getBalance(right[aNode]) > 0) {
+            right[aNode] = rightRotate(right[aNode]);
+        }
+        return leftRotate(aNode);
+    }
+
+    private int rightRotate(int node) {
+        int child = left[node];
+        left[node] = right[child];
+        right[child] = node;
+        updateHeight(node);
+        updateHeight(child);
+        return child;
+    }
+
+    private int leftRotate(int node) {
+        int child = right[node];
+        right[node] = left[child];
+        left[child] = node;
+        updateHeight(node);
+        updateHeight(child);
+        return child;
+    }
+}
@@ -0,0 +1,452 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Cache-conscious ordered int set, a B+-tree with wide nodes behind the same {@link SearchTree} surface as
+ * {@link AVLTree}. Each node holds up to nodeCapacity sorted keys in one int array (32 keys are two cache lines), so a
+ * search touches log_16(n) to log_32(n) nodes instead of the ~1.44 log_2(n) nodes of an AVL tree.
+ * Keys live in the leaves, inner nodes only hold separators: child i of an inner node holds the keys smaller than
+ * separator i and not smaller than separator i - 1. Leaves are chained left to right, so range scans never climb back up.
+ * In-node search is a branch-free count over the keys of the node, a loop C2 turns into vector compares.
+ */
+public class BPlusTree implements SearchTree {
+
+    private static final int DEFAULT_NODE_CAPACITY = 32;
+    // a tree of 2^31 keys with at least 3 children per inner node is at most 21 levels deep.
+    private static final int MAX_LEVELS = 32;
+
+    private final int nodeCapacity;
+    // fewest keys a node other than the root may hold.
+    private final int minKeys;
+    private Node root;
+    private int size;
+    // path recorded by insert and delete, reused so updates do not allocate.
+    private final Node[] pathNodes;
+    private final int[] pathIndexes;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a tree.
+     */
+    private BPlusTree(int nodeCapacity) {
+        this.nodeCapacity = nodeCapacity;
+        this.minKeys = nodeCapacity / 2;
+        this.root = null;
+        this.size = 0;
+        this.pathNodes = new Node[MAX_LEVELS];
+        this.pathIndexes = new int[MAX_LEVELS];
+    }
+
+    /**
+     * Construct an empty tree with 32 keys per node.
+     * @return empty tree.
+     */
+    public static BPlusTree initialize() {
+        return new BPlusTree(DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Construct an empty tree with the given number of keys per node.
+     * @param nodeCapacity most keys a node holds, multiples of 16 fill whole cache lines.
+     * @return empty tree.
+     */
+    public static BPlusTree initialize(int nodeCapacity) {
+        if (nodeCapacity < 4) {
+            throw new IllegalArgumentException("nodeCapacity must be at least 4.");
+        }
+        return new BPlusTree(nodeCapacity);
+    }
+
+    /**
+     * Number of keys in the tree.
+     * @return number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean insert(int key) {
+        if (root == null) {
+            root = new Node(nodeCapacity, true);
+        }
+        int depth = descend(key);
+        Node leaf = pathNodes[depth];
+        int position = countLess(leaf.keys, leaf.count, key);
+        if (position < leaf.count && leaf.keys[position] == key) {
+            return false;
+        }
+        leaf.insertKey(position, key);
+        size++;
+        if (leaf.count <= nodeCapacity) {
+            return true;
+        }
+
+        // split overflowing nodes bottom-up, every split pushes one separator into the parent.
+        Node right = leaf.splitLeaf();
+        int separator = right.keys[0];
+        for (int level = depth - 1; level >= 0; level--) {
+            Node parent = pathNodes[level];
+            parent.insertChild(pathIndexes[level], separator, right);
+            if (parent.count <= nodeCapacity) {
+                return true;
+            }
+            separator = parent.keys[parent.count / 2];
+            right = parent.splitInner();
+        }
+        Node newRoot = new Node(nodeCapacity, false);
+        newRoot.keys[0] = separator;
+        newRoot.children[0] = root;
+        newRoot.children[1] = right;
+        newRoot.count = 1;
+        root = newRoot;
+        return true;
+    }
+
+    @Override
+    public boolean delete(int key) {
+        if (root == null) {
+            return false;
+        }
+        int depth = descend(key);
+        Node leaf = pathNodes[depth];
+        int position = countLess(leaf.keys, leaf.count, key);
+        if (position == leaf.count || leaf.keys[position] != key) {
+            return false;
+        }
+        leaf.removeKey(position);
+        size--;
+
+        // fix underflowing nodes bottom-up by borrowing from a sibling, or merging with one.
+        Node node = leaf;
+        for (int level = depth - 1; level >= 0 && node.count < minKeys; level--) {
+            Node parent = pathNodes[level];
+            int index = pathIndexes[level];
+            Node left = index > 0 ? parent.children[index - 1] : null;
+            Node right = index < parent.count ? parent.children[index + 1] : null;
+            if (left != null && left.count > minKeys) {
+                borrowFromLeft(parent, index, left, node);
+            } else if (right != null && right.count > minKeys) {
+                borrowFromRight(parent, index, node, right);
+            } else if (left != null) {
+                merge(parent, index - 1, left, node);
+            } else {
+                merge(parent, index, node, right);
+            }
+            node = parent;
+        }
+        if (root.count == 0) {
+            // an empty leaf root empties the tree, an inner root without separators hands over to its only child.
+            root = root.leaf ? null : root.children[0];
+        }
+        return true;
+    }
+
+    @Override
+    public Integer search(int key) {
+        return contains(key) ? key : null;
+    }
+
+    /**
+     * Membership test without boxing the result.
+     * @param key key to be searched.
+     * @return true if the key is in the tree.
+     */
+    public boolean contains(int key) {
+        Node node = root;
+        if (node == null) {
+            return false;
+        }
+        while (!node.leaf) {
+            node = node.children[countLessOrEqual(node.keys, node.count, key)];
+        }
+        int position = countLess(node.keys, node.count, key);
+        return position < node.count && node.keys[position] == key;
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        List<Integer> keys = new ArrayList<>();
+        forEachInRange(smallKey, bigKey, keys::add);
+        return keys;
+    }
+
+    /**
+     * Pass every key in the range to the given action, in ascending order, without boxing.
+     * Finds the first leaf with one descent, then follows the leaf chain.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param action receives the keys in the range smallKey ≤key ≤bigKey.
+     * @return number of keys passed to the action.
+     */
+    public int forEachInRange(int smallKey, int bigKey, IntConsumer action) {
+        Node node = root;
+        if (node == null || smallKey > bigKey) {
+            return 0;
+        }
+        while (!node.leaf) {
+            node = node.children[countLessOrEqual(node.keys, node.count, smallKey)];
+        }
+        int visited = 0;
+        int position = countLess(node.keys, node.count, smallKey);
+        while (node != null) {
+            for (; position < node.count; position++) {
+                int key = node.keys[position];
+                if (key > bigKey) {
+                    return visited;
+                }
+                action.accept(key);
+                visited++;
+            }
+            node = node.next;
+            position = 0;
+        }
+        return visited;
+    }
+
+    /**
+     * Check the invariants of the whole tree: every leaf at the same depth, keys ascending within the bounds set by the
+     * separators, minKeys to nodeCapacity keys in every node but the root, a leaf chain visiting every key in order,
+     * and the size. Used by {@link TreeChecks}.
+     * @throws IllegalStateException naming the first node that breaks an invariant.
+     */
+    void checkInvariants() {
+        if (root == null) {
+            if (size != 0) {
+                throw new IllegalStateException("an empty tree has size " + size + ".");
+            }
+            return;
+        }
+        int leafDepth = 0;
+        Node first = root;
+        while (!first.leaf) {
+            first = first.children[0];
+            leafDepth++;
+        }
+        int keys = checkNode(root, Long.MIN_VALUE, Long.MAX_VALUE, 0, leafDepth);
+        long previous = Long.MIN_VALUE;
+        int chained = 0;
+        for (Node leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.count; i++) {
+                if (leaf.keys[i] <= previous) {
+                    throw new IllegalStateException("the leaf chain is out of order at key " + leaf.keys[i] + ".");
+                }
+                previous = leaf.keys[i];
+            }
+            chained += leaf.count;
+        }
+        if (keys != size || chained != size) {
+            throw new IllegalStateException("the leaves hold " + keys + " keys, the leaf chain " + chained
+                    + " and the size is " + size + ".");
+        }
+    }
+
+    /**
+     * Check the invariants of a subtree whose keys must lie in low .. high - 1.
+     * @return number of keys in the leaves of the subtree.
+     */
+    private int checkNode(Node node, long low, long high, int depth, int leafDepth) {
+        int leastKeys = node == root ? 1 : minKeys;
+        if (node.count < leastKeys || node.count > nodeCapacity) {
+            throw new IllegalStateException("node at depth " + depth + " holds " + node.count + " keys.");
+        }
+        for (int i = 0; i < node.count; i++) {
+            int key = node.keys[i];
+            if (key < low || key >= high || i > 0 && key <= node.keys[i - 1]) {
+                throw new IllegalStateException("key " + key + " is out of order.");
+            }
+        }
+        if (node.leaf != (depth == leafDepth)) {
+            throw new IllegalStateException("node at depth " + depth + " is " + (node.leaf ? "a leaf" : "inner")
+                    + ", the leaves are at depth " + leafDepth + ".");
+        }
+        if (node.leaf) {
+            return node.count;
+        }
+        int keys = 0;
+        for (int i = 0; i <= node.count; i++) {
+            keys += checkNode(node.children[i], i == 0 ? low : node.keys[i - 1],
+                    i == node.count ? high : node.keys[i], depth + 1, leafDepth);
+        }
+        return keys;
+    }
+
+    /**
+     * Walk from the root to the leaf that holds or would hold the key, recording the nodes and the child taken.
+     * @return depth of the leaf, its index in pathNodes.
+     */
+    private int descend(int key) {
+        int depth = 0;
+        Node node = root;
+        while (!node.leaf) {
+            int index = countLessOrEqual(node.keys, node.count, key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = index;
+            depth++;
+            node = node.children[index];
+        }
+        pathNodes[depth] = node;
+        return depth;
+    }
+
+    /**
+     * Number of keys smaller than the given key, the position of the key in a sorted block.
+     * Branch-free so the loop has no data-dependent branch to mispredict and vectorises.
+     */
+    private static int countLess(int[] keys, int count, int key) {
+        int less = 0;
+        for (int i = 0; i < count; i++) {
+            less += keys[i] < key ? 1 : 0;
+        }
+        return less;
+    }
+
+    /**
+     * Number of keys smaller than or equal to the given key, the child of an inner node to follow.
+     */
+    private static int countLessOrEqual(int[] keys, int count, int key) {
+        int lessOrEqual = 0;
+        for (int i = 0; i < count; i++) {
+            lessOrEqual += keys[i] <= key ? 1 : 0;
+        }
+        return lessOrEqual;
+    }
+
+    /**
+     * Move the last key of the left sibling into node. For inner nodes the key rotates through the parent separator.
+     */
+    private static void borrowFromLeft(Node parent, int index, Node left, Node node) {
+        if (node.leaf) {
+            node.insertKey(0, left.keys[left.count - 1]);
+            left.count--;
+            parent.keys[index - 1] = node.keys[0];
+        } else {
+            System.arraycopy(node.keys, 0, node.keys, 1, node.count);
+            System.arraycopy(node.children, 0, node.children, 1, node.count + 1);
+            node.keys[0] = parent.keys[index - 1];
+            node.children[0] = left.children[left.count];
+            node.count++;
+            parent.keys[index - 1] = left.keys[left.count - 1];
+            left.children[left.count] = null;
+            left.count--;
+        }
+    }
+
+    /**
+     * Move the first key of the right sibling into node. For inner nodes the key rotates through the parent separator.
+     */
+    private static void borrowFromRight(Node parent, int index, Node node, Node right) {
+        if (node.leaf) {
+            node.keys[node.count++] = right.keys[0];
+            right.removeKey(0);
+            parent.keys[index] = right.keys[0];
+        } else {
+            node.keys[node.count] = parent.keys[index];
+            node.children[node.count + 1] = right.children[0];
+            node.count++;
+            parent.keys[index] = right.keys[0];
+            System.arraycopy(right.keys, 1, right.keys, 0, right.count - 1);
+            System.arraycopy(right.children, 1, right.children, 0, right.count);
+            right.children[right.count] = null;
+            right.count--;
+        }
+    }
+
+    /**
+     * Merge right into its left sibling and drop separator index of the parent, with the link to right.
+     */
+    private static void merge(Node parent, int index, Node left, Node right) {
+        if (left.leaf) {
+            System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+            left.count += right.count;
+            left.next = right.next;
+        } else {
+            left.keys[left.count] = parent.keys[index];
+            System.arraycopy(right.keys, 0, left.keys, left.count + 1, right.count);
+            System.arraycopy(right.children, 0, left.children, left.count + 1, right.count + 1);
+            left.count += right.count + 1;
+        }
+        System.arraycopy(parent.keys, index + 1, parent.keys, index, parent.count - index - 1);
+        System.arraycopy(parent.children, index + 2, parent.children, index + 1, parent.count - index - 1);
+        parent.children[parent.count] = null;
+        parent.count--;
+    }
+
+    /**
+     * Node of the tree. Arrays have room for one key more than the capacity, an overflowing node is split right after.
+     */
+    private static final class Node {
+
+        private final boolean leaf;
+        private final int[] keys;
+        // null for leaves, count + 1 children for inner nodes.
+        private final Node[] children;
+        private int count;
+        // next leaf in key order, null for inner nodes and the last leaf.
+        private Node next;
+
+        private Node(int capacity, boolean leaf) {
+            this.leaf = leaf;
+            this.keys = new int[capacity + 1];
+            this.children = leaf ? null : new Node[capacity + 2];
+        }
+
+        private void insertKey(int position, int key) {
+            System.arraycopy(keys, position, keys, position + 1, count - position);
+            keys[position] = key;
+            count++;
+        }
+
+        private void removeKey(int position) {
+            System.arraycopy(keys, position + 1, keys, position, count - position - 1);
+            count--;
+        }
+
+        /**
+         * Insert a separator and the child to its right, next to the child at the given index.
+         */
+        private void insertChild(int index, int separator, Node child) {
+            System.arraycopy(keys, index, keys, index + 1, count - index);
+            System.arraycopy(children, index + 1, children, index + 2, count - index);
+            keys[index] = separator;
+            children[index + 1] = child;
+            count++;
+        }
+
+        /**
+         * Move the upper half of the keys to a new leaf chained after this one.
+         * @return new right leaf.
+         */
+        private Node splitLeaf() {
+            Node right = new Node(keys.length - 1, true);
+            int half = count / 2;
+            right.count = count - half;
+            System.arraycopy(keys, half, right.keys, 0, right.count);
+            count = half;
+            right.next = next;
+            next = right;
+            return right;
+        }
+
+        /**
+         * Move the keys and children above the middle separator to a new inner node, the middle separator goes up.
+         * @return new right node.
+         */
+        private Node splitInner() {
+            Node right = new Node(keys.length - 1, false);
+            int middle = count / 2;
+            right.count = count - middle - 1;
+            System.arraycopy(keys, middle + 1, right.keys, 0, right.count);
+            System.arraycopy(children, middle + 1, right.children, 0, right.count + 1);
+            for (int i = middle + 1; i <= count; i++) {
+                children[i] = null;
+            }
+            count = middle;
+            return right;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.List;
+
+/**
+ * {@link AVLTree} with a bounded read-through cache in front of point searches. Under skewed traffic the same hot keys
+ * are searched over and over, a cache hit answers them with one probe of a small array instead of a walk from the root.
+ * Both outcomes are cached, a hot miss is as cheap as a hot hit.
+ * {@link #insert(int)} and {@link #delete(int)} update the cached entry of their key, so results are always those of
+ * the tree. Range searches go straight to the tree. Not thread-safe, like {@link AVLTree}.
+ */
+public class CachedAVLTree implements SearchTree {
+
+    private final AVLTree tree;
+    private final HotKeyCache cache;
+    private long hits;
+    private long misses;
+
+    /**
+     * private constructor, {@link #initialize(int) initialize(int)} is to initialize a tree.
+     */
+    private CachedAVLTree(AVLTree tree, int cacheCapacity) {
+        this.tree = tree;
+        this.cache = new HotKeyCache(cacheCapacity);
+    }
+
+    /**
+     * Construct an empty tree.
+     * @param cacheCapacity most keys cached, rounded up to a power of two.
+     * @return empty tree.
+     */
+    public static CachedAVLTree initialize(int cacheCapacity) {
+        return new CachedAVLTree(AVLTree.initialize(), cacheCapacity);
+    }
+
+    /**
+     * Put a cache in front of an existing tree, eg -: one built with {@link AVLTree#fromSorted(int[])}.
+     * The tree must not be modified directly afterwards, the cache would not see the change.
+     * @param tree tree to be searched through the cache.
+     * @param cacheCapacity most keys cached, rounded up to a power of two.
+     * @return cached view of the tree.
+     * @throws IllegalArgumentException if the tree is a multiset, the cache only tracks presence.
+     */
+    public static CachedAVLTree of(AVLTree tree, int cacheCapacity) {
+        if (tree.isMultiset()) {
+            throw new IllegalArgumentException("a multiset cannot be cached, a delete may leave its key in the tree.");
+        }
+        return new CachedAVLTree(tree, cacheCapacity);
+    }
+
+    @Override
+    public boolean insert(int key) {
+        boolean inserted = tree.insert(key);
+        if (inserted) {
+            cache.update(key, true);
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean delete(int key) {
+        boolean deleted = tree.delete(key);
+        if (deleted) {
+            cache.update(key, false);
+        }
+        return deleted;
+    }
+
+    /**
+     * Bulk insert, see {@link AVLTree#bulkInsert(int[])}. The whole cache is dropped, one update per key would cost more.
+     * @param keys keys to be inserted in any order.
+     * @return number of keys actually inserted.
+     */
+    public int bulkInsert(int[] keys) {
+        int inserted = tree.bulkInsert(keys);
+        if (inserted > 0) {
+            cache.clear();
+        }
+        return inserted;
+    }
+
+    @Override
+    public Integer search(int key) {
+        return contains(key) ? key : null;
+    }
+
+    /**
+     * Membership test through the cache, without boxing the result.
+     * @param key key to be searched.
+     * @return true if the key is in the tree.
+     */
+    public boolean contains(int key) {
+        int cached = cache.lookup(key);
+        if (cached != HotKeyCache.UNKNOWN) {
+            hits++;
+            return cached == HotKeyCache.PRESENT_IN_TREE;
+        }
+        misses++;
+        boolean present = tree.contains(key);
+        cache.admit(key, present);
+        return present;
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        return tree.searchRange(smallKey, bigKey);
+    }
+
+    /**
+     * Number of keys in the tree.
+     * @return number of keys.
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Number of point searches answered by the cache since construction or the last {@link #resetCounters()}.
+     * @return cache hits.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of point searches that had to walk the tree since construction or the last {@link #resetCounters()}.
+     * @return cache misses.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Share of point searches answered by the cache.
+     * @return hits / (hits + misses), 0 before the first search.
+     */
+    public double getHitRatio() {
+        long searches = hits + misses;
+        return searches == 0 ? 0 : (double) hits / searches;
+    }
+
+    /**
+     * Zero the hit and miss counters, the cached keys stay.
+     */
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Most keys the cache holds.
+     * @return capacity of the cache.
+     */
+    public int getCacheCapacity() {
+        return cache.capacity();
+    }
+}
@@ -0,0 +1,135 @@
+package greed.datastruct;
+
+import java.util.Arrays;
+
+/**
+ * Decoder of the command language of {@link Main#decodeAndRunCommands(String, AVLTree, java.io.BufferedWriter)}
+ * (Initialize(), Insert(60), Delete(23), Search(23), Search(2,10)) straight from bytes: no String, regex or boxed
+ * Integer per command. Shared by {@link CommandReplayer} and {@link TreeServer}, one decoder per thread.
+ */
+final class CommandDecoder {
+
+    private static final byte[] INITIALIZE = {'I', 'n', 'i', 't', 'i', 'a', 'l', 'i', 'z', 'e'};
+    private static final byte[] INSERT = {'I', 'n', 's', 'e', 'r', 't'};
+    private static final byte[] DELETE = {'D', 'e', 'l', 'e', 't', 'e'};
+    private static final byte[] SEARCH = {'S', 'e', 'a', 'r', 'c', 'h'};
+
+    // decoded commands.
+    static final int OP_INITIALIZE = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_DELETE = 2;
+    static final int OP_SEARCH = 3;
+    static final int OP_SEARCH_RANGE = 4;
+
+    // arguments of the last decoded command.
+    int key;
+    int bigKey;
+    private boolean initialized;
+    // parse position inside the current line, set by parseInt.
+    private int cursor;
+
+    /**
+     * Construct a decoder.
+     * @param initialized false if commands other than Initialize() are rejected until the first Initialize().
+     */
+    CommandDecoder(boolean initialized) {
+        this.initialized = initialized;
+    }
+
+    /**
+     * Decode one command, its arguments are left in key and bigKey.
+     * @param line input buffer.
+     * @param from first byte of the line.
+     * @param to end of the line (exclusive), before the line break.
+     * @return the command, one of the OP_ constants.
+     */
+    int decode(byte[] line, int from, int to) {
+        if (to > from && line[to - 1] == '\r') {
+            to--;
+        }
+        int open = from;
+        while (open < to && line[open] != '(') {
+            open++;
+        }
+        if (matches(line, from, open, INSERT)) {
+            requireInitialized(line, from, to);
+            key = parseSingleInt(line, open + 1, to);
+            return OP_INSERT;
+        } else if (matches(line, from, open, DELETE)) {
+            requireInitialized(line, from, to);
+            key = parseSingleInt(line, open + 1, to);
+            return OP_DELETE;
+        } else if (matches(line, from, open, SEARCH)) {
+            requireInitialized(line, from, to);
+            key = parseInt(line, open + 1, to);
+            if (cursor < to && line[cursor] == ',') {
+                bigKey = parseInt(line, cursor + 1, to);
+                return OP_SEARCH_RANGE;
+            }
+            return OP_SEARCH;
+        } else if (matches(line, from, open, INITIALIZE)) {
+            initialized = true;
+            return OP_INITIALIZE;
+        } else {
+            throw new RuntimeException(new String(line, from, open - from) + " is not supported, only Initialize, Insert, Delete and Search are supported.");
+        }
+    }
+
+    private void requireInitialized(byte[] line, int from, int to) {
+        if (!initialized) {
+            throw new IllegalStateException(new String(line, from, to - from) + " before Initialize().");
+        }
+    }
+
+    private static boolean matches(byte[] line, int from, int to, byte[] name) {
+        return Arrays.equals(line, from, to, name, 0, name.length);
+    }
+
+    /**
+     * Parse the only argument of a command, the argument ends at the closing bracket or at the end of the line.
+     */
+    private int parseSingleInt(byte[] line, int from, int to) {
+        int value = parseInt(line, from, to);
+        if (cursor < to && line[cursor] != ')') {
+            throw numberFormat(line, from, to);
+        }
+        return value;
+    }
+
+    /**
+     * Parse a decimal int with an optional sign, same rules as {@link Integer#parseInt(String)}. Stops at the first
+     * ',' or ')' and leaves its position in cursor.
+     */
+    private int parseInt(byte[] line, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (line[i] == '-' || line[i] == '+')) {
+            negative = line[i] == '-';
+            i++;
+        }
+        int digitsStart = i;
+        // accumulated negatively, so Integer.MIN_VALUE does not overflow.
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int value = 0;
+        for (; i < to && line[i] != ',' && line[i] != ')'; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || value < limit / 10 || value * 10 < limit + digit) {
+                throw numberFormat(line, from, to);
+            }
+            value = value * 10 - digit;
+        }
+        if (i == digitsStart) {
+            throw numberFormat(line, from, to);
+        }
+        cursor = i;
+        return negative ? value : -value;
+    }
+
+    private static NumberFormatException numberFormat(byte[] line, int from, int to) {
+        int end = from;
+        while (end < to && line[end] != ')') {
+            end++;
+        }
+        return new NumberFormatException("For input string: \"" + new String(line, from, end - from) + "\"");
+    }
+}
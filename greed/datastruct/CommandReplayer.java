@@ -0,0 +1,345 @@
+package greed.datastruct;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static greed.datastruct.CommandDecoder.OP_DELETE;
+import static greed.datastruct.CommandDecoder.OP_INITIALIZE;
+import static greed.datastruct.CommandDecoder.OP_INSERT;
+import static greed.datastruct.CommandDecoder.OP_SEARCH;
+
+/**
+ * Replays a command log (Initialize(), Insert(60), Delete(23), Search(23), Search(2,10), one per line) on an AVL tree.
+ * Same output as {@link Main#decodeAndRunCommands(String, AVLTree, java.io.BufferedWriter)} byte for byte, but the
+ * input is parsed straight from a large byte buffer and the results are formatted straight into the output buffer,
+ * so no String, regex or boxed Integer is created per command.
+ * <p>
+ * With more than one shard the commands run on a {@link ShardedExecutor} instead: the key space is range-partitioned
+ * over one tree per worker thread, this thread keeps parsing and writes the results back in command order, so the
+ * output is the same as the sequential replay.
+ */
+public class CommandReplayer {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // longest int is 11 characters, plus the separator.
+    static final int MAX_INT_CHARS = 12;
+    private static final byte[] NULL = {'N', 'U', 'L', 'L'};
+
+    private final WritableByteChannel output;
+    private final byte[] out;
+    private int outLength;
+    private final CommandDecoder decoder;
+    private AVLTree tree;
+    // NULL for a sequential replay.
+    private ShardedExecutor sharded;
+    private long commands;
+    // separator handling of range results.
+    private boolean firstKey;
+
+    /**
+     * private constructor, {@link #replay(Path, Path)} is to replay a log.
+     */
+    private CommandReplayer(WritableByteChannel output) {
+        this.output = output;
+        this.out = new byte[BUFFER_SIZE];
+        this.decoder = new CommandDecoder(false);
+    }
+
+    /**
+     * Replay a command log file.
+     * @param input command log, one command per line.
+     * @param output file receiving the search results, overwritten.
+     * @return throughput of the replay.
+     * @throws IOException Signals that an I/O exception of some sort has occurred regarding input or output file.
+     */
+    public static Stats replay(Path input, Path output) throws IOException {
+        return replay(input, output, 1);
+    }
+
+    /**
+     * Replay a command log file over several shards, see {@link #replay(ReadableByteChannel, WritableByteChannel, int)}.
+     * @param input command log, one command per line.
+     * @param output file receiving the search results, overwritten.
+     * @param shards number of trees and worker threads, 1 for a sequential replay.
+     * @return throughput of the replay.
+     * @throws IOException Signals that an I/O exception of some sort has occurred regarding input or output file.
+     */
+    public static Stats replay(Path input, Path output, int shards) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            return replay(in, out, shards);
+        }
+    }
+
+    /**
+     * Replay a command log read from a channel.
+     * @param input command log, one command per line.
+     * @param output channel receiving the search results.
+     * @return throughput of the replay.
+     * @throws IOException Signals that an I/O exception of some sort has occurred regarding input or output channel.
+     */
+    public static Stats replay(ReadableByteChannel input, WritableByteChannel output) throws IOException {
+        return replay(input, output, 1);
+    }
+
+    /**
+     * Replay a command log over several shards. The key space is split into ranges, one {@link AVLTree} per range,
+     * each owned by a worker thread; the calling thread parses the log in batches, hands every command to the shard of
+     * its key (a range search to every shard it overlaps) and writes the results of finished batches in command
+     * order, merging range results across shards. The output is the same as the sequential replay.
+     * @param input command log, one command per line.
+     * @param output channel receiving the search results.
+     * @param shards number of trees and worker threads, 1 for a sequential replay.
+     * @return throughput of the replay.
+     * @throws IOException Signals that an I/O exception of some sort has occurred regarding input or output channel.
+     */
+    public static Stats replay(ReadableByteChannel input, WritableByteChannel output, int shards) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1, got " + shards + ".");
+        }
+        long start = System.nanoTime();
+        CommandReplayer replayer = new CommandReplayer(output);
+        long bytes;
+        if (shards == 1) {
+            bytes = replayer.run(input);
+        } else {
+            try (ShardedExecutor executor = new ShardedExecutor(replayer, shards)) {
+                replayer.sharded = executor;
+                bytes = replayer.run(input);
+            }
+        }
+        return new Stats(replayer.commands, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Read the input buffer by buffer and run every complete line, a line cut by the end of a buffer is moved to the
+     * front and completed by the next read.
+     * @return number of bytes read.
+     */
+    private long run(ReadableByteChannel input) throws IOException {
+        byte[] in = new byte[BUFFER_SIZE];
+        int length = 0;
+        long bytes = 0;
+        while (true) {
+            if (length == in.length) {
+                // a single line longer than the buffer.
+                in = Arrays.copyOf(in, in.length * 2);
+            }
+            int read = input.read(ByteBuffer.wrap(in, length, in.length - length));
+            if (read < 0) {
+                break;
+            }
+            bytes += read;
+            length += read;
+            int lineStart = 0;
+            for (int i = 0; i < length; i++) {
+                if (in[i] == '\n') {
+                    runLine(in, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            System.arraycopy(in, lineStart, in, 0, length - lineStart);
+            length -= lineStart;
+        }
+        if (length > 0) {
+            // last line without a line break.
+            runLine(in, 0, length);
+        }
+        if (sharded != null) {
+            sharded.finish();
+        }
+        flush();
+        return bytes;
+    }
+
+    /**
+     * Decode and run one command, or hand it to the shards.
+     * @param line input buffer.
+     * @param from first byte of the line.
+     * @param to end of the line (exclusive), before the line break.
+     */
+    private void runLine(byte[] line, int from, int to) throws IOException {
+        commands++;
+        int op = decoder.decode(line, from, to);
+        int key = decoder.key;
+        if (sharded != null) {
+            sharded.add(op, key, decoder.bigKey);
+            return;
+        }
+        switch (op) {
+            case OP_INITIALIZE -> tree = AVLTree.initialize();
+            case OP_INSERT -> tree.insert(key);
+            case OP_DELETE -> tree.delete(key);
+            case OP_SEARCH -> {
+                if (tree.contains(key)) {
+                    writeInt(key);
+                } else {
+                    write(NULL);
+                }
+                writeByte('\n');
+            }
+            default -> {
+                firstKey = true;
+                try {
+                    tree.forEachInRange(key, decoder.bigKey, this::writeKey);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                if (firstKey) {
+                    write(NULL);
+                }
+                writeByte('\n');
+            }
+        }
+    }
+
+    private void writeKey(int key) {
+        try {
+            if (!firstKey) {
+                writeByte(',');
+            }
+            firstKey = false;
+            writeInt(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Format an int straight into the output buffer.
+     */
+    void writeInt(int value) throws IOException {
+        if (outLength + MAX_INT_CHARS > out.length) {
+            flush();
+        }
+        outLength = formatInt(out, outLength, value);
+    }
+
+    /**
+     * Format an int in decimal.
+     * @param buffer buffer receiving the digits, at least {@link #MAX_INT_CHARS} bytes must be free.
+     * @param offset position of the first character.
+     * @return position after the last digit.
+     */
+    static int formatInt(byte[] buffer, int offset, int value) {
+        if (value == Integer.MIN_VALUE) {
+            byte[] digits = Integer.toString(value).getBytes();
+            System.arraycopy(digits, 0, buffer, offset, digits.length);
+            return offset + digits.length;
+        }
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int end = offset + digits(value);
+        int i = end;
+        do {
+            buffer[--i] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        return end;
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    void writeByte(char c) throws IOException {
+        if (outLength == out.length) {
+            flush();
+        }
+        out[outLength++] = (byte) c;
+    }
+
+    void write(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write bytes through the output buffer, straight to the channel if they do not fit in it.
+     */
+    void write(byte[] bytes, int from, int length) throws IOException {
+        if (outLength + length > out.length) {
+            flush();
+            if (length > out.length) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, from, length);
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                return;
+            }
+        }
+        System.arraycopy(bytes, from, out, outLength, length);
+        outLength += length;
+    }
+
+    /**
+     * Write the NULL of a search that found nothing.
+     */
+    void writeNull() throws IOException {
+        write(NULL);
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(out, 0, outLength);
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+        outLength = 0;
+    }
+
+    /**
+     * Throughput of a replay.
+     */
+    public static final class Stats {
+
+        private final long commands;
+        private final long bytes;
+        private final long nanos;
+
+        private Stats(long commands, long bytes, long nanos) {
+            this.commands = commands;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public long getCommands() {
+            return commands;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Commands replayed per second.
+         * @return commands per second, 0 if nothing was replayed.
+         */
+        public double getCommandsPerSecond() {
+            return nanos > 0 ? commands * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d commands, %d bytes in %.3f s (%.0f commands/s, %.1f MB/s)", commands, bytes,
+                    nanos / 1e9, getCommandsPerSecond(), nanos > 0 ? bytes * 1e3 / nanos : 0.0);
+        }
+    }
+}
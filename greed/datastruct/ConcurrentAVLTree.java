@@ -0,0 +1,179 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe {@link AVLTree}. Writers are serialised by a {@link StampedLock}, readers do not lock at all:
+ * {@link #search(int)} and {@link #searchRange(int, int)} walk the tree under an optimistic stamp and only fall back
+ * to the read lock if a writer ran in the meantime. Reads never write shared memory, so read throughput scales with cores.
+ * <p>
+ * An optimistic walk can observe a rotation half done, so every walk is bounded by the maximum depth of an AVL tree
+ * and its result is thrown away unless the stamp still validates.
+ */
+public class ConcurrentAVLTree implements SearchTree {
+
+    private final AVLTree tree;
+    private final StampedLock lock;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a tree.
+     */
+    private ConcurrentAVLTree(AVLTree tree) {
+        this.tree = tree;
+        this.lock = new StampedLock();
+    }
+
+    /**
+     * Construct an empty tree.
+     * @return empty tree.
+     */
+    public static ConcurrentAVLTree initialize() {
+        return new ConcurrentAVLTree(AVLTree.initialize());
+    }
+
+    /**
+     * Wrap an existing tree, eg -: one built with {@link AVLTree#fromSorted(int[])}. The tree must not be used directly afterwards.
+     * @param tree tree to be shared.
+     * @return thread-safe view of the tree.
+     */
+    public static ConcurrentAVLTree of(AVLTree tree) {
+        return new ConcurrentAVLTree(tree);
+    }
+
+    @Override
+    public boolean insert(int key) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.insert(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean delete(int key) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.delete(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Bulk insert under a single write lock, see {@link AVLTree#bulkInsert(int[])}.
+     * @param keys keys to be inserted in any order.
+     * @return number of keys actually inserted.
+     */
+    public int bulkInsert(int[] keys) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.bulkInsert(keys);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Integer search(int key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean found = find(key);
+            if (lock.validate(stamp)) {
+                return found ? key : null;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return find(key) ? key : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            List<Integer> keys = new ArrayList<>();
+            if (collectRange(smallKey, bigKey, keys) && lock.validate(stamp)) {
+                return keys;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            List<Integer> keys = new ArrayList<>();
+            collectRange(smallKey, bigKey, keys);
+            return keys;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Bounded lookup, safe to run while a writer is rotating.
+     * @param key key to be searched.
+     * @return true if the key was seen.
+     */
+    private boolean find(int key) {
+        AVLNode node = tree.root();
+        // a walk deeper than MAX_DEPTH is on a torn view.
+        for (int depth = 0; node != null && depth < MAX_DEPTH; depth++) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return true;
+            }
+            node = key < nodeKey ? node.getLeft() : node.getRight();
+        }
+        return false;
+    }
+
+    /**
+     * Bounded in-order range walk, safe to run while a writer is rotating.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param keys destination of the keys in the range.
+     * @return false if the walk saw something no AVL tree can contain, the view was torn.
+     */
+    private boolean collectRange(int smallKey, int bigKey, List<Integer> keys) {
+        AVLNode[] stack = new AVLNode[MAX_DEPTH];
+        int top = 0;
+        AVLNode node = tree.root();
+        while (node != null || top > 0) {
+            // a descent never takes more steps than the height of the tree.
+            for (int depth = 0; node != null; depth++) {
+                if (depth == MAX_DEPTH) {
+                    return false;
+                }
+                if (node.getKey() < smallKey) {
+                    node = node.getRight();
+                } else {
+                    if (top == MAX_DEPTH) {
+                        return false;
+                    }
+                    stack[top++] = node;
+                    node = node.getLeft();
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            int nodeKey = node.getKey();
+            if (nodeKey > bigKey) {
+                break;
+            }
+            if (!keys.isEmpty() && keys.get(keys.size() - 1) >= nodeKey) {
+                // keys must come out ascending, anything else is a torn view (and could loop forever).
+                return false;
+            }
+            keys.add(nodeKey);
+            node = node.getRight();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,241 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * {@link AVLTree} kept in memory and made durable by a write-ahead log and periodic snapshots in a directory, so a
+ * restart loads the latest snapshot and replays only the log records written after it instead of the whole history.
+ * <p>
+ * Every insert and delete that changes the tree appends a record to the log ({@link WriteAheadLog}). Records are
+ * written in groups of groupCommitSize, or sooner once the oldest of them waited one force interval, and forced to disk
+ * at most every forceIntervalMillis; a background thread of the log does the same when no more records come. A record
+ * is durable about two force intervals after the insert or delete returned, so the durability setting trades write
+ * throughput for the records a crash can lose; {@link #sync()} makes everything durable at once.
+ * Every checkpointInterval records, {@link #checkpoint()} writes a snapshot of the tree next to the log (to a temporary
+ * file that atomically replaces the previous snapshot) and empties the log. The directory itself is forced after a file
+ * is created or renamed in it, a forced file whose name is not yet durable would be lost by a power failure.
+ * <p>
+ * Directory layout: "snapshot" and "wal". Not thread-safe, like {@link AVLTree}.
+ */
+public class DurableAVLTree implements SearchTree, Closeable {
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final String SNAPSHOT_TEMP = "snapshot.tmp";
+    private static final String LOG = "wal";
+    private static final int DEFAULT_GROUP_COMMIT = 256;
+    private static final long DEFAULT_FORCE_INTERVAL_MILLIS = 10;
+    private static final long DEFAULT_CHECKPOINT_INTERVAL = 1 << 20;
+
+    private final Path directory;
+    private final AVLTree tree;
+    private final WriteAheadLog log;
+    private final long checkpointInterval;
+    private long checkpointSequence;
+
+    /**
+     * private constructor, {@link #open(Path) open()} is to open or create a tree.
+     */
+    private DurableAVLTree(Path directory, AVLTree tree, WriteAheadLog log, long checkpointSequence, long checkpointInterval) {
+        this.directory = directory;
+        this.tree = tree;
+        this.log = log;
+        this.checkpointSequence = checkpointSequence;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Open the tree stored in a directory with the default durability: groups of 256 records, forced at most every 10 ms,
+     * every record durable within about 20 ms, and a checkpoint every 2^20 records.
+     * @param directory directory holding the snapshot and the log, created if missing.
+     * @return the tree as of its last durable record.
+     * @throws IOException if the directory cannot be read or written, or holds a corrupt snapshot.
+     */
+    public static DurableAVLTree open(Path directory) throws IOException {
+        return open(directory, DEFAULT_GROUP_COMMIT, DEFAULT_FORCE_INTERVAL_MILLIS, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Open the tree stored in a directory.
+     * @param directory directory holding the snapshot and the log, created if missing.
+     * @param groupCommitSize records written to the log in one frame, 1 to 65536.
+     * @param forceIntervalMillis least time between two forces of the log, 0 to force every frame, negative to never
+     *                            force (records are written within about 20 ms and then survive a process crash, but
+     *                            not a power failure until {@link #sync()}).
+     * @param checkpointInterval log records between two checkpoints, 0 for checkpoints on demand only.
+     * @return the tree as of its last durable record.
+     * @throws IOException if the directory cannot be read or written, or holds a corrupt snapshot.
+     */
+    public static DurableAVLTree open(Path directory, int groupCommitSize, long forceIntervalMillis, long checkpointInterval) throws IOException {
+        if (groupCommitSize < 1 || groupCommitSize > WriteAheadLog.MAX_GROUP_COMMIT) {
+            throw new IllegalArgumentException("groupCommitSize must be between 1 and " + WriteAheadLog.MAX_GROUP_COMMIT + ".");
+        }
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("checkpointInterval must not be negative.");
+        }
+        Files.createDirectories(directory);
+        // a snapshot.tmp left behind is a checkpoint that did not finish, the previous snapshot is still valid.
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_TEMP));
+        AVLTree tree = AVLTree.initialize();
+        long snapshotSequence = 0;
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                TreeSnapshot loaded = TreeSnapshot.read(channel);
+                tree = loaded.tree;
+                snapshotSequence = loaded.sequence;
+            }
+        }
+        long forceIntervalNanos = forceIntervalMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(forceIntervalMillis);
+        WriteAheadLog log = WriteAheadLog.open(directory.resolve(LOG), snapshotSequence, tree::insert, tree::delete,
+                groupCommitSize, forceIntervalNanos);
+        // the log may have just been created, and the deleted snapshot.tmp must not come back.
+        forceDirectory(directory);
+        return new DurableAVLTree(directory, tree, log, snapshotSequence, checkpointInterval);
+    }
+
+    /**
+     * Number of keys in the tree.
+     * @return number of keys.
+     */
+    public int size() {
+        return tree.size();
+    }
+
+    /**
+     * Insert a key and log it.
+     * @param key key to be inserted (Do not support duplicate keys).
+     * @return true if the key was inserted, false if it was already in the tree (nothing is logged then).
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    @Override
+    public boolean insert(int key) {
+        if (!tree.insert(key)) {
+            return false;
+        }
+        append(WriteAheadLog.INSERT, key);
+        return true;
+    }
+
+    /**
+     * Delete a key and log it.
+     * @param key key to be deleted.
+     * @return true if the key was deleted, false if it was not in the tree (nothing is logged then).
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    @Override
+    public boolean delete(int key) {
+        if (!tree.delete(key)) {
+            return false;
+        }
+        append(WriteAheadLog.DELETE, key);
+        return true;
+    }
+
+    @Override
+    public Integer search(int key) {
+        return tree.search(key);
+    }
+
+    /**
+     * Membership test without boxing the result.
+     * @param key key to be searched.
+     * @return true if the key is in the tree.
+     */
+    public boolean contains(int key) {
+        return tree.contains(key);
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        return tree.searchRange(smallKey, bigKey);
+    }
+
+    /**
+     * Pass every key in the range to the given action, in ascending order, without boxing.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param action receives the keys in the range smallKey ≤key ≤bigKey.
+     * @return number of keys passed to the action.
+     */
+    public int forEachInRange(int smallKey, int bigKey, IntConsumer action) {
+        return tree.forEachInRange(smallKey, bigKey, action);
+    }
+
+    /**
+     * Make every change so far durable: write the pending log records and force the log.
+     * @throws IOException if the log cannot be written.
+     */
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    /**
+     * Write a snapshot of the tree and empty the log, recovery then starts from this snapshot.
+     * The snapshot goes to a temporary file that is forced and atomically renamed over the previous one, and the rename
+     * is forced with the directory before the log is emptied, so a crash at any point leaves either the old snapshot
+     * with the full log or the new snapshot, with the full or the emptied log.
+     * @throws IOException if the snapshot or the log cannot be written.
+     */
+    public void checkpoint() throws IOException {
+        log.sync();
+        long sequence = log.sequence();
+        Path temp = directory.resolve(SNAPSHOT_TEMP);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            TreeSnapshot.write(channel, tree, sequence);
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // emptying the log before the rename is durable could leave the old snapshot with no log after a power failure.
+        forceDirectory(directory);
+        log.reset(sequence);
+        checkpointSequence = sequence;
+    }
+
+    /**
+     * Sync the log and close it. The tree must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Force the entries of a directory, so that the files created and renamed in it survive a power failure. Windows
+     * cannot open a directory as a channel, NTFS journals the entries itself.
+     * @param directory directory to be forced.
+     * @throws IOException if the directory cannot be opened or forced.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        if (File.separatorChar == '\\') {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void append(byte operation, int key) {
+        try {
+            log.append(operation, key);
+            if (checkpointInterval > 0 && log.sequence() - checkpointSequence >= checkpointInterval) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package greed.datastruct;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values (latencies in nanoseconds, path lengths) in the style of HdrHistogram:
+ * log-linear buckets, exact below 128 and within 1/64 (about 1.6%) above, over the whole long range in a fixed
+ * array of 3712 counters. Recording is an index computation and an increment, it never allocates.
+ * Not thread-safe.
+ */
+public final class Histogram {
+
+    // 64 sub-buckets per power of two, values below 2 * 64 get one bucket each.
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    /**
+     * Construct an empty histogram.
+     */
+    public Histogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    private Histogram(Histogram other) {
+        this.counts = other.counts.clone();
+        this.count = other.count;
+        this.sum = other.sum;
+        this.max = other.max;
+    }
+
+    /**
+     * Record a value.
+     * @param value value to be recorded, negative values count as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Add every value of another histogram to this one, eg: to merge the histograms of several threads.
+     * @param other histogram to be added, unchanged.
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Number of values recorded.
+     * @return count of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Largest value recorded, exact.
+     * @return maximum, 0 if empty.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Mean of the values recorded, exact.
+     * @return mean, 0 if empty.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Value below or at which the given share of the values fall, the upper bound of its bucket.
+     * @param percentile share of the values, from 0 to 100.
+     * @return value at the percentile, 0 if empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Independent copy, eg: to export a histogram that keeps recording.
+     * @return copy of this histogram.
+     */
+    public Histogram copy() {
+        return new Histogram(this);
+    }
+
+    /**
+     * Forget every value.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d", count, getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), max);
+    }
+
+    /**
+     * Bucket of a value: values below 128 map to themselves, above the value keeps its 7 leading bits and the number
+     * of bits shifted out selects the group of 64 buckets.
+     */
+    private static int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS + 1));
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,144 @@
+package greed.datastruct;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of lookup results for int keys: whether a key is in the tree or not. Open addressing over one primitive
+ * array, 4-way set-associative: a key can only live in the 4 slots of the set its hash selects, and a set is 32 bytes,
+ * so a lookup and the admission after a miss read a single cache line and never walk a chain.
+ * When a set is full, CLOCK picks the victim inside the set: every hit bumps the 2-bit use counter of its slot, and the
+ * hand of the set decrements the counters it passes until it finds an unused slot, so keys that keep being hit stay and
+ * one-off keys are evicted first.
+ * Not thread-safe, it belongs to one {@link CachedAVLTree}.
+ */
+final class HotKeyCache {
+
+    private static final int WAYS = 4;
+    // a slot is the key in the low 32 bits and its state above.
+    private static final long KEY_MASK = 0xFFFFFFFFL;
+    private static final long OCCUPIED = 1L << 32;
+    private static final long PRESENT = 1L << 33;
+    private static final int USE_SHIFT = 34;
+    private static final long USE_ONE = 1L << USE_SHIFT;
+    private static final long USE_MASK = 3L << USE_SHIFT;
+    // the CLOCK hand of a set lives in its first slot.
+    private static final int HAND_SHIFT = 40;
+    private static final long HAND_MASK = 3L << HAND_SHIFT;
+
+    /**
+     * Result of {@link #lookup(int)} when the key is not cached.
+     */
+    static final int UNKNOWN = -1;
+    /**
+     * Result of {@link #lookup(int)} when the key is cached as absent from the tree.
+     */
+    static final int ABSENT = 0;
+    /**
+     * Result of {@link #lookup(int)} when the key is cached as present in the tree.
+     */
+    static final int PRESENT_IN_TREE = 1;
+
+    private final long[] slots;
+    private final int setShift;
+
+    /**
+     * Construct an empty cache.
+     * @param capacity most keys cached, rounded up to a power of two (at least 4).
+     */
+    HotKeyCache(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30.");
+        }
+        int sets = Integer.highestOneBit(Math.max(WAYS, capacity) - 1) * 2 / WAYS;
+        this.slots = new long[sets * WAYS];
+        // fibonacci hashing: the top bits of key * golden ratio select the set.
+        this.setShift = 32 - Integer.numberOfTrailingZeros(sets);
+    }
+
+    /**
+     * Number of slots, the most keys the cache holds.
+     * @return capacity of the cache.
+     */
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Look a key up and mark it as recently used.
+     * @param key key to look up.
+     * @return {@link #PRESENT_IN_TREE}, {@link #ABSENT} or {@link #UNKNOWN} if the key is not cached.
+     */
+    int lookup(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return UNKNOWN;
+        }
+        long entry = slots[slot];
+        if ((entry & USE_MASK) != USE_MASK) {
+            slots[slot] = entry + USE_ONE;
+        }
+        return (entry & PRESENT) != 0 ? PRESENT_IN_TREE : ABSENT;
+    }
+
+    /**
+     * Cache the lookup result of a key that is not cached yet, evicting a key of its set if the set is full.
+     * @param key key looked up in the tree.
+     * @param present whether the key is in the tree.
+     */
+    void admit(int key, boolean present) {
+        int base = set(key) * WAYS;
+        int victim = -1;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if ((slots[slot] & OCCUPIED) == 0) {
+                victim = slot;
+                break;
+            }
+        }
+        if (victim < 0) {
+            // CLOCK: decrement the use counters on the way until an unused slot comes up.
+            int hand = (int) ((slots[base] & HAND_MASK) >>> HAND_SHIFT);
+            while ((slots[base + hand] & USE_MASK) != 0) {
+                slots[base + hand] -= USE_ONE;
+                hand = (hand + 1) & (WAYS - 1);
+            }
+            victim = base + hand;
+            slots[base] = (slots[base] & ~HAND_MASK) | (long) ((hand + 1) & (WAYS - 1)) << HAND_SHIFT;
+        }
+        long entry = (key & KEY_MASK) | OCCUPIED | (present ? PRESENT : 0);
+        slots[victim] = (slots[victim] & HAND_MASK) | entry;
+    }
+
+    /**
+     * Record a change of a key in the tree, if the key is cached. Keys that are not cached are left out.
+     * @param key key inserted or deleted.
+     * @param present whether the key is in the tree now.
+     */
+    void update(int key, boolean present) {
+        int slot = find(key);
+        if (slot >= 0) {
+            slots[slot] = present ? slots[slot] | PRESENT : slots[slot] & ~PRESENT;
+        }
+    }
+
+    /**
+     * Drop every cached key.
+     */
+    void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+    private int find(int key) {
+        long wanted = (key & KEY_MASK) | OCCUPIED;
+        int base = set(key) * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if ((slots[slot] & (KEY_MASK | OCCUPIED)) == wanted) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int set(int key) {
+        return setShift == 32 ? 0 : (key * 0x9E3779B9) >>> setShift;
+    }
+}
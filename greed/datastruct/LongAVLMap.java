@@ -0,0 +1,431 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Ordered map from long keys to values on an AVL tree, the long specialisation of {@link AVLMap}.
+ * Keys stay primitive and are compared inline, so no key is boxed and no comparator is called.
+ * Iteration with {@link #forEachInRange(long, long, EntryConsumer)} and {@link #keyIterator(long, long)} visits the keys
+ * in ascending order, the iterators take the place of the {@link java.util.SortedMap} views of AVLMap and support remove.
+ * {@link AVLMap} is the source of truth: the re-balancing, the rotations and the range walk here are its code with the
+ * comparator calls made inline, and a fix to one belongs in the other. They do not share a node class on purpose, a
+ * generic child field costs the search a type check per level, about a third slower at a million keys.
+ * @param <V> type of the values.
+ */
+public class LongAVLMap<V> {
+
+    private Entry<V> root;
+    private int size;
+    // incremented by every structural change, iterators fail fast on it.
+    private int modCount;
+    // path recorded by put and remove, reused so updates do not allocate.
+    private final Entry<V>[] path;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a map.
+     */
+    @SuppressWarnings("unchecked")
+    private LongAVLMap() {
+        this.path = (Entry<V>[]) new Entry<?>[SearchTree.MAX_DEPTH];
+    }
+
+    /**
+     * Construct an empty map.
+     * @param <V> type of the values.
+     * @return empty map.
+     */
+    public static <V> LongAVLMap<V> initialize() {
+        return new LongAVLMap<>();
+    }
+
+    /**
+     * Number of keys in the map.
+     * @return number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Search a key.
+     * @param key key to be searched.
+     * @return true if the key is in the map.
+     */
+    public boolean containsKey(long key) {
+        return getEntry(key) != null;
+    }
+
+    /**
+     * Value of a key.
+     * @param key key to be searched.
+     * @return value of the key, NULL if the key is not in the map (or is mapped to NULL).
+     */
+    public V get(long key) {
+        Entry<V> entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Insert a key with its value, or replace the value if the key is already in the map.
+     * Re-balancing stops at the first node whose height did not change, at most one rotation is needed.
+     * @param key key to be inserted.
+     * @param value value of the key.
+     * @return previous value of the key, NULL if the key was not in the map.
+     */
+    public V put(long key, V value) {
+        int pathLength = 0;
+        Entry<V> node = root;
+        while (node != null) {
+            if (key == node.key) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            path[pathLength++] = node;
+            node = key < node.key ? node.left : node.right;
+        }
+        Entry<V> newNode = new Entry<>(key, value);
+        if (pathLength == 0) {
+            root = newNode;
+        } else if (key < path[pathLength - 1].key) {
+            path[pathLength - 1].left = newNode;
+        } else {
+            path[pathLength - 1].right = newNode;
+        }
+        size++;
+        modCount++;
+
+        for (int i = pathLength - 1; i >= 0; i--) {
+            Entry<V> aNode = path[i];
+            aNode.updateHeight();
+            int balance = aNode.getBalance();
+            if (balance == 0) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                replaceChild(i > 0 ? path[i - 1] : null, aNode, rebalance(aNode));
+                break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove a key. Re-balancing stops at the first node whose height did not change.
+     * @param key key to be removed.
+     * @return value of the removed key, NULL if the key was not in the map.
+     */
+    public V remove(long key) {
+        int pathLength = 0;
+        Entry<V> node = root;
+        while (node != null && key != node.key) {
+            path[pathLength++] = node;
+            node = key < node.key ? node.left : node.right;
+        }
+        if (node == null) {
+            return null;
+        }
+        V removed = node.value;
+        if (node.left != null && node.right != null) {
+            // take the entry of the in-order predecessor and remove the predecessor instead.
+            path[pathLength++] = node;
+            Entry<V> predecessor = node.left;
+            while (predecessor.right != null) {
+                path[pathLength++] = predecessor;
+                predecessor = predecessor.right;
+            }
+            node.key = predecessor.key;
+            node.value = predecessor.value;
+            node = predecessor;
+        }
+        Entry<V> child = node.left != null ? node.left : node.right;
+        replaceChild(pathLength > 0 ? path[pathLength - 1] : null, node, child);
+        size--;
+        modCount++;
+
+        for (int i = pathLength - 1; i >= 0; i--) {
+            Entry<V> aNode = path[i];
+            aNode.updateHeight();
+            int balance = aNode.getBalance();
+            if (balance == 1 || balance == -1) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                Entry<V> subRoot = rebalance(aNode);
+                replaceChild(i > 0 ? path[i - 1] : null, aNode, subRoot);
+                if (subRoot.getBalance() != 0) {
+                    break;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Visit the entries of a range in ascending order of the keys, without materialising them.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param action receives the key and the value of each entry in the range smallKey ≤key ≤bigKey.
+     * @return number of entries visited.
+     */
+    public int forEachInRange(long smallKey, long bigKey, EntryConsumer<? super V> action) {
+        int visited = 0;
+        @SuppressWarnings("unchecked")
+        Entry<V>[] stack = (Entry<V>[]) new Entry<?>[SearchTree.MAX_DEPTH];
+        int top = 0;
+        Entry<V> node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (node.key < smallKey) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            if (node.key > bigKey) {
+                break;
+            }
+            action.accept(node.key, node.value);
+            visited++;
+            node = node.right;
+        }
+        return visited;
+    }
+
+    /**
+     * Smallest key.
+     * @return first key.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    public long firstKey() {
+        Entry<V> node = root;
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.key;
+    }
+
+    /**
+     * Largest key.
+     * @return last key.
+     * @throws NoSuchElementException if the map is empty.
+     */
+    public long lastKey() {
+        Entry<V> node = root;
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.key;
+    }
+
+    /**
+     * Iterator over every key in ascending order, fails fast when the map changes under it.
+     * @return iterator whose remove deletes the last key returned.
+     */
+    public PrimitiveIterator.OfLong keyIterator() {
+        return new KeyIterator(true, 0, true, 0);
+    }
+
+    /**
+     * Iterator over the keys of a range in ascending order, the counterpart of {@link AVLMap#subMap(Object, Object)}.
+     * @param fromKey lower bound of the range, included.
+     * @param toKey upper bound of the range, not included.
+     * @return iterator whose remove deletes the last key returned.
+     * @throws IllegalArgumentException if fromKey is greater than toKey.
+     */
+    public PrimitiveIterator.OfLong keyIterator(long fromKey, long toKey) {
+        if (fromKey > toKey) {
+            throw new IllegalArgumentException("fromKey must not be greater than toKey.");
+        }
+        return new KeyIterator(false, fromKey, false, toKey);
+    }
+
+    private Entry<V> getEntry(long key) {
+        Entry<V> node = root;
+        while (node != null && key != node.key) {
+            node = key < node.key ? node.left : node.right;
+        }
+        return node;
+    }
+
+    private void replaceChild(Entry<V> parent, Entry<V> oldChild, Entry<V> newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+    }
+
+    /**
+     * Restore the balance of a node whose balance factor is 2 or –2. Covers the insert cases (LL, RR, LR and RL)
+     * and the delete cases (R0, R1, R-1, L0, L1 and L-1).
+     * @param aNode unbalanced node.
+     * @return root of the rebalanced subtree.
+     */
+    private static <V> Entry<V> rebalance(Entry<V> aNode) {
+        if (aNode.getBalance() > 1) {
+            if (aNode.left.getBalance() < 0) {
+                aNode.left = leftRotate(aNode.left);
+            }
+            return rightRotate(aNode);
+        }
+        if (aNode.right.getBalance() > 0) {
+            aNode.right = rightRotate(aNode.right);
+        }
+        return leftRotate(aNode);
+    }
+
+    private static <V> Entry<V> rightRotate(Entry<V> node) {
+        Entry<V> child = node.left;
+        node.left = child.right;
+        child.right = node;
+        node.updateHeight();
+        child.updateHeight();
+        return child;
+    }
+
+    private static <V> Entry<V> leftRotate(Entry<V> node) {
+        Entry<V> child = node.right;
+        node.right = child.left;
+        child.left = node;
+        node.updateHeight();
+        child.updateHeight();
+        return child;
+    }
+
+    /**
+     * Receives the entries of a range, the key stays a primitive long.
+     * @param <V> type of the values.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+
+        /**
+         * Receive one entry.
+         * @param key key of the entry.
+         * @param value value of the entry.
+         */
+        void accept(long key, V value);
+    }
+
+    /**
+     * In-order iterator with an explicit stack over the keys from lo (included) to hi (not included), the copy of the
+     * entry iterator of {@link AVLMap}.
+     */
+    private final class KeyIterator implements PrimitiveIterator.OfLong {
+
+        @SuppressWarnings("unchecked")
+        private final Entry<V>[] stack = (Entry<V>[]) new Entry<?>[SearchTree.MAX_DEPTH];
+        private int top;
+        private int expectedModCount = modCount;
+        private final boolean toEnd;
+        private final long hi;
+        private long lastReturned;
+        private boolean canRemove;
+
+        private KeyIterator(boolean fromStart, long lo, boolean toEnd, long hi) {
+            this.toEnd = toEnd;
+            this.hi = hi;
+            Entry<V> node = root;
+            while (node != null) {
+                if (!fromStart && node.key < lo) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+
+        private void pushLeft(Entry<V> node) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0 && (toEnd || stack[top - 1].key < hi);
+        }
+
+        @Override
+        public long nextLong() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<V> node = stack[--top];
+            pushLeft(node.right);
+            lastReturned = node.key;
+            canRemove = true;
+            return node.key;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException("next() must be called before remove().");
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            LongAVLMap.this.remove(lastReturned);
+            expectedModCount = modCount;
+            canRemove = false;
+            // the nodes after the removed key.
+            top = 0;
+            Entry<V> node = root;
+            while (node != null) {
+                if (node.key <= lastReturned) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private long key;
+        private V value;
+        private Entry<V> left;
+        private Entry<V> right;
+        private int height;
+
+        private Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+            this.height = 1;
+        }
+
+        private int getBalance() {
+            return (left != null ? left.height : 0) - (right != null ? right.height : 0);
+        }
+
+        private void updateHeight() {
+            height = 1 + Math.max(left != null ? left.height : 0, right != null ? right.height : 0);
+        }
+    }
+}
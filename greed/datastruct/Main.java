@@ -1,6 +1,7 @@
 package greed.datastruct;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
@@ -12,27 +13,29 @@ public class Main {
     /**
      * This is the main method of the program.
      * @param args takes one command line argument for input file, defaults to "input.txt" if not specified.
-     * This method call decodeAndRunCommands() to decode the input file line by line run respective commands on AVL tree.
-     * The final output is written to "output_file.txt".
+     * "--stats" anywhere in the arguments prints the replay throughput (commands/sec) to the standard error.
+     * "--shards=N" replays over N key ranges, each with its own tree and worker thread, same output.
+     * This method replays the input file with {@link CommandReplayer}, which runs the same commands as decodeAndRunCommands() without a String per line.
+     * The final output is written to "output.txt".
      */
     public static void main(String[] args) {
         String filename = "input.txt";
-        if (args.length > 0) {
-            filename = args[0];
+        boolean stats = false;
+        int shards = 1;
+        for (String arg : args) {
+            if (arg.equals("--stats")) {
+                stats = true;
+            } else if (arg.startsWith("--shards=")) {
+                shards = Integer.parseInt(arg.substring("--shards=".length()));
+            } else {
+                filename = arg;
+            }
         }
-        AVLTree avlBinaryTree = null;
-        BufferedReader reader;
-        BufferedWriter writer;
         try {
-            reader = new BufferedReader(new FileReader(filename));
-            writer = new BufferedWriter(new FileWriter("output.txt", false));
-            String line = reader.readLine();
-            while (line != null) {
-                avlBinaryTree = decodeAndRunCommands(line, avlBinaryTree, writer);
-                line = reader.readLine();
+            CommandReplayer.Stats replayStats = CommandReplayer.replay(Path.of(filename), Path.of("output.txt"), shards);
+            if (stats) {
+                System.err.println(replayStats);
             }
-            reader.close();
-            writer.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,549 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * AVL tree whose nodes live in a memory-mapped file instead of the Java heap. Reopening a file is instant, nothing is rebuilt.
+ * Nodes are addressed by index like in {@link ArrayAVLTree}, index 0 is the empty subtree.
+ * <p>
+ * Changes are grouped in batches that become durable with {@link #commit()}. A node that belongs to the last committed
+ * tree is never written in place: it is copied first (copy-on-write), and the slots it leaves behind are only reused after
+ * the next commit. A slot allocated and released by the same batch is reused right away, so a batch of churn on the same
+ * keys does not grow the file. The file starts with two header slots (root, size, free-list head, generation and a
+ * CRC32) that are written alternately, so a crash at any point reopens the tree exactly as it was at the last
+ * successful commit. Released slots join the free list with the commit that releases them, so a crash leaks none.
+ * <p>
+ * File layout: {@value #HEADER_BYTES} bytes of header, then fixed size nodes of {@value #NODE_BYTES} bytes.
+ * Not thread safe.
+ */
+public class MappedAVLTree implements SearchTree, Closeable {
+
+    private static final long MAGIC = 0x41564C5452454531L; // "AVLTREE1"
+    private static final int NIL = 0;
+
+    // header: two slots, each holding magic, generation, root, size, nextSlot, freeHead and the checksum of those fields.
+    private static final int HEADER_BYTES = 4096;
+    private static final int HEADER_SLOT_BYTES = 512;
+    private static final int H_MAGIC = 0;
+    private static final int H_GENERATION = 8;
+    private static final int H_ROOT = 16;
+    private static final int H_SIZE = 20;
+    private static final int H_NEXT_SLOT = 24;
+    private static final int H_FREE_HEAD = 28;
+    private static final int H_CHECKSUM = 32;
+
+    // node: key, left, right, height, generation that wrote it, and the free-list link (never touched by node writes).
+    private static final int NODE_BYTES = 32;
+    private static final int NODE_SHIFT = 5;
+    private static final int N_KEY = 0;
+    private static final int N_LEFT = 4;
+    private static final int N_RIGHT = 8;
+    private static final int N_HEIGHT = 12;
+    private static final int N_GENERATION = 16;
+    private static final int N_FREE_NEXT = 24;
+
+    // nodes are mapped in chunks of 2^20 nodes (32 MB) so the file can grow past the 2 GB limit of a single mapping.
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final long CHUNK_BYTES = (long) NODE_BYTES << CHUNK_SHIFT;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private boolean[] dirtyChunks;
+    private int chunkCount;
+
+    private long committedGeneration;
+    private int committedSlot;
+    private int root;
+    private int size;
+    private int nextSlot;
+    private int freeHead;
+    // nextSlot of the last commit, the slots from there on are not on the committed free list.
+    private int committedNextSlot;
+    // slots released by the current batch, still part of the committed tree until the next commit.
+    private int[] pendingFree;
+    private int pendingFreeCount;
+    // slots allocated and released by the current batch, reused first. Kept off the free list until the commit: a slot
+    // taken from the committed free list must keep its link, the committed header still reaches it.
+    private int[] batchFree;
+    private int batchFreeCount;
+    // slots taken from the committed free list by the current batch, in list order.
+    private int[] taken;
+    private int takenCount;
+    private final int[] path;
+
+    /**
+     * private constructor, {@link #open(Path) open()} is to open or create a tree.
+     */
+    private MappedAVLTree(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        this.chunks = new MappedByteBuffer[4];
+        this.dirtyChunks = new boolean[4];
+        this.pendingFree = new int[64];
+        this.batchFree = new int[64];
+        this.taken = new int[64];
+        this.path = new int[MAX_DEPTH];
+    }
+
+    /**
+     * Open the tree stored in the given file, creating an empty tree if the file does not exist or is empty.
+     * @param file file backing the tree.
+     * @return the tree as of its last commit.
+     * @throws IOException if the file cannot be mapped or holds no valid header.
+     */
+    public static MappedAVLTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean empty = channel.size() == 0;
+            MappedAVLTree tree = new MappedAVLTree(channel);
+            if (empty) {
+                tree.format();
+            } else {
+                tree.recover(file);
+            }
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of keys in the tree.
+     * @return number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Make all changes since the last commit durable. The slots released by the batch are linked into the free list,
+     * node data is forced to disk, then the new header is written to the header slot not used by the last commit and
+     * forced as well.
+     */
+    public void commit() {
+        // the released slots taken from the committed free list go back in list order, each linked to one further down
+        // the committed list: if the header below never becomes durable, the committed list still holds only free slots.
+        for (int i = takenCount - 1; i >= 0; i--) {
+            if (height(taken[i]) == 0) {
+                linkFree(taken[i]);
+            }
+        }
+        // nothing committed reads the free-list link of the other released slots.
+        for (int i = 0; i < batchFreeCount; i++) {
+            if (batchFree[i] >= committedNextSlot) {
+                linkFree(batchFree[i]);
+            }
+        }
+        for (int i = 0; i < pendingFreeCount; i++) {
+            linkFree(pendingFree[i]);
+        }
+        for (int c = 0; c < chunkCount; c++) {
+            if (dirtyChunks[c]) {
+                chunks[c].force();
+                dirtyChunks[c] = false;
+            }
+        }
+        int slot = 1 - committedSlot;
+        writeHeader(slot, committedGeneration + 1);
+        header.force();
+        committedSlot = slot;
+        committedGeneration++;
+        committedNextSlot = nextSlot;
+        pendingFreeCount = 0;
+        batchFreeCount = 0;
+        takenCount = 0;
+    }
+
+    /**
+     * Commit pending changes and release the file.
+     * @throws IOException if the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    @Override
+    public boolean insert(int key) {
+        int pathLength = 0;
+        int node = root;
+        while (node != NIL) {
+            int nodeKey = getInt(node, N_KEY);
+            if (key == nodeKey) {
+                return false;
+            }
+            path[pathLength++] = node;
+            node = key < nodeKey ? getInt(node, N_LEFT) : getInt(node, N_RIGHT);
+        }
+        makePathWritable(pathLength);
+        int newNode = allocate(key);
+        if (pathLength == 0) {
+            root = newNode;
+        } else {
+            int parent = path[pathLength - 1];
+            putInt(parent, key < getInt(parent, N_KEY) ? N_LEFT : N_RIGHT, newNode);
+        }
+        size++;
+
+        // Re-balancing after insertion, stops at the first subtree that kept its height.
+        for (int i = pathLength - 1; i >= 0; i--) {
+            int aNode = path[i];
+            updateHeight(aNode);
+            int balance = getBalance(aNode);
+            if (balance == 0) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                replaceChild(i > 0 ? path[i - 1] : NIL, aNode, rebalance(aNode));
+                break;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean delete(int key) {
+        int pathLength = 0;
+        int node = root;
+        while (node != NIL && key != getInt(node, N_KEY)) {
+            path[pathLength++] = node;
+            node = key < getInt(node, N_KEY) ? getInt(node, N_LEFT) : getInt(node, N_RIGHT);
+        }
+        if (node == NIL) {
+            return false;
+        }
+        int removed = node;
+        int nodeIndex = pathLength;
+        if (getInt(node, N_LEFT) != NIL && getInt(node, N_RIGHT) != NIL) {
+            // take the key of the in-order predecessor and remove the predecessor instead.
+            path[pathLength++] = node;
+            int predecessor = getInt(node, N_LEFT);
+            while (getInt(predecessor, N_RIGHT) != NIL) {
+                path[pathLength++] = predecessor;
+                predecessor = getInt(predecessor, N_RIGHT);
+            }
+            removed = predecessor;
+        }
+        makePathWritable(pathLength);
+        if (removed != node) {
+            // the node holding the key may have been copied, take it from the path.
+            putInt(path[nodeIndex], N_KEY, getInt(removed, N_KEY));
+        }
+        int child = getInt(removed, N_LEFT) != NIL ? getInt(removed, N_LEFT) : getInt(removed, N_RIGHT);
+        replaceChild(pathLength > 0 ? path[pathLength - 1] : NIL, removed, child);
+        release(removed);
+        size--;
+
+        // Re-balancing after deletion, stops at the first subtree that kept its height.
+        for (int i = pathLength - 1; i >= 0; i--) {
+            int aNode = path[i];
+            updateHeight(aNode);
+            int balance = getBalance(aNode);
+            if (balance == 1 || balance == -1) {
+                break;
+            }
+            if (balance > 1 || balance < -1) {
+                int subRoot = rebalance(aNode);
+                replaceChild(i > 0 ? path[i - 1] : NIL, aNode, subRoot);
+                if (getBalance(subRoot) != 0) {
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Integer search(int key) {
+        int node = root;
+        while (node != NIL) {
+            int nodeKey = getInt(node, N_KEY);
+            if (key == nodeKey) {
+                return nodeKey;
+            }
+            node = key < nodeKey ? getInt(node, N_LEFT) : getInt(node, N_RIGHT);
+        }
+        return null;
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        List<Integer> result = new ArrayList<>();
+        // in-order walk that skips subtrees outside of the range.
+        int[] stack = new int[MAX_DEPTH];
+        int top = 0;
+        int node = root;
+        while (node != NIL || top > 0) {
+            while (node != NIL) {
+                if (getInt(node, N_KEY) < smallKey) {
+                    node = getInt(node, N_RIGHT);
+                } else {
+                    stack[top++] = node;
+                    node = getInt(node, N_LEFT);
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            int nodeKey = getInt(node, N_KEY);
+            if (nodeKey > bigKey) {
+                break;
+            }
+            result.add(nodeKey);
+            node = getInt(node, N_RIGHT);
+        }
+        return result;
+    }
+
+    /**
+     * Write an empty tree and commit it to both header slots.
+     */
+    private void format() {
+        root = NIL;
+        size = 0;
+        nextSlot = 1;
+        committedNextSlot = 1;
+        freeHead = NIL;
+        committedGeneration = 0;
+        ensureChunk(0);
+        writeHeader(1, 0);
+        writeHeader(0, 1);
+        header.force();
+        committedSlot = 0;
+        committedGeneration = 1;
+    }
+
+    /**
+     * Load the newest header slot with a valid checksum.
+     */
+    private void recover(Path file) throws IOException {
+        int best = -1;
+        long bestGeneration = -1;
+        for (int slot = 0; slot < 2; slot++) {
+            int base = slot * HEADER_SLOT_BYTES;
+            if (header.getLong(base + H_MAGIC) == MAGIC && header.getLong(base + H_CHECKSUM) == headerChecksum(base)
+                    && header.getLong(base + H_GENERATION) > bestGeneration) {
+                best = slot;
+                bestGeneration = header.getLong(base + H_GENERATION);
+            }
+        }
+        if (best < 0) {
+            throw new IOException(file + " is not an AVL tree file or its headers are corrupt.");
+        }
+        int base = best * HEADER_SLOT_BYTES;
+        committedSlot = best;
+        committedGeneration = bestGeneration;
+        root = header.getInt(base + H_ROOT);
+        size = header.getInt(base + H_SIZE);
+        nextSlot = header.getInt(base + H_NEXT_SLOT);
+        committedNextSlot = nextSlot;
+        freeHead = header.getInt(base + H_FREE_HEAD);
+        for (int c = 0; c <= (nextSlot - 1) >>> CHUNK_SHIFT; c++) {
+            ensureChunk(c);
+        }
+    }
+
+    private void writeHeader(int slot, long generation) {
+        int base = slot * HEADER_SLOT_BYTES;
+        header.putLong(base + H_MAGIC, MAGIC);
+        header.putLong(base + H_GENERATION, generation);
+        header.putInt(base + H_ROOT, root);
+        header.putInt(base + H_SIZE, size);
+        header.putInt(base + H_NEXT_SLOT, nextSlot);
+        header.putInt(base + H_FREE_HEAD, freeHead);
+        header.putLong(base + H_CHECKSUM, headerChecksum(base));
+    }
+
+    private long headerChecksum(int base) {
+        CRC32 crc = new CRC32();
+        crc.update(header.slice(base, H_CHECKSUM));
+        return crc.getValue();
+    }
+
+    /**
+     * Replace every node on the recorded path that belongs to the committed tree by a copy, and relink the copies.
+     */
+    private void makePathWritable(int pathLength) {
+        for (int i = 0; i < pathLength; i++) {
+            int node = path[i];
+            int copy = writable(node);
+            if (copy != node) {
+                replaceChild(i > 0 ? path[i - 1] : NIL, node, copy);
+                path[i] = copy;
+            }
+        }
+    }
+
+    /**
+     * A node written by the current batch is returned as is, a committed node is copied to a fresh slot.
+     */
+    private int writable(int node) {
+        if (getLong(node, N_GENERATION) > committedGeneration) {
+            return node;
+        }
+        int copy = allocate(getInt(node, N_KEY));
+        putInt(copy, N_LEFT, getInt(node, N_LEFT));
+        putInt(copy, N_RIGHT, getInt(node, N_RIGHT));
+        putInt(copy, N_HEIGHT, getInt(node, N_HEIGHT));
+        release(node);
+        return copy;
+    }
+
+    private int allocate(int key) {
+        int slot;
+        if (batchFreeCount > 0) {
+            slot = batchFree[--batchFreeCount];
+        } else if (freeHead != NIL) {
+            slot = freeHead;
+            freeHead = getInt(slot, N_FREE_NEXT);
+            if (takenCount == taken.length) {
+                taken = Arrays.copyOf(taken, takenCount * 2);
+            }
+            taken[takenCount++] = slot;
+        } else {
+            if (nextSlot < 0) {
+                throw new IllegalStateException("MappedAVLTree is full.");
+            }
+            slot = nextSlot++;
+            ensureChunk(slot >>> CHUNK_SHIFT);
+        }
+        putInt(slot, N_KEY, key);
+        putInt(slot, N_LEFT, NIL);
+        putInt(slot, N_RIGHT, NIL);
+        putInt(slot, N_HEIGHT, 1);
+        putLong(slot, N_GENERATION, committedGeneration + 1);
+        return slot;
+    }
+
+    private void release(int slot) {
+        if (getLong(slot, N_GENERATION) > committedGeneration) {
+            // written by this batch only, no committed tree can reach it. Height 0 marks it released.
+            putInt(slot, N_HEIGHT, 0);
+            if (batchFreeCount == batchFree.length) {
+                batchFree = Arrays.copyOf(batchFree, batchFreeCount * 2);
+            }
+            batchFree[batchFreeCount++] = slot;
+            return;
+        }
+        if (pendingFreeCount == pendingFree.length) {
+            pendingFree = Arrays.copyOf(pendingFree, pendingFreeCount * 2);
+        }
+        pendingFree[pendingFreeCount++] = slot;
+    }
+
+    private void linkFree(int slot) {
+        putInt(slot, N_FREE_NEXT, freeHead);
+        freeHead = slot;
+    }
+
+    private void ensureChunk(int chunk) {
+        if (chunk < chunkCount) {
+            return;
+        }
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            dirtyChunks = Arrays.copyOf(dirtyChunks, dirtyChunks.length * 2);
+        }
+        try {
+            chunks[chunk] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + chunk * CHUNK_BYTES, CHUNK_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        chunkCount = chunk + 1;
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NIL) {
+            root = newChild;
+        } else if (getInt(parent, N_LEFT) == oldChild) {
+            putInt(parent, N_LEFT, newChild);
+        } else {
+            putInt(parent, N_RIGHT, newChild);
+        }
+    }
+
+    private int height(int node) {
+        return getInt(node, N_HEIGHT);
+    }
+
+    private void updateHeight(int node) {
+        putInt(node, N_HEIGHT, 1 + Math.max(height(getInt(node, N_LEFT)), height(getInt(node, N_RIGHT))));
+    }
+
+    private int getBalance(int node) {
+        return height(getInt(node, N_LEFT)) - height(getInt(node, N_RIGHT));
+    }
+
+    /**
+     * Restore the balance of a writable node whose balance factor is 2 or –2, copying the children it rotates.
+     * @param aNode unbalanced node.
+     * @return root of the rebalanced subtree.
+     */
+    private int rebalance(int aNode) {
+        if (getBalance(aNode) > 1) {
+            if (getBalance(getInt(aNode, N_LEFT)) < 0) {
+                putInt(aNode, N_LEFT, leftRotate(writable(getInt(aNode, N_LEFT))));
+            }
+            return rightRotate(aNode);
+        }
+        if (getBalance(getInt(aNode, N_RIGHT)) > 0) {
+            putInt(aNode, N_RIGHT, rightRotate(writable(getInt(aNode, N_RIGHT))));
+        }
+        return leftRotate(aNode);
+    }
+
+    private int rightRotate(int node) {
+        int child = writable(getInt(node, N_LEFT));
+        putInt(node, N_LEFT, getInt(child, N_RIGHT));
+        putInt(child, N_RIGHT, node);
+        updateHeight(node);
+        updateHeight(child);
+        return child;
+    }
+
+    private int leftRotate(int node) {
+        int child = writable(getInt(node, N_RIGHT));
+        putInt(node, N_RIGHT, getInt(child, N_LEFT));
+        putInt(child, N_LEFT, node);
+        updateHeight(node);
+        updateHeight(child);
+        return child;
+    }
+
+    private int getInt(int slot, int field) {
+        return chunks[slot >>> CHUNK_SHIFT].getInt(((slot & CHUNK_MASK) << NODE_SHIFT) + field);
+    }
+
+    private long getLong(int slot, int field) {
+        return chunks[slot >>> CHUNK_SHIFT].getLong(((slot & CHUNK_MASK) << NODE_SHIFT) + field);
+    }
+
+    private void putInt(int slot, int field, int value) {
+        int chunk = slot >>> CHUNK_SHIFT;
+        chunks[chunk].putInt(((slot & CHUNK_MASK) << NODE_SHIFT) + field, value);
+        dirtyChunks[chunk] = true;
+    }
+
+    private void putLong(int slot, int field, long value) {
+        int chunk = slot >>> CHUNK_SHIFT;
+        chunks[chunk].putLong(((slot & CHUNK_MASK) << NODE_SHIFT) + field, value);
+        dirtyChunks[chunk] = true;
+    }
+}
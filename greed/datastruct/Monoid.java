@@ -0,0 +1,63 @@
+package greed.datastruct;
+
+import java.util.Objects;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Associative operation with an identity, folded over the values of a key range by
+ * {@link AVLTree#aggregateRange(int, int)}. Every node of an aggregating tree keeps the fold of its subtree, so the
+ * operation must be associative: combine(a, combine(b, c)) == combine(combine(a, b), c). It does not have to be
+ * commutative, values are always combined in ascending key order.
+ */
+public interface Monoid {
+
+    /**
+     * Sum of the values, in a long so a range of int values cannot overflow.
+     */
+    Monoid SUM = of(0, Long::sum);
+
+    /**
+     * Smallest value, {@link Long#MAX_VALUE} for an empty range.
+     */
+    Monoid MIN = of(Long.MAX_VALUE, Math::min);
+
+    /**
+     * Largest value, {@link Long#MIN_VALUE} for an empty range.
+     */
+    Monoid MAX = of(Long.MIN_VALUE, Math::max);
+
+    /**
+     * Result of an empty range, combining it with any x gives x.
+     * @return identity of the operation.
+     */
+    long identity();
+
+    /**
+     * Combine the folds of two adjacent ranges.
+     * @param left fold of the range of smaller keys.
+     * @param right fold of the range of greater keys.
+     * @return fold of both ranges.
+     */
+    long combine(long left, long right);
+
+    /**
+     * Monoid of a user-supplied operation.
+     * @param identity result of an empty range.
+     * @param combine associative operation.
+     * @return monoid combining with the given operation.
+     */
+    static Monoid of(long identity, LongBinaryOperator combine) {
+        Objects.requireNonNull(combine);
+        return new Monoid() {
+            @Override
+            public long identity() {
+                return identity;
+            }
+
+            @Override
+            public long combine(long left, long right) {
+                return combine.applyAsLong(left, right);
+            }
+        };
+    }
+}
@@ -0,0 +1,289 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable AVL tree. {@link #insert(int)} and {@link #delete(int)} leave this version untouched and return a new one:
+ * only the O(log n) nodes on the path to the key (and the few touched by rotations) are copied, every other subtree is
+ * shared with the previous version. A version is safe to read from any number of threads without locking, so keeping
+ * a snapshot costs nothing. {@link VersionedAVLTree} is the mutable front end that publishes the versions.
+ */
+public final class PersistentAVLTree {
+
+    private static final PersistentAVLTree EMPTY = new PersistentAVLTree(null);
+
+    private final Node root;
+
+    /**
+     * private constructor, {@link #empty() empty()} is the first version of every tree.
+     */
+    private PersistentAVLTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * The empty tree.
+     * @return empty tree.
+     */
+    public static PersistentAVLTree empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a perfectly balanced version from keys in strictly ascending order in O(n).
+     * @param sortedKeys keys in strictly ascending order.
+     * @return version holding the given keys.
+     * @throws IllegalArgumentException if the keys are not strictly ascending.
+     */
+    public static PersistentAVLTree fromSorted(int[] sortedKeys) {
+        for (int i = 1; i < sortedKeys.length; i++) {
+            if (sortedKeys[i - 1] >= sortedKeys[i]) {
+                throw new IllegalArgumentException("keys must be in strictly ascending order, found " + sortedKeys[i - 1] + " before " + sortedKeys[i] + ".");
+            }
+        }
+        return sortedKeys.length == 0 ? EMPTY : new PersistentAVLTree(build(sortedKeys, 0, sortedKeys.length));
+    }
+
+    private static Node build(int[] sortedKeys, int from, int to) {
+        if (from >= to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        return new Node(sortedKeys[mid], build(sortedKeys, from, mid), build(sortedKeys, mid + 1, to));
+    }
+
+    /**
+     * Number of keys in this version.
+     * @return number of keys.
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Insert a key, path-copying O(log n) nodes.
+     * @param key key to be inserted (Do not support duplicate keys).
+     * @return version holding the key, this version if the key was already in it.
+     */
+    public PersistentAVLTree insert(int key) {
+        Node inserted = insert(root, key);
+        return inserted == root ? this : new PersistentAVLTree(inserted);
+    }
+
+    /**
+     * Delete a key, path-copying O(log n) nodes.
+     * @param key key to be deleted.
+     * @return version without the key, this version if the key was not in it.
+     */
+    public PersistentAVLTree delete(int key) {
+        Node deleted = delete(root, key);
+        if (deleted == root) {
+            return this;
+        }
+        return deleted == null ? EMPTY : new PersistentAVLTree(deleted);
+    }
+
+    /**
+     * Search a key.
+     * @param key key to be searched.
+     * @return returns the key if present in this version else NULL.
+     */
+    public Integer search(int key) {
+        return contains(key) ? key : null;
+    }
+
+    /**
+     * Membership test.
+     * @param key key to be searched.
+     * @return true if the key is in this version.
+     */
+    public boolean contains(int key) {
+        Node node = root;
+        while (node != null && node.key != key) {
+            node = key < node.key ? node.left : node.right;
+        }
+        return node != null;
+    }
+
+    /**
+     * Range search.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @return returns keys that are in the range smallKey ≤key ≤bigKey in ascending order.
+     */
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        List<Integer> keys = new ArrayList<>();
+        forEachInRange(smallKey, bigKey, keys::add);
+        return keys;
+    }
+
+    /**
+     * Visit the keys of a range in ascending order, without materialising them.
+     * @param smallKey lower bound of the range.
+     * @param bigKey upper bound of the range.
+     * @param action receives the keys in the range smallKey ≤key ≤bigKey.
+     * @return number of keys visited.
+     */
+    public int forEachInRange(int smallKey, int bigKey, IntConsumer action) {
+        int visited = 0;
+        Node[] stack = new Node[SearchTree.MAX_DEPTH];
+        int top = 0;
+        Node node = root;
+        while (node != null || top > 0) {
+            while (node != null) {
+                if (node.key < smallKey) {
+                    node = node.right;
+                } else {
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+            if (top == 0) {
+                break;
+            }
+            node = stack[--top];
+            if (node.key > bigKey) {
+                break;
+            }
+            action.accept(node.key);
+            visited++;
+            node = node.right;
+        }
+        return visited;
+    }
+
+    /**
+     * Copy the path to the key and link the new node at its end, re-balancing the copies on the way back up.
+     * @return root of the new version, the given node if the key is already in the subtree.
+     */
+    private static Node insert(Node node, int key) {
+        if (node == null) {
+            return new Node(key, null, null);
+        }
+        if (key < node.key) {
+            Node left = insert(node.left, key);
+            return left == node.left ? node : balance(node.key, left, node.right);
+        }
+        if (key > node.key) {
+            Node right = insert(node.right, key);
+            return right == node.right ? node : balance(node.key, node.left, right);
+        }
+        return node;
+    }
+
+    /**
+     * Copy the path to the key and drop its node, a node with two children takes the key of its in-order predecessor.
+     * @return root of the new version, the given node if the key is not in the subtree.
+     */
+    private static Node delete(Node node, int key) {
+        if (node == null) {
+            return null;
+        }
+        if (key < node.key) {
+            Node left = delete(node.left, key);
+            return left == node.left ? node : balance(node.key, left, node.right);
+        }
+        if (key > node.key) {
+            Node right = delete(node.right, key);
+            return right == node.right ? node : balance(node.key, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node predecessor = node.left;
+        while (predecessor.right != null) {
+            predecessor = predecessor.right;
+        }
+        return balance(predecessor.key, deleteMax(node.left), node.right);
+    }
+
+    private static Node deleteMax(Node node) {
+        if (node.right == null) {
+            return node.left;
+        }
+        return balance(node.key, node.left, deleteMax(node.right));
+    }
+
+    /**
+     * Build a node from a key and two subtrees whose heights differ by at most two, rotating with new nodes if needed.
+     * Covers the insert cases (LL, RR, LR and RL) and the delete cases (R0, R1, R-1, L0, L1 and L-1).
+     * @return root of the balanced subtree.
+     */
+    private static Node balance(int key, Node left, Node right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left.key, left.left, new Node(key, left.right, right));
+            }
+            Node pivot = left.right;
+            return new Node(pivot.key, new Node(left.key, left.left, pivot.left), new Node(key, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right.key, new Node(key, left, right.left), right.right);
+            }
+            Node pivot = right.left;
+            return new Node(pivot.key, new Node(key, left, pivot.left), new Node(right.key, pivot.right, right.right));
+        }
+        return new Node(key, left, right);
+    }
+
+    /**
+     * Check the invariants of this version: keys in ascending order and heights of the children within one of each
+     * other. Heights and sizes are fixed at construction and need no check. Used by {@link TreeChecks}.
+     * @throws IllegalStateException naming the first node that breaks an invariant.
+     */
+    void checkInvariants() {
+        checkSubtree(root, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private static void checkSubtree(Node node, long low, long high) {
+        if (node == null) {
+            return;
+        }
+        if (node.key < low || node.key > high) {
+            throw new IllegalStateException("key " + node.key + " is out of order.");
+        }
+        if (Math.abs(height(node.left) - height(node.right)) > 1) {
+            throw new IllegalStateException("node " + node.key + " is unbalanced.");
+        }
+        checkSubtree(node.left, low, node.key - 1L);
+        checkSubtree(node.right, node.key + 1L, high);
+    }
+
+    private static int height(Node node) {
+        return node != null ? node.height : 0;
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    /**
+     * Immutable node, height and subtree size are fixed at construction.
+     */
+    private static final class Node {
+
+        private final int key;
+        private final Node left;
+        private final Node right;
+        private final int height;
+        private final int size;
+
+        private Node(int key, Node left, Node right) {
+            this.key = key;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package greed.datastruct;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+import static greed.datastruct.CommandReplayer.MAX_INT_CHARS;
+import static greed.datastruct.CommandDecoder.OP_DELETE;
+import static greed.datastruct.CommandDecoder.OP_INITIALIZE;
+import static greed.datastruct.CommandDecoder.OP_INSERT;
+import static greed.datastruct.CommandDecoder.OP_SEARCH;
+import static greed.datastruct.CommandDecoder.OP_SEARCH_RANGE;
+
+/**
+ * Runs the commands decoded by a {@link CommandReplayer} on several {@link AVLTree}s, one per range of keys, each
+ * owned by a worker thread, so the trees need no locking.
+ * <p>
+ * The replayer thread collects the commands into a batch. A full batch is split into one list of commands per shard
+ * (Initialize() goes to every shard, a range search to every shard it overlaps) and queued to the workers, and the
+ * replayer goes on parsing the next one. Up to {@link #IN_FLIGHT} batches are in the pipeline: when it is full the
+ * oldest batch is waited for and its results are written in command order. A point search result is a flag set by
+ * the shard of its key, a range search result is the concatenation of the text formatted by its shards, in shard
+ * order which is key order. A batch is cut short after {@link #BATCH_RANGES} range searches, as their results stay
+ * in memory until it is written.
+ * <p>
+ * The shard boundaries are the quantiles of the keys of the first batch and never move: a log whose keys drift far
+ * from its first batch loads the shards unevenly, the output is still the same.
+ */
+final class ShardedExecutor implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1 << 16;
+    // range results are held until their batch is written, fewer range searches per batch bound that memory.
+    private static final int BATCH_RANGES = 1 << 10;
+    private static final int IN_FLIGHT = 4;
+    // decoded commands are stored as op, key, argument.
+    private static final int STRIDE = 3;
+    // tells a worker to stop.
+    private static final ShardBatch STOP = new ShardBatch(null);
+
+    private final CommandReplayer replayer;
+    private final Worker[] workers;
+    private final Batch[] batches;
+    // first key of every shard but the first, ascending, taken from the first batch.
+    private int[] bounds;
+    // batches dispatched and batches written since the start.
+    private long dispatched;
+    private long written;
+
+    /**
+     * Start the workers.
+     * @param replayer replayer decoding the commands and receiving the results.
+     * @param shards number of trees and worker threads.
+     */
+    ShardedExecutor(CommandReplayer replayer, int shards) {
+        this.replayer = replayer;
+        this.workers = new Worker[shards];
+        this.batches = new Batch[IN_FLIGHT];
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            batches[i] = new Batch(shards);
+        }
+        for (int s = 0; s < shards; s++) {
+            workers[s] = new Worker(s);
+            workers[s].start();
+        }
+    }
+
+    /**
+     * Queue one decoded command, writing the results of the oldest batch when the pipeline is full.
+     * @param op one of the OP_ constants of {@link CommandDecoder}.
+     * @param key key of the command.
+     * @param bigKey upper bound of a range search.
+     * @throws IOException if the results cannot be written.
+     */
+    void add(int op, int key, int bigKey) throws IOException {
+        Batch batch = batches[(int) (dispatched % IN_FLIGHT)];
+        int i = batch.size++ * STRIDE;
+        batch.commands[i] = op;
+        batch.commands[i + 1] = key;
+        batch.commands[i + 2] = bigKey;
+        if (op == OP_SEARCH_RANGE) {
+            batch.ranges++;
+        }
+        if (batch.size == BATCH_SIZE || batch.ranges == BATCH_RANGES) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Run the last batch and write the results of every batch left.
+     * @throws IOException if the results cannot be written.
+     */
+    void finish() throws IOException {
+        if (batches[(int) (dispatched % IN_FLIGHT)].size > 0) {
+            dispatch();
+        }
+        while (written < dispatched) {
+            writeOldest();
+        }
+    }
+
+    /**
+     * Stop the workers, they finish the batches already queued first.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.queue.add(STOP);
+        }
+    }
+
+    private void dispatch() throws IOException {
+        Batch batch = batches[(int) (dispatched % IN_FLIGHT)];
+        if (bounds == null) {
+            bounds = quantiles(batch, workers.length);
+        }
+        partition(batch);
+        batch.done = new CountDownLatch(workers.length);
+        for (int s = 0; s < workers.length; s++) {
+            // at most IN_FLIGHT batches are queued, the queues never fill up.
+            workers[s].queue.add(batch.shards[s]);
+        }
+        dispatched++;
+        if (dispatched - written == IN_FLIGHT) {
+            writeOldest();
+        }
+        batches[(int) (dispatched % IN_FLIGHT)].clear();
+    }
+
+    /**
+     * Split a batch into the commands of every shard and number its searches.
+     */
+    private void partition(Batch batch) {
+        int[] commands = batch.commands;
+        ShardBatch[] shards = batch.shards;
+        for (int i = 0; i < batch.size * STRIDE; i += STRIDE) {
+            int op = commands[i];
+            int key = commands[i + 1];
+            switch (op) {
+                case OP_INITIALIZE -> {
+                    for (ShardBatch shard : shards) {
+                        shard.add(op, 0, 0);
+                    }
+                }
+                case OP_INSERT, OP_DELETE -> shards[shardOf(key)].add(op, key, 0);
+                case OP_SEARCH -> {
+                    int search = batch.searches++;
+                    batch.firstShard[search] = -1;
+                    batch.searchKeys[search] = key;
+                    shards[shardOf(key)].add(op, key, search);
+                }
+                default -> {
+                    int bigKey = commands[i + 2];
+                    int search = batch.searches++;
+                    // an empty range has no shard, its result is NULL.
+                    int first = key <= bigKey ? shardOf(key) : 0;
+                    int last = key <= bigKey ? shardOf(bigKey) : -1;
+                    batch.firstShard[search] = first;
+                    batch.lastShard[search] = last;
+                    for (int s = first; s <= last; s++) {
+                        shards[s].add(op, key, bigKey);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the oldest batch and write its results in command order.
+     */
+    private void writeOldest() throws IOException {
+        Batch batch = batches[(int) (written % IN_FLIGHT)];
+        try {
+            batch.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the shards.");
+        }
+        if (batch.failure != null) {
+            throw new IllegalStateException("shard failed: " + batch.failure, batch.failure);
+        }
+        for (int search = 0; search < batch.searches; search++) {
+            int first = batch.firstShard[search];
+            if (first < 0) {
+                if (batch.found[search]) {
+                    replayer.writeInt(batch.searchKeys[search]);
+                } else {
+                    replayer.writeNull();
+                }
+            } else {
+                boolean empty = true;
+                for (int s = first; s <= batch.lastShard[search]; s++) {
+                    ShardBatch shard = batch.shards[s];
+                    int start = shard.readOffset;
+                    int end = shard.segmentEnds[shard.readSegment++];
+                    shard.readOffset = end;
+                    if (end > start) {
+                        if (!empty) {
+                            replayer.writeByte(',');
+                        }
+                        replayer.write(shard.text, start, end - start);
+                        empty = false;
+                    }
+                }
+                if (empty) {
+                    replayer.writeNull();
+                }
+            }
+            replayer.writeByte('\n');
+        }
+        written++;
+    }
+
+    /**
+     * Boundaries splitting the keys of a batch into shards of equal size, or the int range if it has no key.
+     */
+    private static int[] quantiles(Batch batch, int shards) {
+        int[] keys = new int[batch.size * 2];
+        int count = 0;
+        for (int i = 0; i < batch.size * STRIDE; i += STRIDE) {
+            int op = batch.commands[i];
+            if (op != OP_INITIALIZE) {
+                keys[count++] = batch.commands[i + 1];
+                if (op == OP_SEARCH_RANGE) {
+                    keys[count++] = batch.commands[i + 2];
+                }
+            }
+        }
+        int[] bounds = new int[shards - 1];
+        if (count == 0) {
+            for (int s = 1; s < shards; s++) {
+                bounds[s - 1] = (int) (Integer.MIN_VALUE + ((1L << 32) * s) / shards);
+            }
+            return bounds;
+        }
+        Arrays.sort(keys, 0, count);
+        for (int s = 1; s < shards; s++) {
+            bounds[s - 1] = keys[(int) ((long) count * s / shards)];
+        }
+        return bounds;
+    }
+
+    /**
+     * Shard owning a key: the number of boundaries at or below it.
+     */
+    private int shardOf(int key) {
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Commands of a batch and the results shared by its shards. Every search writes its own slot of found, the
+     * latch publishes them to the replayer thread.
+     */
+    private static final class Batch {
+
+        private final int[] commands;
+        private int size;
+        private int ranges;
+        private final ShardBatch[] shards;
+        // point search: key and result, range search: shards it covers. firstShard is -1 for a point search.
+        private final int[] searchKeys;
+        private final boolean[] found;
+        private final int[] firstShard;
+        private final int[] lastShard;
+        private int searches;
+        private CountDownLatch done;
+        private volatile Throwable failure;
+
+        private Batch(int shards) {
+            this.commands = new int[BATCH_SIZE * STRIDE];
+            this.shards = new ShardBatch[shards];
+            for (int s = 0; s < shards; s++) {
+                this.shards[s] = new ShardBatch(this);
+            }
+            this.searchKeys = new int[BATCH_SIZE];
+            this.found = new boolean[BATCH_SIZE];
+            this.firstShard = new int[BATCH_SIZE];
+            this.lastShard = new int[BATCH_SIZE];
+        }
+
+        private void clear() {
+            size = 0;
+            ranges = 0;
+            searches = 0;
+            failure = null;
+            for (ShardBatch shard : shards) {
+                shard.clear();
+            }
+        }
+    }
+
+    /**
+     * Commands of one shard in a batch, and the text of its range search results: one segment per range search,
+     * the keys already formatted and comma separated.
+     */
+    private static final class ShardBatch {
+
+        private final Batch batch;
+        // op, key, then the upper bound of a range search or the number of a point search.
+        private int[] commands;
+        private int size;
+        private byte[] text;
+        private int textLength;
+        private int segmentStart;
+        private int[] segmentEnds;
+        private int segments;
+        // merge position of the replayer.
+        private int readSegment;
+        private int readOffset;
+
+        private ShardBatch(Batch batch) {
+            this.batch = batch;
+            this.commands = new int[1024 * STRIDE];
+            this.text = new byte[1024];
+            this.segmentEnds = new int[64];
+        }
+
+        private void add(int op, int key, int argument) {
+            if (size == commands.length) {
+                commands = Arrays.copyOf(commands, size * 2);
+            }
+            commands[size] = op;
+            commands[size + 1] = key;
+            commands[size + 2] = argument;
+            size += STRIDE;
+        }
+
+        private void appendKey(int key) {
+            if (textLength + MAX_INT_CHARS > text.length) {
+                text = Arrays.copyOf(text, text.length * 2);
+            }
+            if (textLength > segmentStart) {
+                text[textLength++] = ',';
+            }
+            textLength = CommandReplayer.formatInt(text, textLength, key);
+        }
+
+        private void endSegment() {
+            if (segments == segmentEnds.length) {
+                segmentEnds = Arrays.copyOf(segmentEnds, segments * 2);
+            }
+            segmentEnds[segments++] = textLength;
+            segmentStart = textLength;
+        }
+
+        private void clear() {
+            size = 0;
+            textLength = 0;
+            segmentStart = 0;
+            segments = 0;
+            readSegment = 0;
+            readOffset = 0;
+        }
+    }
+
+    /**
+     * Thread owning the tree of one shard.
+     */
+    private static final class Worker extends Thread {
+
+        private final BlockingQueue<ShardBatch> queue;
+        private AVLTree tree;
+
+        private Worker(int shard) {
+            super("shard-" + shard);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<>(IN_FLIGHT + 1);
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (ShardBatch work = queue.take(); work != STOP; work = queue.take()) {
+                    try {
+                        execute(work);
+                    } catch (Throwable e) {
+                        work.batch.failure = e;
+                    } finally {
+                        work.batch.done.countDown();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stop.
+            }
+        }
+
+        private void execute(ShardBatch work) {
+            int[] commands = work.commands;
+            boolean[] found = work.batch.found;
+            for (int i = 0; i < work.size; i += STRIDE) {
+                int key = commands[i + 1];
+                switch (commands[i]) {
+                    case OP_INITIALIZE -> tree = AVLTree.initialize();
+                    case OP_INSERT -> tree.insert(key);
+                    case OP_DELETE -> tree.delete(key);
+                    case OP_SEARCH -> found[commands[i + 2]] = tree.contains(key);
+                    default -> {
+                        tree.forEachInRange(key, commands[i + 2], work::appendKey);
+                        work.endSegment();
+                    }
+                }
+            }
+        }
+    }
+}
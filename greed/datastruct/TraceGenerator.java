@@ -0,0 +1,277 @@
+package greed.datastruct;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generator of command files in the format of {@link Main}: Initialize(), then Insert, Delete, Search and range Search
+ * commands whose keys follow a {@link Distribution}. The same options and seed always give the same file, byte for
+ * byte, so a trace can be regenerated instead of stored. {@link TraceHarness} replays the traces end to end.
+ */
+public final class TraceGenerator {
+
+    /**
+     * How the keys of the commands are drawn from the key space 0 .. keys - 1.
+     */
+    public enum Distribution {
+        /**
+         * Every key equally likely.
+         */
+        UNIFORM,
+        /**
+         * Time series: inserts append ascending keys, deletes remove the oldest key, searches hit the live window.
+         */
+        SEQUENTIAL,
+        /**
+         * Zipf skewed keys, the hottest keys being scattered over the key space.
+         */
+        ZIPF,
+        /**
+         * Keys gathered in normally distributed clusters around a few random centres.
+         */
+        CLUSTERED
+    }
+
+    private static final int INSERT = 0;
+    private static final int DELETE = 1;
+    private static final int SEARCH = 2;
+    private static final int SEARCH_RANGE = 3;
+
+    private int commands = 1_000_000;
+    private int keys = 1_000_000;
+    private Distribution distribution = Distribution.UNIFORM;
+    // percentages of inserts, deletes, searches and range searches.
+    private int[] mix = {40, 20, 30, 10};
+    private int rangeWidth = 100;
+    private double zipfExponent = 0.99;
+    private int clusters = 16;
+    private int preload;
+    private long seed = 1;
+
+    /**
+     * private constructor, {@link #of(String...)} is to configure a generator.
+     */
+    private TraceGenerator() {
+    }
+
+    /**
+     * Configure a generator from command line options, any option left out keeps its default.
+     * @param options "--commands=N" commands after Initialize and the preload (1000000), "--keys=N" key space
+     * (1000000), "--distribution=UNIFORM|SEQUENTIAL|ZIPF|CLUSTERED" (UNIFORM), "--mix=I,D,S,R" percentages of inserts,
+     * deletes, searches and range searches (40,20,30,10), "--range-width=N" greatest bigKey - smallKey of a range
+     * search (100), "--zipf=X" Zipf exponent (0.99), "--clusters=N" cluster count (16), "--preload=N" distinct keys
+     * inserted before the mix (0), "--seed=N" (1).
+     * @return configured generator.
+     * @throws IllegalArgumentException if an option is unknown or out of range.
+     */
+    public static TraceGenerator of(String... options) {
+        TraceGenerator generator = new TraceGenerator();
+        for (String option : options) {
+            String value = option.substring(option.indexOf('=') + 1);
+            if (option.startsWith("--commands=")) {
+                generator.commands = Integer.parseInt(value);
+            } else if (option.startsWith("--keys=")) {
+                generator.keys = Integer.parseInt(value);
+            } else if (option.startsWith("--distribution=")) {
+                generator.distribution = Distribution.valueOf(value.toUpperCase(Locale.ROOT));
+            } else if (option.startsWith("--mix=")) {
+                generator.mix = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (option.startsWith("--range-width=")) {
+                generator.rangeWidth = Integer.parseInt(value);
+            } else if (option.startsWith("--zipf=")) {
+                generator.zipfExponent = Double.parseDouble(value);
+            } else if (option.startsWith("--clusters=")) {
+                generator.clusters = Integer.parseInt(value);
+            } else if (option.startsWith("--preload=")) {
+                generator.preload = Integer.parseInt(value);
+            } else if (option.startsWith("--seed=")) {
+                generator.seed = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("unknown argument " + option);
+            }
+        }
+        if (generator.commands < 0 || generator.keys < 1 || generator.rangeWidth < 0 || generator.clusters < 1
+                || generator.preload < 0 || generator.preload > generator.keys) {
+            throw new IllegalArgumentException("commands, range width and preload must not be negative, keys and "
+                    + "clusters must be positive and preload at most keys.");
+        }
+        if (generator.mix.length != 4 || Arrays.stream(generator.mix).anyMatch(percent -> percent < 0)
+                || Arrays.stream(generator.mix).sum() != 100) {
+            throw new IllegalArgumentException("mix must be four percentages summing to 100.");
+        }
+        return generator;
+    }
+
+    /**
+     * Generate a trace file.
+     * @param args "--output=PATH" (trace.txt) and the options of {@link #of(String...)}.
+     */
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of("trace.txt");
+        String[] options = new String[args.length];
+        int count = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--output=")) {
+                output = Path.of(arg.substring("--output=".length()));
+            } else {
+                options[count++] = arg;
+            }
+        }
+        TraceGenerator generator = of(Arrays.copyOf(options, count));
+        generator.write(output);
+        System.out.println(generator.getLines() + " lines written to " + output);
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    /**
+     * Number of lines of the trace.
+     * @return Initialize, the preload and the commands.
+     */
+    public long getLines() {
+        return 1L + preload + commands;
+    }
+
+    /**
+     * Short name of the trace, different for every set of options, usable as a file name.
+     * @return distribution, command count and a hash of all the options, eg -: zipf-1000000-3a5f09c2.
+     */
+    public String getName() {
+        return distribution.name().toLowerCase(Locale.ROOT) + "-" + commands + "-"
+                + String.format("%08x", toString().hashCode());
+    }
+
+    /**
+     * Write the trace.
+     * @param output file to be written, replaced if it exists.
+     * @throws IOException if the file cannot be written.
+     */
+    public void write(Path output) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(output), StandardCharsets.US_ASCII), 1 << 16)) {
+            Keys source = new Keys();
+            writer.write("Initialize()\n");
+            for (int key : source.preload()) {
+                writeCommand(writer, "Insert(", key);
+            }
+            for (int i = 0; i < commands; i++) {
+                int op = source.op();
+                int key = source.key(op);
+                switch (op) {
+                    case INSERT -> writeCommand(writer, "Insert(", key);
+                    case DELETE -> writeCommand(writer, "Delete(", key);
+                    case SEARCH -> writeCommand(writer, "Search(", key);
+                    default -> {
+                        writer.write("Search(");
+                        writer.write(Integer.toString(key));
+                        writer.write(',');
+                        writer.write(Long.toString(Math.min(Integer.MAX_VALUE,
+                                (long) key + source.random.nextInt(rangeWidth + 1))));
+                        writer.write(")\n");
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeCommand(BufferedWriter writer, String command, int key) throws IOException {
+        writer.write(command);
+        writer.write(Integer.toString(key));
+        writer.write(")\n");
+    }
+
+    /**
+     * Options in canonical form, as they would be given to {@link #of(String...)}.
+     * @return every option, defaults included.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "--commands=%d --keys=%d --distribution=%s --mix=%d,%d,%d,%d --range-width=%d --zipf=%s --clusters=%d"
+                        + " --preload=%d --seed=%d", commands, keys, distribution, mix[0], mix[1], mix[2], mix[3],
+                rangeWidth, zipfExponent, clusters, preload, seed);
+    }
+
+    /**
+     * Random state of one generation, so that every write of the same generator gives the same trace.
+     */
+    private final class Keys {
+
+        private final Random random = new Random(seed);
+        private final ZipfSampler zipf = distribution == Distribution.ZIPF ? new ZipfSampler(keys, zipfExponent) : null;
+        private final int[] centres = new int[distribution == Distribution.CLUSTERED ? clusters : 0];
+        private final double spread = Math.max(1.0, keys / (clusters * 64.0));
+        // SEQUENTIAL: next key to append and oldest live key, as counts of keys ever inserted and deleted.
+        private long head;
+        private long tail;
+
+        private Keys() {
+            for (int i = 0; i < centres.length; i++) {
+                centres[i] = random.nextInt(keys);
+            }
+        }
+
+        /**
+         * Distinct keys inserted before the mix: ascending for SEQUENTIAL, evenly spread and shuffled otherwise.
+         */
+        private int[] preload() {
+            int[] loaded = new int[preload];
+            for (int i = 0; i < preload; i++) {
+                loaded[i] = distribution == Distribution.SEQUENTIAL ? i : (int) ((long) i * keys / preload);
+            }
+            if (distribution == Distribution.SEQUENTIAL) {
+                head = preload;
+                return loaded;
+            }
+            for (int i = preload - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = loaded[i];
+                loaded[i] = loaded[j];
+                loaded[j] = tmp;
+            }
+            return loaded;
+        }
+
+        private int op() {
+            int percent = random.nextInt(100);
+            int op = 0;
+            while (percent >= mix[op]) {
+                percent -= mix[op++];
+            }
+            return op;
+        }
+
+        private int key(int op) {
+            return switch (distribution) {
+                case UNIFORM -> random.nextInt(keys);
+                case SEQUENTIAL -> sequential(op);
+                // multiplicative hashing scatters the ranks, the most frequent keys are not neighbours.
+                case ZIPF -> (int) Long.remainderUnsigned((zipf.sample(random) - 1) * 0x9E3779B97F4A7C15L, keys);
+                case CLUSTERED -> (int) Math.floorMod(
+                        centres[random.nextInt(centres.length)] + Math.round(random.nextGaussian() * spread), (long) keys);
+            };
+        }
+
+        private int sequential(int op) {
+            long counter;
+            if (op == INSERT) {
+                counter = head++;
+            } else if (op == DELETE) {
+                // nothing live: delete the next key, a miss.
+                counter = tail < head ? tail++ : head;
+            } else {
+                counter = tail + (head > tail ? (long) (random.nextDouble() * (head - tail)) : 0);
+            }
+            return (int) (counter % keys);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package greed.datastruct;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * End to end benchmark of {@link Main}: generates traces with {@link TraceGenerator}, replays each one several times,
+ * every run in a fresh JVM, and appends one JSON line per run to a results file: wall time, throughput, peak RSS, peak
+ * heap, GC pauses and a CRC of output.txt. Given the results of another version it compares the median throughput of
+ * every trace and fails on a regression or on a different output.
+ * <p>
+ * Throughput is measured around Main.main inside the child JVM, file reading and writing included, JVM start-up
+ * excluded; the wall time of the whole child process is recorded next to it. GC pauses are the collections of the
+ * stop-the-world collector beans, concurrent cycles are left out. The longest pause is best-effort: it comes from the
+ * GC notifications, delivered asynchronously and waited for at most {@link #GC_DRAIN_MILLIS} ms, and from the last
+ * collection of every collector, so a long pause whose notification is still on the way after the wait is missed
+ * unless it was the last one of its collector. Peak RSS is VmHWM of /proc/self/status, -1 where there is none.
+ */
+public final class TraceHarness {
+
+    /**
+     * Longest wait of the child JVM for the GC notifications of the collections of the run.
+     */
+    private static final long GC_DRAIN_MILLIS = 200;
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\":(?:\"([^\"]*)\"|([^,}]*))");
+
+    private TraceHarness() {
+    }
+
+    /**
+     * Run the benchmark.
+     * @param args "--distributions=A,B" traces to run (UNIFORM,SEQUENTIAL,ZIPF,CLUSTERED), "--runs=N" runs per trace
+     * (3), "--shards=N" passed to Main (1), "--jvm-args=ARGS" options of the child JVMs separated by spaces,
+     * "--dir=PATH" where the traces are kept and reused (traces), "--results=PATH" results appended to (results.jsonl),
+     * "--label=NAME" version recorded with every run, eg -: a commit id (current), without quotes, backslashes or
+     * control characters, "--baseline=PATH" results of a previous version to compare with, "--tolerance=N" throughput
+     * loss in percent tolerated by the comparison (10).
+     * Any other option is passed to {@link TraceGenerator#of(String...)}, eg -: --commands=5000000 --mix=10,10,70,10.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--child")) {
+            child(Path.of(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        List<TraceGenerator.Distribution> distributions = Arrays.asList(TraceGenerator.Distribution.values());
+        int runs = 3;
+        int shards = 1;
+        List<String> jvmArgs = List.of();
+        Path directory = Path.of("traces");
+        Path results = Path.of("results.jsonl");
+        String label = "current";
+        Path baseline = null;
+        double tolerance = 10;
+        List<String> options = new ArrayList<>();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--distributions=")) {
+                distributions = Arrays.stream(value.split(","))
+                        .map(name -> TraceGenerator.Distribution.valueOf(name.toUpperCase(Locale.ROOT))).toList();
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(value);
+            } else if (arg.startsWith("--shards=")) {
+                shards = Integer.parseInt(value);
+            } else if (arg.startsWith("--jvm-args=")) {
+                jvmArgs = value.isBlank() ? List.of() : Arrays.asList(value.trim().split("\\s+"));
+            } else if (arg.startsWith("--dir=")) {
+                directory = Path.of(value);
+            } else if (arg.startsWith("--results=")) {
+                results = Path.of(value);
+            } else if (arg.startsWith("--label=")) {
+                // the label is written into the JSON records as is, and parse reads no escapes.
+                if (value.chars().anyMatch(c -> c == '"' || c == '\\' || c < ' ')) {
+                    throw new IllegalArgumentException("label must not contain quotes, backslashes or control "
+                            + "characters.");
+                }
+                label = value;
+            } else if (arg.startsWith("--baseline=")) {
+                baseline = Path.of(value);
+            } else if (arg.startsWith("--tolerance=")) {
+                tolerance = Double.parseDouble(value);
+            } else {
+                options.add(arg);
+            }
+        }
+        Files.createDirectories(directory);
+        List<Map<String, String>> records = new ArrayList<>();
+        for (TraceGenerator.Distribution distribution : distributions) {
+            List<String> traceOptions = new ArrayList<>(options);
+            traceOptions.add("--distribution=" + distribution);
+            TraceGenerator generator = TraceGenerator.of(traceOptions.toArray(new String[0]));
+            Path trace = directory.resolve(generator.getName() + ".txt");
+            if (!Files.exists(trace)) {
+                generator.write(trace);
+            }
+            List<Map<String, String>> traceRecords = new ArrayList<>();
+            for (int run = 0; run < runs; run++) {
+                String record = run(trace, generator, shards, jvmArgs, label, run);
+                Files.writeString(results, record + "\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                traceRecords.add(parse(record));
+            }
+            records.addAll(traceRecords);
+            System.out.printf(Locale.ROOT, "%-32s %12.0f commands/s  wall %8.3f s  rss %7d kB  gc %4d pauses %7.1f ms"
+                            + " (max %.1f ms)%n", generator.getName(), median(traceRecords, "commandsPerSecond"),
+                    median(traceRecords, "wallNanos") / 1e9, (long) max(traceRecords, "peakRssKb"),
+                    (long) median(traceRecords, "gcCount"), median(traceRecords, "gcPauseMillis"),
+                    max(traceRecords, "gcMaxPauseMillis"));
+        }
+        if (baseline != null && !compare(records, baseline, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One run of Main on a trace in a child JVM, in a temporary directory for its output.txt.
+     * @return JSON line of the run.
+     */
+    private static String run(Path trace, TraceGenerator generator, int shards, List<String> jvmArgs, String label,
+                              int run) throws IOException, InterruptedException {
+        Path workDirectory = Files.createTempDirectory("trace-harness");
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        // the child runs elsewhere, relative class path entries must be resolved here.
+        String classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+                .map(entry -> Path.of(entry).toAbsolutePath().toString()).collect(Collectors.joining(File.pathSeparator));
+        command.addAll(List.of("-cp", classPath, TraceHarness.class.getName(), "--child",
+                trace.toAbsolutePath().toString(), Integer.toString(shards)));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).directory(workDirectory.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String childResult;
+        try (InputStream output = process.getInputStream()) {
+            childResult = new String(output.readAllBytes(), StandardCharsets.US_ASCII).trim();
+        }
+        int exit = process.waitFor();
+        long wallNanos = System.nanoTime() - start;
+        Files.deleteIfExists(workDirectory.resolve("output.txt"));
+        Files.deleteIfExists(workDirectory);
+        if (exit != 0 || !childResult.startsWith("{")) {
+            throw new IllegalStateException("run " + run + " of " + trace + " failed with exit code " + exit + ".");
+        }
+        long mainNanos = Long.parseLong(parse(childResult).get("mainNanos"));
+        return String.format(Locale.ROOT, "{\"label\":\"%s\",\"trace\":\"%s\",\"generator\":\"%s\",\"shards\":%d,"
+                        + "\"run\":%d,\"java\":\"%s\",\"lines\":%d,\"wallNanos\":%d,\"commandsPerSecond\":%.1f,%s",
+                label, generator.getName(), generator, shards, run, System.getProperty("java.version"),
+                generator.getLines(), wallNanos, generator.getLines() * 1e9 / mainNanos, childResult.substring(1));
+    }
+
+    /**
+     * Body of the child JVM: run Main on the trace, then print the measurements as a JSON object.
+     */
+    private static void child(Path trace, int shards) throws IOException {
+        AtomicLong maxPauseMillis = new AtomicLong();
+        AtomicLong notified = new AtomicLong();
+        long gcCountBefore = 0;
+        List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // ZGC and Shenandoah also report their concurrent cycles, G1 on Java 20+ its concurrent phases.
+            if (collector.getName().contains("Cycles") || collector.getName().contains("Concurrent")) {
+                continue;
+            }
+            collectors.add(collector);
+            gcCountBefore += Math.max(0, collector.getCollectionCount());
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                    long duration = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                            .getGcInfo().getDuration();
+                    maxPauseMillis.accumulateAndGet(duration, Math::max);
+                    notified.incrementAndGet();
+                }
+            }, null, null);
+        }
+        long start = System.nanoTime();
+        Main.main(new String[]{trace.toString(), "--shards=" + shards});
+        long mainNanos = System.nanoTime() - start;
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        // notifications come from a service thread, give the last ones a moment to arrive.
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GC_DRAIN_MILLIS);
+        while (notified.get() < gcCount - gcCountBefore && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        long maxPause = maxPauseMillis.get();
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof com.sun.management.GarbageCollectorMXBean hotspotCollector) {
+                GcInfo last = hotspotCollector.getLastGcInfo();
+                if (last != null) {
+                    maxPause = Math.max(maxPause, last.getDuration());
+                }
+            }
+        }
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        Path output = Path.of("output.txt");
+        if (!Files.exists(output)) {
+            throw new IllegalStateException("Main wrote no output.txt.");
+        }
+        System.out.printf("{\"mainNanos\":%d,\"peakRssKb\":%d,\"peakHeapBytes\":%d,\"gcCount\":%d,\"gcPauseMillis\":%d,"
+                        + "\"gcMaxPauseMillis\":%d,\"outputBytes\":%d,\"outputCrc\":\"%08x\"}%n", mainNanos, peakRss(),
+                peakHeap, gcCount, gcMillis, maxPause, Files.size(output), crc(output));
+    }
+
+    /**
+     * Peak resident set size of this process.
+     * @return VmHWM in kB, -1 if /proc/self/status is not there.
+     */
+    private static long peakRss() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) {
+            return -1;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }
+        return -1;
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Compare the runs with the baseline runs of the same trace and shard count: the median throughput must not drop
+     * by more than the tolerance and output.txt must be the same.
+     * @return true if nothing regressed.
+     */
+    private static boolean compare(List<Map<String, String>> records, Path baseline, double tolerance)
+            throws IOException {
+        Map<String, List<Map<String, String>>> current = group(records);
+        List<Map<String, String>> baselineRecords = new ArrayList<>();
+        for (String line : Files.readAllLines(baseline)) {
+            if (!line.isBlank()) {
+                baselineRecords.add(parse(line));
+            }
+        }
+        Map<String, List<Map<String, String>>> previous = group(baselineRecords);
+        boolean passed = true;
+        for (Map.Entry<String, List<Map<String, String>>> entry : current.entrySet()) {
+            List<Map<String, String>> before = previous.get(entry.getKey());
+            if (before == null) {
+                System.out.println(entry.getKey() + ": not in the baseline");
+                continue;
+            }
+            double now = median(entry.getValue(), "commandsPerSecond");
+            double then = median(before, "commandsPerSecond");
+            double change = (now / then - 1) * 100;
+            boolean sameOutput = entry.getValue().get(0).get("outputCrc").equals(before.get(0).get("outputCrc"));
+            boolean regressed = change < -tolerance;
+            System.out.printf(Locale.ROOT, "%s: %+.1f%% commands/s (%s %.0f, %s %.0f)%s%s%n", entry.getKey(), change,
+                    before.get(0).get("label"), then, entry.getValue().get(0).get("label"), now,
+                    regressed ? " REGRESSION" : "", sameOutput ? "" : " OUTPUT DIFFERS");
+            passed &= !regressed && sameOutput;
+        }
+        return passed;
+    }
+
+    private static Map<String, List<Map<String, String>>> group(List<Map<String, String>> records) {
+        Map<String, List<Map<String, String>>> groups = new LinkedHashMap<>();
+        for (Map<String, String> record : records) {
+            groups.computeIfAbsent(record.get("trace") + " shards=" + record.get("shards"), key -> new ArrayList<>())
+                    .add(record);
+        }
+        return groups;
+    }
+
+    /**
+     * Fields of a flat JSON object as written by this class, no nesting and no escaped quotes.
+     */
+    private static Map<String, String> parse(String json) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        Matcher matcher = FIELD.matcher(json);
+        while (matcher.find()) {
+            fields.put(matcher.group(1), matcher.group(2) != null ? matcher.group(2) : matcher.group(3));
+        }
+        return fields;
+    }
+
+    private static double median(List<Map<String, String>> records, String field) {
+        double[] values = records.stream().mapToDouble(record -> Double.parseDouble(record.get(field))).sorted().toArray();
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static double max(List<Map<String, String>> records, String field) {
+        return records.stream().mapToDouble(record -> Double.parseDouble(record.get(field))).max().orElse(0);
+    }
+}
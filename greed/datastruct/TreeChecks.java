@@ -0,0 +1,1353 @@
+package greed.datastruct;
+
+import greed.datastruct.common.Node;
+import greed.datastruct.common.TreeCursor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Randomized differential checks of the trees against the collections of java.util, in the spirit of
+ * {@link Main#testAVLTree()} but self-verifying: every check replays seeded random operations on a tree and on its
+ * reference and throws an {@link IllegalStateException} at the first difference. The seeds are fixed, so a failure
+ * reproduces. Not called by the main program, run them with {@code java greed.datastruct.TreeChecks}.
+ */
+public final class TreeChecks {
+
+    /**
+     * private constructor, the checks are static.
+     */
+    private TreeChecks() {
+    }
+
+    /**
+     * Run every check and print one line per check.
+     * @param args not used.
+     * @throws IOException if a temporary file of a check cannot be written.
+     */
+    public static void main(String[] args) throws IOException {
+        checkMaps();
+        System.out.println("maps OK");
+        checkSetOperations();
+        System.out.println("split, join and set operations OK");
+        checkPersistentVersions();
+        System.out.println("persistent versions OK");
+        checkRendering();
+        System.out.println("rendering OK");
+        checkPipedSerialization();
+        System.out.println("serialization over a pipe OK");
+        checkShardedReplay();
+        System.out.println("sharded replay OK");
+        checkDurableRecovery();
+        System.out.println("durable recovery OK");
+        checkMappedRecovery();
+        System.out.println("mapped recovery OK");
+        checkWeakBalancing();
+        System.out.println("WAVL OK");
+        checkBPlusTree();
+        System.out.println("B+-tree OK");
+        checkArrayTree();
+        System.out.println("array AVL tree OK");
+        checkMultiset();
+        System.out.println("multiset OK");
+        checkAggregates();
+        System.out.println("aggregates OK");
+        checkCursor();
+        System.out.println("cursor OK");
+        checkOrderStatistics();
+        System.out.println("order statistics OK");
+        checkBatchListener();
+        System.out.println("batch listener OK");
+    }
+
+    /**
+     * {@link AVLMap} with String keys in natural and reversed order and {@link LongAVLMap} with keys beyond the int
+     * range against {@link TreeMap}: put, remove, get, containsKey, range walks, first and last keys, head, tail and
+     * sub map views (nested too), iteration with removes through the iterators, and fail-fast iterators.
+     */
+    public static void checkMaps() {
+        for (int seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            boolean reversed = seed % 2 == 1;
+            Comparator<String> order = reversed ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            AVLMap<String, Integer> map = AVLMap.initialize(order);
+            TreeMap<String, Integer> reference = new TreeMap<>(order);
+            LongAVLMap<Integer> longMap = LongAVLMap.initialize();
+            TreeMap<Long, Integer> longReference = new TreeMap<>();
+            int range = 10 + random.nextInt(2000);
+            for (int i = 0; i < 3000; i++) {
+                int k = random.nextInt(range);
+                String key = "k" + k;
+                // spread over the whole long range, far beyond the ints.
+                long longKey = (k - range / 2) * 3_000_000_000L;
+                int value = random.nextInt();
+                int op = random.nextInt(12);
+                if (op < 4) {
+                    check(Objects.equals(map.put(key, value), reference.put(key, value)), "AVLMap.put", seed);
+                    check(Objects.equals(longMap.put(longKey, value), longReference.put(longKey, value)),
+                            "LongAVLMap.put", seed);
+                } else if (op < 7) {
+                    check(Objects.equals(map.remove(key), reference.remove(key)), "AVLMap.remove", seed);
+                    check(Objects.equals(longMap.remove(longKey), longReference.remove(longKey)), "LongAVLMap.remove",
+                            seed);
+                } else if (op < 9) {
+                    check(Objects.equals(map.get(key), reference.get(key))
+                            && map.containsKey(key) == reference.containsKey(key), "AVLMap.get", seed);
+                    check(Objects.equals(longMap.get(longKey), longReference.get(longKey))
+                            && longMap.containsKey(longKey) == longReference.containsKey(longKey),
+                            "LongAVLMap.get", seed);
+                } else if (op == 10) {
+                    String other = "k" + random.nextInt(range);
+                    String fromKey = order.compare(key, other) <= 0 ? key : other;
+                    String toKey = order.compare(key, other) <= 0 ? other : key;
+                    int kind = random.nextInt(4);
+                    SortedMap<String, Integer> view = kind == 0 ? map : kind == 1 ? map.headMap(toKey)
+                            : kind == 2 ? map.tailMap(fromKey) : map.subMap(fromKey, toKey);
+                    SortedMap<String, Integer> expectedView = kind == 0 ? reference
+                            : kind == 1 ? reference.headMap(toKey)
+                            : kind == 2 ? reference.tailMap(fromKey) : reference.subMap(fromKey, toKey);
+                    checkView(view, expectedView, "AVLMap view " + kind, seed);
+                    if (!expectedView.isEmpty()) {
+                        String first = expectedView.firstKey();
+                        String last = expectedView.lastKey();
+                        checkView(view.subMap(first, last), expectedView.subMap(first, last), "AVLMap nested view",
+                                seed);
+                        checkView(view.tailMap(last), expectedView.tailMap(last), "AVLMap nested tail", seed);
+                        check(Objects.equals(view.put(last, value), expectedView.put(last, value)), "AVLMap view put",
+                                seed);
+                    }
+                    if (kind == 1 || kind == 3) {
+                        try {
+                            view.put(toKey, value);
+                            throw new IllegalStateException("AVLMap view accepted a key past its range, seed " + seed
+                                    + ".");
+                        } catch (IllegalArgumentException expected) {
+                            // the upper bound is not in the view.
+                        }
+                    }
+
+                    check(longReference.isEmpty() || longMap.firstKey() == longReference.firstKey()
+                            && longMap.lastKey() == longReference.lastKey(), "LongAVLMap first and last keys", seed);
+                } else if (op == 11) {
+                    // walk part of a view, removing some of the keys through the iterator.
+                    boolean tail = random.nextBoolean();
+                    Iterator<Map.Entry<String, Integer>> entries =
+                            (tail ? map.tailMap(key) : map).entrySet().iterator();
+                    Iterator<Map.Entry<String, Integer>> expectedEntries =
+                            (tail ? reference.tailMap(key) : reference).entrySet().iterator();
+                    int removeEvery = 1 + random.nextInt(3);
+                    int steps = random.nextInt(100);
+                    for (int step = 0; step < steps && expectedEntries.hasNext(); step++) {
+                        check(entries.hasNext() && entries.next().equals(expectedEntries.next()), "AVLMap iterator",
+                                seed);
+                        if (step % removeEvery == 0) {
+                            entries.remove();
+                            expectedEntries.remove();
+                        }
+                    }
+                    check(entries.hasNext() == expectedEntries.hasNext(), "AVLMap iterator end", seed);
+
+                    long bigLongKey = longKey + random.nextInt(100) * 3_000_000_000L;
+                    PrimitiveIterator.OfLong keys = longMap.keyIterator(longKey, bigLongKey);
+                    Iterator<Long> expectedKeys =
+                            longReference.subMap(longKey, true, bigLongKey, false).keySet().iterator();
+                    while (expectedKeys.hasNext()) {
+                        check(keys.hasNext() && keys.nextLong() == expectedKeys.next(), "LongAVLMap iterator", seed);
+                        if (random.nextInt(removeEvery) == 0) {
+                            keys.remove();
+                            expectedKeys.remove();
+                        }
+                    }
+                    check(!keys.hasNext(), "LongAVLMap iterator end", seed);
+                } else {
+                    String other = "k" + (k + random.nextInt(50));
+                    String smallKey = order.compare(key, other) <= 0 ? key : other;
+                    String bigKey = order.compare(key, other) <= 0 ? other : key;
+                    List<String> visited = new ArrayList<>();
+                    map.forEachInRange(smallKey, bigKey,
+                            (entryKey, entryValue) -> visited.add(entryKey + "=" + entryValue));
+                    List<String> expected = new ArrayList<>();
+                    reference.subMap(smallKey, true, bigKey, true)
+                            .forEach((entryKey, entryValue) -> expected.add(entryKey + "=" + entryValue));
+                    check(visited.equals(expected), "AVLMap.forEachInRange", seed);
+
+                    long bigLongKey = longKey + random.nextInt(50) * 3_000_000_000L;
+                    List<Long> visitedLongs = new ArrayList<>();
+                    longMap.forEachInRange(longKey, bigLongKey, (entryKey, entryValue) -> visitedLongs.add(entryKey));
+                    check(visitedLongs.equals(new ArrayList<>(longReference.subMap(longKey, true, bigLongKey, true)
+                            .keySet())), "LongAVLMap.forEachInRange", seed);
+                }
+                check(map.size() == reference.size() && longMap.size() == longReference.size(), "size", seed);
+            }
+            check(map.equals(reference) && new ArrayList<>(map.entrySet()).equals(new ArrayList<>(reference.entrySet()))
+                    && map.toString().equals(reference.toString()), "AVLMap iteration", seed);
+        }
+
+        AVLMap<Integer, String> map = AVLMap.initialize();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "");
+        }
+        try {
+            for (Integer key : map.keySet()) {
+                map.put(-key - 1, "");
+            }
+            throw new IllegalStateException("AVLMap iterator did not fail fast on a put.");
+        } catch (ConcurrentModificationException expected) {
+            // fail fast.
+        }
+
+        // every other key removed through the iterators, then the remaining ones.
+        AVLMap<Integer, String> odd = AVLMap.initialize();
+        LongAVLMap<String> longOdd = LongAVLMap.initialize();
+        for (int i = 0; i < 1000; i++) {
+            odd.put(i, "");
+            longOdd.put(i, "");
+        }
+        odd.keySet().removeIf(key -> key % 2 == 0);
+        for (PrimitiveIterator.OfLong keys = longOdd.keyIterator(); keys.hasNext(); ) {
+            if (keys.nextLong() % 2 == 0) {
+                keys.remove();
+            }
+        }
+        List<Integer> longKeys = new ArrayList<>();
+        longOdd.forEachInRange(Long.MIN_VALUE, Long.MAX_VALUE, (key, value) -> longKeys.add((int) key));
+        check(new ArrayList<>(odd.keySet()).equals(longKeys) && longKeys.size() == 500 && longKeys.get(0) == 1,
+                "removes through the iterators", 0);
+        for (Iterator<Integer> keys = odd.keySet().iterator(); keys.hasNext(); ) {
+            keys.next();
+            keys.remove();
+        }
+        check(odd.isEmpty(), "removing every key through the iterator", 0);
+        Iterator<Integer> keys = map.keySet().iterator();
+        try {
+            keys.remove();
+            throw new IllegalStateException("AVLMap iterator removed before next().");
+        } catch (IllegalStateException expected) {
+            // nothing returned yet.
+        }
+        keys.next();
+        keys.remove();
+        map.remove(map.lastKey());
+        try {
+            keys.next();
+            throw new IllegalStateException("AVLMap iterator did not fail fast after its own remove and a remove.");
+        } catch (ConcurrentModificationException expected) {
+            // fail fast.
+        }
+    }
+
+    /**
+     * A sorted map view against the same view of {@link TreeMap}: entries in order, size, first and last keys.
+     */
+    private static <K> void checkView(SortedMap<K, Integer> view, SortedMap<K, Integer> expected, String what,
+                                      int seed) {
+        check(view.size() == expected.size() && view.isEmpty() == expected.isEmpty()
+                && new ArrayList<>(view.entrySet()).equals(new ArrayList<>(expected.entrySet())), what, seed);
+        if (expected.isEmpty()) {
+            try {
+                view.firstKey();
+                throw new IllegalStateException(what + " has a first key but is empty, seed " + seed + ".");
+            } catch (NoSuchElementException e) {
+                // empty view.
+            }
+        } else {
+            check(view.firstKey().equals(expected.firstKey()) && view.lastKey().equals(expected.lastKey())
+                    && view.containsKey(expected.lastKey()), what + " first and last keys", seed);
+        }
+    }
+
+    /**
+     * {@link AVLTree#split(int)}, {@link AVLTree#join(AVLTree, int, AVLTree)}, union, intersection and difference
+     * against {@link TreeSet}, on the common pool and on a pool of 4 threads, inputs built by bulk load or by inserts.
+     * Every result must hold the AVL invariants and the inputs must be left empty.
+     */
+    public static void checkSetOperations() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int seed = 0; seed < 200; seed++) {
+                Random random = new Random(seed);
+                // the last seeds are past the sequential cutoff, their set operations fork.
+                boolean large = seed >= 190;
+                int range = 10 + random.nextInt(large ? 200_000 : 3000);
+                TreeSet<Integer> first = randomSet(random, random.nextInt(large ? 100_000 : 2000), range);
+                TreeSet<Integer> second = randomSet(random, random.nextInt(large ? 50_000 : 2000), range);
+                for (int op = 0; op < 3; op++) {
+                    AVLTree firstTree = build(random, first);
+                    AVLTree secondTree = build(random, second);
+                    TreeSet<Integer> expected = new TreeSet<>(first);
+                    AVLTree result;
+                    if (op == 0) {
+                        expected.addAll(second);
+                        result = seed % 2 == 0 ? AVLTree.union(firstTree, secondTree)
+                                : AVLTree.union(firstTree, secondTree, pool);
+                    } else if (op == 1) {
+                        expected.retainAll(second);
+                        result = AVLTree.intersection(firstTree, secondTree, pool);
+                    } else {
+                        expected.removeAll(second);
+                        result = AVLTree.difference(firstTree, secondTree);
+                    }
+                    checkKeys(result, expected, "set operation " + op, seed);
+                    check(firstTree.size() == 0 && secondTree.size() == 0, "inputs consumed", seed);
+                }
+
+                AVLTree head = build(random, first);
+                int key = random.nextInt(range) - range / 2;
+                AVLTree tail = head.split(key);
+                checkKeys(head, first.headSet(key, false), "split head", seed);
+                checkKeys(tail, first.tailSet(key, true), "split tail", seed);
+                if (!first.contains(key)) {
+                    TreeSet<Integer> expected = new TreeSet<>(first);
+                    expected.add(key);
+                    checkKeys(AVLTree.join(head, key, tail), expected, "join", seed);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        try {
+            AVLTree.join(AVLTree.fromSorted(new int[]{1, 2}), 2, AVLTree.fromSorted(new int[]{3}));
+            throw new IllegalStateException("join accepted a key that is not between the trees.");
+        } catch (IllegalArgumentException expected) {
+            // keys out of order are rejected.
+        }
+        AVLTree tree = AVLTree.fromSorted(new int[]{1, 2, 3});
+        check(AVLTree.union(tree, tree).size() == 3, "union of a tree with itself", 0);
+    }
+
+    /**
+     * {@link VersionedAVLTree} against {@link TreeSet}: every snapshot taken along the way must keep its keys while
+     * the tree moves on, and every version must hold the AVL invariants.
+     */
+    public static void checkPersistentVersions() {
+        for (int seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            VersionedAVLTree tree = VersionedAVLTree.initialize();
+            TreeSet<Integer> reference = new TreeSet<>();
+            List<PersistentAVLTree> snapshots = new ArrayList<>();
+            List<List<Integer>> expected = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                int key = random.nextInt(500);
+                if (random.nextBoolean()) {
+                    check(tree.insert(key) == reference.add(key), "insert", seed);
+                } else {
+                    check(tree.delete(key) == reference.remove(key), "delete", seed);
+                }
+                check(tree.size() == reference.size(), "size", seed);
+                if (i % 100 == 0) {
+                    PersistentAVLTree snapshot = tree.snapshot();
+                    snapshot.checkInvariants();
+                    snapshots.add(snapshot);
+                    expected.add(new ArrayList<>(reference));
+                }
+            }
+            for (int i = 0; i < snapshots.size(); i++) {
+                check(snapshots.get(i).searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(expected.get(i))
+                        && snapshots.get(i).size() == expected.get(i).size(), "snapshot " + i + " unchanged", seed);
+            }
+        }
+        PersistentAVLTree version = PersistentAVLTree.empty();
+        for (int i = 0; i < 1 << 16; i++) {
+            version = version.insert(i);
+        }
+        version.checkInvariants();
+    }
+
+    /**
+     * The iterative {@link AVLTree#toString()} against the recursive pre-order rendering it replaced, byte for byte.
+     */
+    public static void checkRendering() {
+        for (int seed = 0; seed < 300; seed++) {
+            Random random = new Random(seed);
+            AVLTree tree = AVLTree.initialize();
+            int keys = random.nextInt(seed < 10 ? 3 : 1000);
+            for (int i = 0; i < keys; i++) {
+                tree.insert(random.nextInt(2000) - 1000);
+            }
+            for (int i = 0; i < keys / 3; i++) {
+                tree.delete(random.nextInt(2000) - 1000);
+            }
+            check(tree.toString().equals(renderRecursively(tree.root())), "toString", seed);
+        }
+    }
+
+    /**
+     * {@link AVLTree#readFrom(ReadableByteChannel)} from a {@link Pipe} whose writer keeps the sink open after the
+     * tree: sets and multisets, plain and deflated, empty to 100000 keys. The read must return the keys and counts
+     * written instead of waiting for more input.
+     * @throws IOException if the pipe cannot be written.
+     */
+    public static void checkPipedSerialization() throws IOException {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            int seed = 0;
+            for (int keys : new int[]{0, 1, 2, 1000, 100_000}) {
+                for (int variant = 0; variant < 4; variant++, seed++) {
+                    Random random = new Random(seed);
+                    boolean multiset = (variant & 1) != 0;
+                    boolean compress = (variant & 2) != 0;
+                    AVLTree tree = multiset ? AVLTree.initializeMultiset() : AVLTree.initialize();
+                    TreeMap<Integer, Integer> reference = new TreeMap<>();
+                    for (int i = 0; i < keys; i++) {
+                        int key = random.nextInt(keys * 4) - keys * 2;
+                        int times = multiset ? 1 + random.nextInt(3) : 1;
+                        for (int t = 0; t < times; t++) {
+                            tree.insert(key);
+                        }
+                        reference.merge(key, times, multiset ? Integer::sum : (a, b) -> 1);
+                    }
+                    Pipe pipe = Pipe.open();
+                    try (Pipe.SinkChannel sink = pipe.sink(); Pipe.SourceChannel source = pipe.source()) {
+                        Future<AVLTree> read = reader.submit(() -> AVLTree.readFrom(source));
+                        tree.writeTo(sink, compress);
+                        AVLTree copy;
+                        try {
+                            copy = read.get(10, TimeUnit.SECONDS);
+                        } catch (TimeoutException e) {
+                            throw new IllegalStateException("read from a pipe left open still blocks, seed " + seed
+                                    + ".", e);
+                        } catch (InterruptedException | ExecutionException e) {
+                            throw new IllegalStateException("read from a pipe failed, seed " + seed + ".", e);
+                        }
+                        check(copy.isMultiset() == multiset && copy.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE)
+                                .equals(new ArrayList<>(reference.keySet())), "keys read from a pipe", seed);
+                        for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+                            check(copy.count(entry.getKey()) == entry.getValue(), "count read from a pipe", seed);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * {@link CommandReplayer} over 2 to 16 shards against the sequential replay of the same command file, byte for
+     * byte, on logs shorter and longer than a batch and with keys clustered, spread and over the whole int range.
+     * @throws IOException if a temporary file cannot be written.
+     */
+    public static void checkShardedReplay() throws IOException {
+        Random random = new Random(7);
+        Path input = Files.createTempFile("commands", ".txt");
+        Path sequential = Files.createTempFile("sequential", ".txt");
+        Path sharded = Files.createTempFile("sharded", ".txt");
+        try {
+            for (int commands : new int[]{0, 5, 1000, 65535, 65536, 65537, 300_000}) {
+                for (int variant = 0; variant < 3; variant++) {
+                    Files.write(input, randomCommands(random, commands, variant).getBytes(StandardCharsets.US_ASCII));
+                    CommandReplayer.replay(input, sequential, 1);
+                    byte[] expected = Files.readAllBytes(sequential);
+                    for (int shards : new int[]{2, 3, 4, 8, 16}) {
+                        CommandReplayer.replay(input, sharded, shards);
+                        check(Arrays.equals(expected, Files.readAllBytes(sharded)), commands + " commands, variant "
+                                + variant + ", " + shards + " shards", 7);
+                    }
+                }
+            }
+            Files.write(input, "Insert(3)\n".getBytes(StandardCharsets.US_ASCII));
+            try {
+                CommandReplayer.replay(input, sharded, 4);
+                throw new IllegalStateException("sharded replay accepted a command before Initialize().");
+            } catch (IllegalStateException expected) {
+                // no tree to insert into.
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(sequential);
+            Files.deleteIfExists(sharded);
+        }
+    }
+
+    /**
+     * WAVL trees ({@link AVLTree.Balancing#WAVL}) against {@link TreeSet} under random inserts and deletes over key
+     * spaces from 5 to 100000 keys, with the rank invariants of {@link AVLTree#checkInvariants()} checked along the way
+     * and the depth bound of 2 log2(n) at the end. Inserts alone must give the very shape of an AVL tree, and a tree
+     * emptied by sequential deletes must stay valid throughout.
+     */
+    public static void checkWeakBalancing() {
+        int[] keySpaces = {5, 20, 50, 1000, 3000, 100_000};
+        for (int seed = 0; seed < keySpaces.length; seed++) {
+            Random random = new Random(seed);
+            int keySpace = keySpaces[seed];
+            AVLTree tree = AVLTree.initialize(AVLTree.Balancing.WAVL);
+            TreeSet<Integer> reference = new TreeSet<>();
+            for (int i = 0; i < 200_000; i++) {
+                int key = random.nextInt(keySpace);
+                int op = random.nextInt(10);
+                if (op < 4) {
+                    check(tree.insert(key) == reference.add(key), "WAVL insert", seed);
+                } else if (op < 8) {
+                    check(tree.delete(key) == reference.remove(key), "WAVL delete", seed);
+                } else {
+                    check(tree.contains(key) == reference.contains(key)
+                            && Objects.equals(tree.ceiling(key), reference.ceiling(key)), "WAVL search", seed);
+                }
+                if (keySpace <= 1000 || i % 1000 == 0) {
+                    tree.checkInvariants();
+                }
+            }
+            tree.checkInvariants();
+            check(tree.size() == reference.size()
+                    && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(reference)),
+                    "WAVL keys", seed);
+            int log2 = 32 - Integer.numberOfLeadingZeros(Math.max(reference.size(), 1));
+            check(depth(tree.root()) <= 2 * log2, "WAVL depth", seed);
+        }
+
+        Random random = new Random(5);
+        AVLTree weak = AVLTree.initialize(AVLTree.Balancing.WAVL);
+        AVLTree strict = AVLTree.initialize();
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt();
+            weak.insert(key);
+            strict.insert(key);
+        }
+        check(sameShape(weak.root(), strict.root()), "WAVL shape after inserts only", 5);
+
+        AVLTree sequential = AVLTree.initialize(AVLTree.Balancing.WAVL);
+        for (int i = 0; i < 100_000; i++) {
+            sequential.insert(i);
+        }
+        for (int i = 0; i < 100_000; i += 2) {
+            sequential.delete(i);
+        }
+        sequential.checkInvariants();
+        for (int i = 99_999; i >= 0; i -= 2) {
+            sequential.delete(i);
+            if (i % 1001 == 0) {
+                sequential.checkInvariants();
+            }
+        }
+        check(sequential.size() == 0 && sequential.root() == null, "WAVL emptied", 0);
+    }
+
+    /**
+     * {@link BPlusTree} with 4, 5, 8 and 32 keys per node against {@link TreeSet}: random inserts and deletes, then
+     * every key deleted in random order down to an empty tree, with {@link BPlusTree#checkInvariants()} checked along
+     * the way. The small capacities split, borrow and merge at almost every update.
+     */
+    public static void checkBPlusTree() {
+        int seed = 0;
+        for (int capacity : new int[]{4, 5, 8, 32}) {
+            for (int round = 0; round < 25; round++, seed++) {
+                Random random = new Random(seed);
+                BPlusTree tree = BPlusTree.initialize(capacity);
+                TreeSet<Integer> reference = new TreeSet<>();
+                int range = 10 + random.nextInt(round < 5 ? 50 : 5000);
+                for (int i = 0; i < 3000; i++) {
+                    int key = random.nextInt(range) - range / 2;
+                    if (random.nextInt(3) < 2) {
+                        check(tree.insert(key) == reference.add(key), "B+-tree insert", seed);
+                    } else {
+                        check(tree.delete(key) == reference.remove(key), "B+-tree delete", seed);
+                    }
+                    if (i % 7 == 0) {
+                        tree.checkInvariants();
+                    }
+                    if (i % 100 == 0) {
+                        int smallKey = random.nextInt(range) - range / 2;
+                        int bigKey = smallKey + random.nextInt(range / 4 + 1);
+                        List<Integer> expected = new ArrayList<>(reference.subSet(smallKey, true, bigKey, true));
+                        check(tree.searchRange(smallKey, bigKey).equals(expected), "B+-tree range", seed);
+                    }
+                }
+                check(tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(reference)),
+                        "B+-tree keys", seed);
+                List<Integer> keys = new ArrayList<>(reference);
+                Collections.shuffle(keys, random);
+                for (int key : keys) {
+                    check(tree.delete(key) && !tree.contains(key) && tree.size() == reference.size() - 1,
+                            "B+-tree delete down to empty", seed);
+                    reference.remove(key);
+                    tree.checkInvariants();
+                }
+                check(tree.size() == 0 && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).isEmpty()
+                        && !tree.delete(0), "B+-tree emptied", seed);
+                // an emptied tree must grow again.
+                for (int key = 0; key < capacity * capacity; key++) {
+                    tree.insert(key);
+                }
+                tree.checkInvariants();
+                check(tree.size() == capacity * capacity, "B+-tree refilled", seed);
+            }
+        }
+    }
+
+    /**
+     * {@link ArrayAVLTree} against {@link TreeSet} under random inserts, deletes and searches, with
+     * {@link ArrayAVLTree#checkInvariants()} checked along the way. Deleting most of the keys and inserting as many
+     * again must reuse the freed slots instead of taking new ones, and a sequential load of 2^21 keys must stay a valid
+     * AVL tree.
+     */
+    public static void checkArrayTree() {
+        for (int seed = 0; seed < 60; seed++) {
+            Random random = new Random(seed);
+            ArrayAVLTree tree = seed % 2 == 0 ? ArrayAVLTree.initialize()
+                    : ArrayAVLTree.initialize(random.nextInt(100));
+            TreeSet<Integer> reference = new TreeSet<>();
+            int range = 10 + random.nextInt(seed < 10 ? 50 : 10_000);
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(range) - range / 2;
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    check(tree.insert(key) == reference.add(key), "array insert", seed);
+                } else if (op < 8) {
+                    check(tree.delete(key) == reference.remove(key), "array delete", seed);
+                } else if (op < 9) {
+                    check(Objects.equals(tree.search(key), reference.contains(key) ? key : null), "array search", seed);
+                } else {
+                    int bigKey = key + random.nextInt(range / 4 + 1);
+                    List<Integer> expected = new ArrayList<>(reference.subSet(key, true, bigKey, true));
+                    check(tree.searchRange(key, bigKey).equals(expected), "array range", seed);
+                }
+                check(tree.size() == reference.size(), "array size", seed);
+                if (i % 13 == 0) {
+                    tree.checkInvariants();
+                }
+            }
+
+            // mass deletes, the freed slots must take the next inserts.
+            int slots = tree.slotCount();
+            int peak = reference.size();
+            for (Integer key : new ArrayList<>(reference)) {
+                if (random.nextInt(10) != 0) {
+                    tree.delete(key);
+                    reference.remove(key);
+                }
+            }
+            tree.checkInvariants();
+            for (int key = range; reference.size() < peak; key++) {
+                tree.insert(key);
+                reference.add(key);
+            }
+            tree.checkInvariants();
+            check(tree.slotCount() == slots
+                    && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(reference)),
+                    "array slots reused", seed);
+        }
+
+        ArrayAVLTree tree = ArrayAVLTree.initialize();
+        int keys = 1 << 21;
+        for (int key = 0; key < keys; key++) {
+            tree.insert(key);
+        }
+        tree.checkInvariants();
+        check(tree.size() == keys && tree.search(0) != null && tree.search(keys - 1) != null
+                && tree.search(keys) == null && tree.searchRange(1000, 1999).size() == 1000,
+                "array sequential load", 0);
+        for (int key = 0; key < keys; key += 2) {
+            tree.delete(key);
+        }
+        for (int key = keys; key < keys + keys / 2; key++) {
+            tree.insert(key);
+        }
+        tree.checkInvariants();
+        check(tree.size() == keys && tree.slotCount() == keys, "array sequential reload", 0);
+    }
+
+    /**
+     * Multisets ({@link AVLTree#initializeMultiset()}) against a {@link TreeMap} of counts: insert, removeOne,
+     * removeAll, count, size, rank, select and countRange, bulkInsert merging counts on both of its paths, deletes of
+     * a node with two children (the predecessor moves in with its count), and a writeTo / readFrom round trip that must
+     * keep the multiset flag and every count.
+     * @throws IOException if the round trip fails.
+     */
+    public static void checkMultiset() throws IOException {
+        for (int seed = 0; seed < 100; seed++) {
+            Random random = new Random(seed);
+            AVLTree tree = AVLTree.initializeMultiset();
+            TreeMap<Integer, Integer> reference = new TreeMap<>();
+            int range = 5 + random.nextInt(seed < 20 ? 30 : 3000);
+            for (int i = 0; i < 4000; i++) {
+                int key = random.nextInt(range) - range / 2;
+                int op = random.nextInt(20);
+                if (op < 8) {
+                    check(tree.insert(key), "multiset insert", seed);
+                    reference.merge(key, 1, Integer::sum);
+                } else if (op < 12) {
+                    Integer count = reference.get(key);
+                    check(tree.removeOne(key) == (count != null), "multiset removeOne", seed);
+                    if (count != null) {
+                        reference.compute(key, (k, c) -> c == 1 ? null : c - 1);
+                    }
+                } else if (op < 13) {
+                    Integer count = reference.remove(key);
+                    check(tree.removeAll(key) == (count != null ? count : 0), "multiset removeAll", seed);
+                } else if (op < 14 && tree.root() != null && tree.root().getLeft() != null
+                        && tree.root().getRight() != null) {
+                    // the root has two children, its predecessor moves in with its count.
+                    int rootKey = tree.root().getKey();
+                    check(tree.removeAll(rootKey) == reference.remove(rootKey), "multiset delete of a full node", seed);
+                } else if (op < 15) {
+                    int[] batch = new int[random.nextBoolean() ? 1 + random.nextInt(3) : random.nextInt(2000)];
+                    for (int b = 0; b < batch.length; b++) {
+                        batch[b] = random.nextInt(range) - range / 2;
+                        reference.merge(batch[b], 1, Integer::sum);
+                    }
+                    check(tree.bulkInsert(batch) == batch.length, "multiset bulkInsert", seed);
+                } else if (op < 18) {
+                    check(tree.count(key) == reference.getOrDefault(key, 0), "multiset count", seed);
+                    check(tree.rank(key) == sum(reference.headMap(key)), "multiset rank", seed);
+                    int bigKey = key + random.nextInt(range / 4 + 1);
+                    check(tree.countRange(key, bigKey) == sum(reference.subMap(key, true, bigKey, true)),
+                            "multiset countRange", seed);
+                } else if (tree.size() > 0) {
+                    int rank = random.nextInt(tree.size());
+                    int expected = 0;
+                    int below = 0;
+                    for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+                        if (rank < below + entry.getValue()) {
+                            expected = entry.getKey();
+                            break;
+                        }
+                        below += entry.getValue();
+                    }
+                    check(tree.select(rank) == expected, "multiset select", seed);
+                }
+                check(tree.size() == sum(reference), "multiset size", seed);
+                if (i % 50 == 0) {
+                    tree.checkInvariants();
+                }
+            }
+            tree.checkInvariants();
+            checkCounts(tree, reference, "multiset counts", seed);
+            check(tree.countRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == tree.size(),
+                    "multiset full countRange", seed);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            tree.writeTo(Channels.newChannel(bytes), seed % 2 == 1);
+            AVLTree copy = AVLTree.readFrom(Channels.newChannel(new ByteArrayInputStream(bytes.toByteArray())));
+            copy.checkInvariants();
+            check(copy.isMultiset(), "multiset flag read back", seed);
+            checkCounts(copy, reference, "multiset read back", seed);
+        }
+    }
+
+    /**
+     * Range folds ({@link AVLTree#aggregateRange(int, int)}, {@link AVLTree#aggregate()}) against a fold of the
+     * reference values in key order, with two monoids that are not commutative so that a fold in the wrong order shows:
+     * the product of 2x2 matrices of bytes (the value packs the four entries, mod 256) and "first value of the range".
+     * The folds are checked through inserts, value replacements, deletes, bulkInsert, split and union.
+     */
+    public static void checkAggregates() {
+        Monoid matrix = Monoid.of(0x01000001L, (left, right) -> {
+            long a = left & 0xFF, b = left >>> 8 & 0xFF, c = left >>> 16 & 0xFF, d = left >>> 24 & 0xFF;
+            long e = right & 0xFF, f = right >>> 8 & 0xFF, g = right >>> 16 & 0xFF, h = right >>> 24 & 0xFF;
+            return (a * e + b * g & 0xFF) | (a * f + b * h & 0xFF) << 8 | (c * e + d * g & 0xFF) << 16
+                    | (c * f + d * h & 0xFF) << 24;
+        });
+        Monoid first = Monoid.of(Long.MIN_VALUE, (left, right) -> left != Long.MIN_VALUE ? left : right);
+        for (Monoid monoid : List.of(matrix, first)) {
+            for (int seed = 0; seed < 40; seed++) {
+                Random random = new Random(seed);
+                AVLTree tree = AVLTree.initialize(monoid);
+                TreeMap<Integer, Integer> reference = new TreeMap<>();
+                int range = 10 + random.nextInt(seed < 10 ? 50 : 2000);
+                for (int i = 0; i < 2000; i++) {
+                    int key = random.nextInt(range) - range / 2;
+                    int op = random.nextInt(40);
+                    if (op < 12) {
+                        check(tree.insert(key) == (reference.putIfAbsent(key, key) == null), "aggregate insert", seed);
+                    } else if (op < 20) {
+                        int value = random.nextInt();
+                        check(tree.insert(key, value) == (reference.put(key, value) == null),
+                                "aggregate replace", seed);
+                    } else if (op < 32) {
+                        check(tree.delete(key) == (reference.remove(key) != null), "aggregate delete", seed);
+                    } else if (op < 36) {
+                        int[] batch = new int[random.nextBoolean() ? 1 + random.nextInt(3) : random.nextInt(range)];
+                        int added = 0;
+                        for (int b = 0; b < batch.length; b++) {
+                            batch[b] = random.nextInt(range) - range / 2;
+                            if (reference.putIfAbsent(batch[b], batch[b]) == null) {
+                                added++;
+                            }
+                        }
+                        check(tree.bulkInsert(batch) == added, "aggregate bulkInsert", seed);
+                    } else if (op < 38) {
+                        AVLTree tail = tree.split(key);
+                        check(aggregate(tree, monoid) == fold(reference.headMap(key), monoid)
+                                && aggregate(tail, monoid) == fold(reference.tailMap(key), monoid),
+                                "aggregate split", seed);
+                        tree = AVLTree.union(tree, tail);
+                    } else {
+                        // the values of the second tree win on common keys.
+                        AVLTree other = AVLTree.initialize(monoid);
+                        for (int k = random.nextInt(50); k > 0; k--) {
+                            int otherKey = random.nextInt(range) - range / 2;
+                            int value = random.nextInt();
+                            other.insert(otherKey, value);
+                            reference.put(otherKey, value);
+                        }
+                        tree = AVLTree.union(tree, other);
+                    }
+                    int small = random.nextInt(range) - range / 2;
+                    int big = small + random.nextInt(range / 2 + 1);
+                    check(tree.aggregateRange(small, big) == fold(reference.subMap(small, true, big, true), monoid),
+                            "aggregateRange", seed);
+                    if (i % 100 == 0) {
+                        check(aggregate(tree, monoid) == fold(reference, monoid), "aggregate", seed);
+                        tree.checkInvariants();
+                    }
+                }
+                check(aggregate(tree, monoid) == fold(reference, monoid), "aggregate", seed);
+                check(tree.aggregateRange(1, 0) == monoid.identity(), "aggregate of an empty range", seed);
+            }
+        }
+    }
+
+    /**
+     * {@link TreeCursor} of AVL and WAVL trees against a position in a {@link TreeSet}: seeks and steps mixed with
+     * inserts, deletes (of the key under the cursor as well) and bulk inserts. A cursor whose key was deleted must be
+     * on the key after it, so next() must not skip that key and previous() must land on the key before.
+     */
+    public static void checkCursor() {
+        for (AVLTree.Balancing balancing : AVLTree.Balancing.values()) {
+            for (int seed = 0; seed < 100; seed++) {
+                Random random = new Random(seed);
+                AVLTree tree = AVLTree.initialize(balancing);
+                TreeSet<Integer> reference = new TreeSet<>();
+                TreeCursor cursor = tree.cursor();
+                // key of the cursor, null if it is on no key.
+                Integer position = null;
+                int range = 5 + random.nextInt(seed < 20 ? 40 : 5000);
+                for (int i = 0; i < 3000; i++) {
+                    int key = random.nextInt(range) - range / 2;
+                    int op = random.nextInt(24);
+                    if (op < 5) {
+                        check(tree.insert(key) == reference.add(key), "cursor insert", seed);
+                    } else if (op < 9) {
+                        // delete the key under the cursor half of the time.
+                        int deleted = position != null && random.nextBoolean() ? position : key;
+                        check(tree.delete(deleted) == reference.remove(deleted), "cursor delete", seed);
+                    } else if (op < 10) {
+                        int[] batch = new int[random.nextInt(range / 2 + 1)];
+                        for (int b = 0; b < batch.length; b++) {
+                            batch[b] = random.nextInt(range) - range / 2;
+                            reference.add(batch[b]);
+                        }
+                        tree.bulkInsert(batch);
+                    } else if (op < 12) {
+                        position = reference.ceiling(key);
+                        check(cursor.seekCeiling(key) == (position != null), "cursor seekCeiling", seed);
+                    } else if (op < 14) {
+                        position = reference.floor(key);
+                        check(cursor.seekFloor(key) == (position != null), "cursor seekFloor", seed);
+                    } else if (op < 15) {
+                        position = reference.isEmpty() ? null : reference.first();
+                        check(cursor.seekFirst() == (position != null), "cursor seekFirst", seed);
+                    } else if (op < 16) {
+                        position = reference.isEmpty() ? null : reference.last();
+                        check(cursor.seekLast() == (position != null), "cursor seekLast", seed);
+                    } else if (op < 20) {
+                        if (position != null) {
+                            position = reference.contains(position) ? reference.higher(position)
+                                    : reference.ceiling(position);
+                        }
+                        check(cursor.next() == (position != null), "cursor next", seed);
+                    } else if (op < 24) {
+                        if (position != null) {
+                            position = reference.contains(position) ? reference.lower(position)
+                                    : reference.floor(position);
+                        }
+                        check(cursor.previous() == (position != null), "cursor previous", seed);
+                    }
+                    if (op >= 10 || random.nextInt(4) == 0) {
+                        // reading the key of a cursor whose key was deleted moves it on to the next key.
+                        if (position != null && !reference.contains(position)) {
+                            position = reference.ceiling(position);
+                        }
+                        check(cursor.isValid() == (position != null), "cursor isValid", seed);
+                        if (position != null) {
+                            check(cursor.key() == position, "cursor key", seed);
+                        } else {
+                            try {
+                                cursor.key();
+                                check(false, "cursor key on no key", seed);
+                            } catch (NoSuchElementException expected) {
+                                // the cursor is on no key.
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * rank, select, countRange, median and paged forEachInRange of AVL and WAVL trees against {@link TreeSet}, with
+     * the extreme keys in the tree and as bounds (countRange up to {@link Integer#MAX_VALUE} must not overflow) and
+     * page offsets past the end of the range.
+     */
+    public static void checkOrderStatistics() {
+        for (AVLTree.Balancing balancing : AVLTree.Balancing.values()) {
+            for (int seed = 0; seed < 100; seed++) {
+                Random random = new Random(seed);
+                AVLTree tree = AVLTree.initialize(balancing);
+                TreeSet<Integer> reference = new TreeSet<>();
+                int range = 5 + random.nextInt(seed < 20 ? 40 : 5000);
+                for (int i = 0; i < 2000; i++) {
+                    int key = orderKey(random, range);
+                    if (random.nextInt(3) > 0) {
+                        check(tree.insert(key) == reference.add(key), "order statistics insert", seed);
+                    } else {
+                        check(tree.delete(key) == reference.remove(key), "order statistics delete", seed);
+                    }
+                    if (i % 50 != 0) {
+                        continue;
+                    }
+                    List<Integer> keys = new ArrayList<>(reference);
+                    int size = keys.size();
+                    check(tree.size() == size, "order statistics size", seed);
+                    check(Objects.equals(tree.median(), size > 0 ? keys.get((size - 1) / 2) : null), "median", seed);
+                    for (int rank : new int[]{-1, size}) {
+                        try {
+                            tree.select(rank);
+                            check(false, "select out of bounds", seed);
+                        } catch (IndexOutOfBoundsException expected) {
+                            // no key has this rank.
+                        }
+                    }
+                    for (int q = 0; q < 20; q++) {
+                        int small = orderKey(random, range);
+                        int big = random.nextInt(8) == 0 ? Integer.MAX_VALUE : orderKey(random, range);
+                        check(tree.rank(small) == reference.headSet(small).size(), "rank", seed);
+                        if (size > 0) {
+                            int rank = random.nextInt(size);
+                            check(tree.select(rank) == keys.get(rank), "select", seed);
+                        }
+                        List<Integer> inRange = small <= big
+                                ? new ArrayList<>(reference.subSet(small, true, big, true)) : List.of();
+                        check(tree.countRange(small, big) == inRange.size(), "countRange", seed);
+                        int offset = random.nextInt(inRange.size() + 5);
+                        int limit = random.nextInt(10);
+                        List<Integer> page = new ArrayList<>();
+                        int passed = tree.forEachInRange(small, big, offset, limit, page::add);
+                        List<Integer> expected = inRange.subList(Math.min(offset, inRange.size()),
+                                Math.min(offset + limit, inRange.size()));
+                        check(passed == page.size() && page.equals(expected), "paged forEachInRange", seed);
+                    }
+                    check(tree.countRange(Integer.MIN_VALUE, Integer.MAX_VALUE) == size, "full countRange", seed);
+                }
+            }
+        }
+    }
+
+    /**
+     * A {@link TreeListener} hears nothing of a bulkInsert, on the single insert path (small batches, WAVL trees) as
+     * well as on the merge path, and is still notified of the inserts around it.
+     */
+    public static void checkBatchListener() {
+        for (AVLTree.Balancing balancing : AVLTree.Balancing.values()) {
+            for (int seed = 0; seed < 20; seed++) {
+                Random random = new Random(seed);
+                AVLTree tree = AVLTree.initialize(balancing);
+                int[] events = new int[1];
+                tree.setListener(new TreeListener() {
+                    @Override
+                    public void onRotation(Rotation rotation) {
+                        events[0]++;
+                    }
+
+                    @Override
+                    public void onInsert(boolean inserted, int pathLength, int height, long nanos) {
+                        events[0]++;
+                    }
+                });
+                for (int i = 0; i < 1000; i++) {
+                    tree.insert(random.nextInt(100_000));
+                }
+                check(events[0] >= 1000, "listener of single inserts", seed);
+                for (int size : new int[]{1, 3, 50, 5000}) {
+                    int[] batch = random.ints(size, 0, 100_000).toArray();
+                    int before = events[0];
+                    tree.bulkInsert(batch);
+                    check(events[0] == before, "listener of bulkInsert", seed);
+                }
+                tree.checkInvariants();
+                int before = events[0];
+                tree.insert(-1);
+                check(events[0] > before && tree.getListener() != null, "listener after bulkInsert", seed);
+            }
+        }
+    }
+
+    /**
+     * Random key for {@link #checkOrderStatistics()}, one in ten at or next to an end of the int range.
+     */
+    private static int orderKey(Random random, int range) {
+        return switch (random.nextInt(40)) {
+            case 0 -> Integer.MIN_VALUE;
+            case 1 -> Integer.MIN_VALUE + 1;
+            case 2 -> Integer.MAX_VALUE - 1;
+            case 3 -> Integer.MAX_VALUE;
+            default -> random.nextInt(range) - range / 2;
+        };
+    }
+
+    private static long fold(Map<Integer, Integer> values, Monoid monoid) {
+        long fold = monoid.identity();
+        for (int value : values.values()) {
+            fold = monoid.combine(fold, value);
+        }
+        return fold;
+    }
+
+    /**
+     * Fold of a whole tree, combined once with the identity: the fold of a single key is its value, sign-extended,
+     * where the matrix product only keeps the low 32 bits.
+     */
+    private static long aggregate(AVLTree tree, Monoid monoid) {
+        return monoid.combine(monoid.identity(), tree.aggregate());
+    }
+
+    private static int sum(Map<Integer, Integer> counts) {
+        int sum = 0;
+        for (int count : counts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static void checkCounts(AVLTree tree, TreeMap<Integer, Integer> reference, String what, int seed) {
+        check(tree.size() == sum(reference)
+                && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(reference.keySet())),
+                what, seed);
+        for (Map.Entry<Integer, Integer> entry : reference.entrySet()) {
+            check(tree.count(entry.getKey()) == entry.getValue(), what, seed);
+        }
+    }
+
+    private static int depth(AVLNode node) {
+        return node == null ? 0 : 1 + Math.max(depth(node.getLeft()), depth(node.getRight()));
+    }
+
+    private static boolean sameShape(AVLNode first, AVLNode second) {
+        if (first == null || second == null) {
+            return first == second;
+        }
+        return first.getKey() == second.getKey() && first.getHeight() == second.getHeight()
+                && sameShape(first.getLeft(), second.getLeft()) && sameShape(first.getRight(), second.getRight());
+    }
+
+    /**
+     * {@link DurableAVLTree} reopened from the states a crash can leave during a checkpoint, built by hand from copies
+     * of the directory: the new snapshot written to snapshot.tmp but its rename not yet durable, the rename durable but
+     * the log not yet emptied, and the finished checkpoint. Every state must recover every synced key. A log left idle,
+     * neither synced nor closed, must have written its records to the file once they are older than the flush interval.
+     * @throws IOException if a directory cannot be written.
+     */
+    public static void checkDurableRecovery() throws IOException {
+        Path directory = Files.createTempDirectory("durable");
+        Path crashed = Files.createTempDirectory("crashed");
+        try {
+            Random random = new Random(11);
+            TreeSet<Integer> reference = new TreeSet<>();
+            Path before = directory.resolve("before");
+            Path live = directory.resolve("live");
+            try (DurableAVLTree tree = DurableAVLTree.open(live, 16, 0, 0)) {
+                applyRandomUpdates(random, tree, reference);
+                tree.checkpoint();
+                applyRandomUpdates(random, tree, reference);
+                tree.sync();
+                // old snapshot and the full log, the state a crash before the rename leaves.
+                copyDirectory(live, before);
+                tree.checkpoint();
+            }
+            byte[] newSnapshot = Files.readAllBytes(live.resolve("snapshot"));
+
+            copyDirectory(before, crashed);
+            Files.write(crashed.resolve("snapshot.tmp"), newSnapshot);
+            checkRecovered(crashed, reference, "rename not durable");
+            check(!Files.exists(crashed.resolve("snapshot.tmp")), "snapshot.tmp removed on open", 11);
+
+            copyDirectory(before, crashed);
+            Files.write(crashed.resolve("snapshot"), newSnapshot);
+            checkRecovered(crashed, reference, "log not emptied");
+
+            checkRecovered(live, reference, "finished checkpoint");
+
+            // a crash of an idle log: copied while open, without sync or close.
+            for (long forceIntervalMillis : new long[]{10, -1}) {
+                Path idle = directory.resolve("idle" + forceIntervalMillis);
+                TreeSet<Integer> written = new TreeSet<>();
+                try (DurableAVLTree tree = DurableAVLTree.open(idle, 256, forceIntervalMillis, 0)) {
+                    for (int key = 0; key < 11; key++) {
+                        tree.insert(key);
+                        written.add(key);
+                    }
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+                    while (System.nanoTime() < deadline) {
+                        LockSupport.parkNanos(deadline - System.nanoTime());
+                    }
+                    copyDirectory(idle, crashed);
+                }
+                checkRecovered(crashed, written, "idle log, force interval " + forceIntervalMillis + " ms");
+            }
+        } finally {
+            deleteDirectory(directory);
+            deleteDirectory(crashed);
+        }
+    }
+
+    /**
+     * {@link MappedAVLTree} copied while open, with the uncommitted changes of the batch in the file, must reopen as of
+     * its last commit and keep working against a {@link TreeSet} (a free list that hands out a live node breaks the
+     * keys). Inserting and deleting over a million keys in one batch must reuse the same slots, the file must not grow.
+     * @throws IOException if a temporary file cannot be written.
+     */
+    public static void checkMappedRecovery() throws IOException {
+        Path directory = Files.createTempDirectory("mapped");
+        try {
+            Path file = directory.resolve("tree");
+            Path crashed = directory.resolve("crashed");
+            Random random = new Random(12);
+            TreeSet<Integer> reference = new TreeSet<>();
+            TreeSet<Integer> committed = new TreeSet<>();
+            try (MappedAVLTree tree = MappedAVLTree.open(file)) {
+                for (int round = 0; round < 40; round++) {
+                    applyMappedUpdates(random, tree, reference);
+                    if (random.nextBoolean()) {
+                        tree.commit();
+                        committed = new TreeSet<>(reference);
+                    }
+                    if (round % 4 != 3) {
+                        continue;
+                    }
+                    Files.copy(file, crashed, StandardCopyOption.REPLACE_EXISTING);
+                    TreeSet<Integer> recovered = new TreeSet<>(committed);
+                    try (MappedAVLTree reopened = MappedAVLTree.open(crashed)) {
+                        checkMapped(reopened, recovered, "reopened after a crash", round);
+                        for (int i = 0; i < 3; i++) {
+                            applyMappedUpdates(random, reopened, recovered);
+                            reopened.commit();
+                        }
+                        checkMapped(reopened, recovered, "updates after a crash", round);
+                    }
+                    try (MappedAVLTree reopened = MappedAVLTree.open(crashed)) {
+                        checkMapped(reopened, recovered, "updates after a crash, reopened", round);
+                    }
+                }
+            }
+
+            Path churned = directory.resolve("churned");
+            try (MappedAVLTree tree = MappedAVLTree.open(churned)) {
+                for (int key = 0; key < 1000; key++) {
+                    tree.insert(key * 2);
+                }
+                tree.commit();
+                long bytes = Files.size(churned);
+                for (int key = 0; key < 1_200_000; key++) {
+                    tree.insert(key * 2 + 1);
+                    tree.delete(key * 2 + 1);
+                }
+                check(tree.size() == 1000 && Files.size(churned) == bytes, "mapped file size after churn", 12);
+            }
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void applyMappedUpdates(Random random, MappedAVLTree tree, TreeSet<Integer> reference) {
+        for (int i = 0; i < 2000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) < 2) {
+                check(tree.insert(key) == reference.add(key), "mapped insert", 12);
+            } else {
+                check(tree.delete(key) == reference.remove(key), "mapped delete", 12);
+            }
+        }
+    }
+
+    private static void checkMapped(MappedAVLTree tree, TreeSet<Integer> expected, String what, int seed) {
+        check(tree.size() == expected.size()
+                && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected)), what,
+                seed);
+    }
+
+    private static void applyRandomUpdates(Random random, DurableAVLTree tree, TreeSet<Integer> reference) {
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) < 2) {
+                check(tree.insert(key) == reference.add(key), "durable insert", 11);
+            } else {
+                check(tree.delete(key) == reference.remove(key), "durable delete", 11);
+            }
+        }
+    }
+
+    private static void checkRecovered(Path directory, TreeSet<Integer> expected, String state) throws IOException {
+        try (DurableAVLTree tree = DurableAVLTree.open(directory)) {
+            check(tree.size() == expected.size()
+                    && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected)),
+                    "recovery from " + state, 11);
+        }
+    }
+
+    /**
+     * Replace the files of a directory by copies of the files of another one.
+     */
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        deleteDirectory(target);
+        Files.createDirectories(target);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(source)) {
+            for (Path file : files) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (Files.isDirectory(file)) {
+                    deleteDirectory(file);
+                } else {
+                    Files.delete(file);
+                }
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Command file of inserts, deletes, point and range searches, with a second Initialize() half way in variant 0,
+     * CRLF line ends, reversed ranges and extreme keys.
+     * @param variant 0 for keys in 0 .. 999, 1 for -500000 .. 499999, 2 for any int.
+     */
+    private static String randomCommands(Random random, int commands, int variant) {
+        StringBuilder sb = new StringBuilder("Initialize()\n");
+        for (int i = 0; i < commands; i++) {
+            int key = switch (variant) {
+                case 0 -> random.nextInt(1000);
+                case 1 -> random.nextInt(1_000_000) - 500_000;
+                default -> random.nextInt();
+            };
+            int percent = random.nextInt(100);
+            if (i == commands / 2 && variant == 0) {
+                sb.append("Initialize()\n");
+            } else if (percent < 40) {
+                sb.append("Insert(").append(key).append(")\n");
+            } else if (percent < 55) {
+                sb.append("Delete(").append(key).append(")\n");
+            } else if (percent < 80) {
+                sb.append("Search(").append(key).append(")\n");
+            } else if (percent < 95) {
+                sb.append("Search(").append(key).append(',').append(key + random.nextInt(variant == 0 ? 300 : 50))
+                        .append(")\r\n");
+            } else if (percent < 97) {
+                sb.append("Search(").append(key).append(',').append(key - 5).append(")\n");
+            } else if (percent < 99) {
+                sb.append("Insert(").append(Integer.MIN_VALUE).append(")\n");
+            } else {
+                sb.append("Search(").append(Integer.MIN_VALUE).append(")\n");
+            }
+        }
+        if (random.nextBoolean()) {
+            // last command without its line end.
+            sb.setLength(sb.length() - 1);
+        }
+        return sb.toString();
+    }
+
+    private static TreeSet<Integer> randomSet(Random random, int keys, int range) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < keys; i++) {
+            set.add(random.nextInt(range) - range / 2);
+        }
+        return set;
+    }
+
+    /**
+     * Tree of the keys of a set, bulk loaded or inserted in random order.
+     */
+    private static AVLTree build(Random random, TreeSet<Integer> keys) {
+        if (random.nextBoolean()) {
+            return AVLTree.fromSorted(keys.stream().mapToInt(Integer::intValue).toArray());
+        }
+        List<Integer> shuffled = new ArrayList<>(keys);
+        Collections.shuffle(shuffled, random);
+        AVLTree tree = AVLTree.initialize();
+        for (int key : shuffled) {
+            tree.insert(key);
+        }
+        return tree;
+    }
+
+    private static void checkKeys(AVLTree tree, SortedSet<Integer> expected, String what, int seed) {
+        tree.checkInvariants();
+        check(tree.size() == expected.size()
+                && tree.searchRange(Integer.MIN_VALUE, Integer.MAX_VALUE).equals(new ArrayList<>(expected)), what, seed);
+    }
+
+    /**
+     * Pre-order rendering of {@link greed.datastruct.common.BinarySearchTree#traversePreOrder(Node)} as it was written
+     * before it was made iterative, the reference of {@link #checkRendering()}.
+     */
+    private static String renderRecursively(AVLNode root) {
+        if (root == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(root.getKey());
+        renderRecursively(sb, "", root.getRight() != null ? "├──" : "└──", root.getLeft(), root.getRight() != null);
+        renderRecursively(sb, "", "└──", root.getRight(), false);
+        return sb.toString();
+    }
+
+    private static void renderRecursively(StringBuilder sb, String padding, String pointer, AVLNode node,
+                                          boolean hasRightSibling) {
+        if (node == null) {
+            return;
+        }
+        sb.append("\n").append(padding).append(pointer).append(node.getKey());
+        String childPadding = padding + (hasRightSibling ? "│  " : "   ");
+        renderRecursively(sb, childPadding, node.getRight() != null ? "├──" : "└──", node.getLeft(),
+                node.getRight() != null);
+        renderRecursively(sb, childPadding, "└──", node.getRight(), false);
+    }
+
+    private static void check(boolean condition, String what, int seed) {
+        if (!condition) {
+            throw new IllegalStateException(what + " differs from the reference, seed " + seed + ".");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package greed.datastruct;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blocking client of a {@link TreeServer}. Not thread-safe, one client per thread.
+ */
+public final class TreeClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final BufferedReader reader;
+    private final BufferedWriter writer;
+
+    /**
+     * private constructor, {@link #connect(SocketAddress)} is to connect a client.
+     */
+    private TreeClient(SocketChannel channel) {
+        this.channel = channel;
+        this.reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.US_ASCII));
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Connect to a server.
+     * @param address TCP or Unix domain socket address of the server.
+     * @return connected client.
+     * @throws IOException if the server cannot be reached.
+     */
+    public static TreeClient connect(SocketAddress address) throws IOException {
+        SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        try {
+            channel.connect(address);
+            if (address instanceof InetSocketAddress) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new TreeClient(channel);
+    }
+
+    /**
+     * Send one command and wait for its response.
+     * @param command command as in an input file, eg -: Insert(60) or Search(2,10).
+     * @return response line: search result, OK, or ERROR and a message.
+     * @throws IOException if the connection fails.
+     */
+    public String execute(String command) throws IOException {
+        return pipeline(List.of(command)).get(0);
+    }
+
+    /**
+     * Send several commands at once, then read their responses. The server runs them in order but other clients may
+     * run commands in between. All the commands are written before any response is read, so the batch should fit in
+     * the socket buffers (a few thousand commands).
+     * @param commands commands as in an input file.
+     * @return response lines, one per command, in order.
+     * @throws IOException if the connection fails.
+     */
+    public List<String> pipeline(List<String> commands) throws IOException {
+        for (String command : commands) {
+            writer.write(command);
+            writer.write('\n');
+        }
+        writer.flush();
+        List<String> responses = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            String response = reader.readLine();
+            if (response == null) {
+                throw new EOFException("server closed the connection.");
+            }
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
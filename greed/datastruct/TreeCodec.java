@@ -0,0 +1,344 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary format of an {@link AVLTree}, behind {@link AVLTree#writeTo(WritableByteChannel, boolean)} and
+ * {@link AVLTree#readFrom(ReadableByteChannel)}.
+ * <p>
+ * Only the keys are stored, in ascending order: the first one as a zigzag varint and every other one as the varint of
+ * its distance to the previous key, so dense key sets take about one byte per key. The shape and the heights are not
+ * stored, a tree read back is rebuilt perfectly balanced in O(n) straight from the stream. A multiset follows every key
+ * with the varint of its number of occurrences.
+ * <p>
+ * Layout: magic (8 bytes), flags (1 byte, bit 0 = deflated body, bit 1 = multiset), distinct key count (4 bytes), then
+ * the body: the varints and a CRC32 of them (4 bytes), deflated as one stream if the flag is set. Both directions
+ * stream through fixed buffers, memory does not grow with the tree beyond the tree itself.
+ */
+final class TreeCodec {
+
+    private static final long MAGIC = 0x41564C4B45595331L; // "AVLKEYS1"
+    private static final int FLAG_DEFLATE = 1;
+    private static final int FLAG_MULTISET = 2;
+    private static final int HEADER_BYTES = 13;
+    private static final int BUFFER_SIZE = 1 << 16;
+    // an unsigned 32 bit distance takes at most 5 varint bytes.
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private TreeCodec() {
+    }
+
+    /**
+     * Write a tree.
+     * @param output channel receiving the tree.
+     * @param tree tree to be written.
+     * @param compress deflate the body.
+     * @throws IOException if the channel cannot be written.
+     */
+    static void write(WritableByteChannel output, AVLTree tree, boolean compress) throws IOException {
+        if (tree.getMonoid() != null) {
+            throw new IllegalStateException("the values of an aggregating tree cannot be written, only keys and counts.");
+        }
+        boolean multiset = tree.isMultiset();
+        int flags = (compress ? FLAG_DEFLATE : 0) | (multiset ? FLAG_MULTISET : 0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putLong(MAGIC).put((byte) flags).putInt(tree.nodeCount()).flip();
+        writeFully(output, header);
+        Sink sink = new Sink(output, compress);
+        // in-order walk over the nodes.
+        AVLNode[] stack = new AVLNode[SearchTree.MAX_DEPTH];
+        int top = 0;
+        AVLNode node = tree.root();
+        boolean first = true;
+        int previous = 0;
+        while (node != null || top > 0) {
+            while (node != null) {
+                stack[top++] = node;
+                node = node.getLeft();
+            }
+            node = stack[--top];
+            int key = node.getKey();
+            if (first) {
+                sink.putVarint(((key << 1) ^ (key >> 31)) & 0xFFFFFFFFL);
+                first = false;
+            } else {
+                sink.putVarint((long) key - previous);
+            }
+            if (multiset) {
+                sink.putVarint(node.getCount());
+            }
+            previous = key;
+            node = node.getRight();
+        }
+        sink.finish();
+    }
+
+    /**
+     * Read a tree. The channel is read in blocks, it may be consumed past the end of the tree, but no read is issued once
+     * the bytes of the tree are in.
+     * @param input channel positioned at the start of a tree.
+     * @return perfectly balanced tree holding the keys read.
+     * @throws IOException if the data is truncated, corrupt or not a tree.
+     */
+    static AVLTree read(ReadableByteChannel input) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (input.read(header) < 0) {
+                throw new IOException("truncated tree, no header.");
+            }
+        }
+        header.flip();
+        if (header.getLong() != MAGIC) {
+            throw new IOException("not a serialized tree.");
+        }
+        int flags = header.get();
+        boolean compressed = (flags & FLAG_DEFLATE) != 0;
+        boolean multiset = (flags & FLAG_MULTISET) != 0;
+        int count = header.getInt();
+        if (count < 0) {
+            throw new IOException("corrupt tree, negative key count.");
+        }
+        Source source = new Source(input, compressed);
+        AVLTree tree;
+        try {
+            tree = AVLTree.fromSorted(count, source::nextKey, multiset ? source::nextCount : null);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        source.finish();
+        return tree;
+    }
+
+    private static void writeFully(WritableByteChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * Body writer: varints go to a buffer that is checksummed and written, or deflated, whenever it fills up.
+     */
+    private static final class Sink {
+
+        private final WritableByteChannel output;
+        private final ByteBuffer raw;
+        private final CRC32 crc;
+        // NULL for an uncompressed body.
+        private final Deflater deflater;
+        private final ByteBuffer deflated;
+
+        private Sink(WritableByteChannel output, boolean compress) {
+            this.output = output;
+            this.raw = ByteBuffer.allocate(BUFFER_SIZE);
+            this.crc = new CRC32();
+            this.deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+            this.deflated = compress ? ByteBuffer.allocate(BUFFER_SIZE) : null;
+        }
+
+        private void putVarint(long value) throws IOException {
+            if (raw.remaining() < MAX_VARINT_BYTES) {
+                drain(true);
+            }
+            while (value >= 0x80) {
+                raw.put((byte) (value | 0x80));
+                value >>>= 7;
+            }
+            raw.put((byte) value);
+        }
+
+        private void drain(boolean checksum) throws IOException {
+            raw.flip();
+            if (checksum) {
+                crc.update(raw.duplicate());
+            }
+            if (deflater == null) {
+                writeFully(output, raw);
+            } else {
+                deflater.setInput(raw);
+                while (!deflater.needsInput()) {
+                    deflate();
+                }
+            }
+            raw.clear();
+        }
+
+        private void deflate() throws IOException {
+            deflater.deflate(deflated);
+            writeFully(output, deflated.flip());
+            deflated.clear();
+        }
+
+        /**
+         * Write the checksum after the varints and flush everything.
+         */
+        private void finish() throws IOException {
+            drain(true);
+            raw.putInt((int) crc.getValue());
+            drain(false);
+            if (deflater != null) {
+                // the deflater still refers to the cleared buffer, it must not read it again.
+                deflater.setInput(ByteBuffer.allocate(0));
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflate();
+                }
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Body reader, the mirror of {@link Sink}. The buffer is kept in read mode, holding the bytes not consumed yet.
+     */
+    private static final class Source {
+
+        private final ReadableByteChannel input;
+        private final ByteBuffer raw;
+        private final CRC32 crc;
+        // NULL for an uncompressed body.
+        private final Inflater inflater;
+        private final ByteBuffer deflated;
+        private boolean first;
+        private long previous;
+        // occurrences read so far, a multiset cannot hold more than Integer.MAX_VALUE.
+        private long total;
+
+        private Source(ReadableByteChannel input, boolean compressed) {
+            this.input = input;
+            this.raw = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+            this.crc = new CRC32();
+            this.inflater = compressed ? new Inflater() : null;
+            this.deflated = compressed ? ByteBuffer.allocate(BUFFER_SIZE).limit(0) : null;
+            this.first = true;
+        }
+
+        /**
+         * Decode the next key, failures are unchecked to fit an IntSupplier.
+         */
+        private int nextKey() {
+            try {
+                long value = getVarint();
+                if (first) {
+                    first = false;
+                    previous = (int) (value >>> 1) ^ -(int) (value & 1);
+                } else {
+                    if (value == 0 || previous + value > Integer.MAX_VALUE) {
+                        throw new IOException("corrupt tree, keys out of order.");
+                    }
+                    previous += value;
+                }
+                return (int) previous;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Decode the number of occurrences of the last key.
+         */
+        private int nextCount() {
+            try {
+                long value = getVarint();
+                total += value;
+                if (value == 0 || total > Integer.MAX_VALUE) {
+                    throw new IOException("corrupt tree, invalid key count.");
+                }
+                return (int) value;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private long getVarint() throws IOException {
+            if (raw.remaining() < MAX_VARINT_BYTES) {
+                // a varint is always followed by at least the checksum, these bytes come before the body ends.
+                fill(MAX_VARINT_BYTES);
+            }
+            long value = 0;
+            for (int shift = 0; shift < 7 * MAX_VARINT_BYTES; shift += 7) {
+                if (!raw.hasRemaining()) {
+                    throw new IOException("truncated tree.");
+                }
+                byte b = raw.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("corrupt tree, varint too long.");
+        }
+
+        /**
+         * Checksum the consumed bytes, keep the unread ones and read more until the given number of bytes is unread or
+         * the body ends. Reads stop as soon as enough bytes came in: on a pipe or a socket that the writer keeps open,
+         * another read would wait for data that never comes.
+         */
+        private void fill(int needed) throws IOException {
+            int position = raw.position();
+            crc.update(raw.duplicate().flip());
+            raw.position(position).compact();
+            try {
+                while (raw.position() < needed) {
+                    int read;
+                    if (inflater == null) {
+                        read = input.read(raw);
+                    } else if (inflater.finished()) {
+                        read = -1;
+                    } else {
+                        if (inflater.needsInput()) {
+                            deflated.compact();
+                            int compressedRead = input.read(deflated);
+                            deflated.flip();
+                            if (compressedRead < 0) {
+                                throw new IOException("truncated tree, deflated body cut short.");
+                            }
+                            inflater.setInput(deflated);
+                        }
+                        read = inflater.inflate(raw);
+                    }
+                    if (read < 0) {
+                        break;
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("corrupt tree, " + e.getMessage(), e);
+            } finally {
+                raw.flip();
+            }
+        }
+
+        /**
+         * Check the CRC32 that follows the last key.
+         */
+        private void finish() throws IOException {
+            if (raw.remaining() < Integer.BYTES) {
+                fill(Integer.BYTES);
+            }
+            int position = raw.position();
+            crc.update(raw.duplicate().flip());
+            raw.position(position);
+            if (raw.remaining() < Integer.BYTES || raw.getInt() != (int) crc.getValue()) {
+                throw new IOException("corrupt tree, checksum mismatch.");
+            }
+            if (inflater != null) {
+                // the deflated stream must end right after the checksum: no byte may be inflated before the end.
+                fill(raw.remaining() + 1);
+                boolean ended = inflater.finished() && !raw.hasRemaining();
+                inflater.end();
+                if (!ended) {
+                    throw new IOException("corrupt tree, deflated body does not end after the checksum.");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package greed.datastruct;
+
+/**
+ * Observer of the operations of an {@link AVLTree}, installed with {@link AVLTree#setListener(TreeListener)}.
+ * A tree without listener checks one field per operation and calls nothing: no clock read, no allocation.
+ * Callbacks run on the thread of the operation, inside it, so they must be cheap. {@link TreeMetrics} is the
+ * implementation that aggregates them into counters and histograms.
+ */
+public interface TreeListener {
+
+    /**
+     * Rebalancing cases of {@link AVLTree}: LL, RR, LR and RL after an insert, R0, R1, R-1, L0, L1 and L-1 after a delete.
+     * A single case is one rotation, a double case (LR, RL, R-1 and L1) two. A WAVL tree reports its rotations as the
+     * AVL case of the same shape.
+     */
+    enum Rotation {
+        LL, RR, LR, RL, R0, R1, R_MINUS_1, L0, L1, L_MINUS_1
+    }
+
+    /**
+     * Called for every rebalancing, before the rotations.
+     * @param rotation case being applied.
+     */
+    default void onRotation(Rotation rotation) {
+    }
+
+    /**
+     * Called after every insert.
+     * @param inserted true if the key was inserted, false if it was already in the tree.
+     * @param pathLength number of nodes visited from the root.
+     * @param height height of the tree after the insert, for a WAVL tree the rank of the root plus one (an upper bound).
+     * @param nanos duration of the insert, rebalancing included.
+     */
+    default void onInsert(boolean inserted, int pathLength, int height, long nanos) {
+    }
+
+    /**
+     * Called after every delete.
+     * @param deleted true if the key was removed, false if it was not in the tree.
+     * @param pathLength number of nodes visited from the root.
+     * @param height height of the tree after the delete, for a WAVL tree the rank of the root plus one (an upper bound).
+     * @param nanos duration of the delete, rebalancing included.
+     */
+    default void onDelete(boolean deleted, int pathLength, int height, long nanos) {
+    }
+
+    /**
+     * Called after every point search ({@link AVLTree#search(int)} and {@link AVLTree#contains(int)}).
+     * @param found true if the key is in the tree.
+     * @param pathLength number of nodes visited from the root.
+     * @param nanos duration of the search.
+     */
+    default void onSearch(boolean found, int pathLength, long nanos) {
+    }
+}
@@ -0,0 +1,169 @@
+package greed.datastruct;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator for {@link TreeServer}: several connections send pipelined batches of random commands for a fixed
+ * time, then the throughput and the latency percentiles are printed. The latency of a request is the round trip of
+ * its batch. Without --host or --unix it starts its own server on a Unix domain socket.
+ */
+public final class TreeLoadGenerator {
+
+    private TreeLoadGenerator() {
+    }
+
+    /**
+     * Run a load test.
+     * @param args "--connections=N" (4), "--pipeline=N" commands per batch (16), "--seconds=N" (10),
+     * "--keys=N" key space (1000000), "--writes=N" percentage of inserts and deletes (20),
+     * "--host=H --port=N" or "--unix=PATH" server address, an in-process server if absent.
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = 4;
+        int pipeline = 16;
+        int seconds = 10;
+        int keys = 1_000_000;
+        int writes = 20;
+        String host = null;
+        int port = 0;
+        Path unix = null;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(value);
+            } else if (arg.startsWith("--pipeline=")) {
+                pipeline = Integer.parseInt(value);
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(value);
+            } else if (arg.startsWith("--keys=")) {
+                keys = Integer.parseInt(value);
+            } else if (arg.startsWith("--writes=")) {
+                writes = Integer.parseInt(value);
+            } else if (arg.startsWith("--host=")) {
+                host = value;
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--unix=")) {
+                unix = Path.of(value);
+            } else {
+                throw new IllegalArgumentException("unknown argument " + arg);
+            }
+        }
+        TreeServer server = null;
+        SocketAddress address;
+        if (host != null) {
+            address = new InetSocketAddress(host, port);
+        } else if (unix != null) {
+            address = UnixDomainSocketAddress.of(unix);
+        } else {
+            Path directory = Files.createTempDirectory("tree-server");
+            directory.toFile().deleteOnExit();
+            server = TreeServer.start(UnixDomainSocketAddress.of(directory.resolve("socket")));
+            address = server.getAddress();
+        }
+        try {
+            preload(address, keys);
+            Histogram latency = run(address, connections, pipeline, TimeUnit.SECONDS.toNanos(seconds), keys, writes);
+            System.out.printf("connections=%d pipeline=%d writes=%d%% requests=%d qps=%.0f%n", connections, pipeline,
+                    writes, latency.getCount(), latency.getCount() / (double) seconds);
+            System.out.printf("latency us: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f%n",
+                    latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                    latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    /**
+     * Insert every other key of the key space, so searches hit half of the time.
+     */
+    private static void preload(SocketAddress address, int keys) throws IOException {
+        try (TreeClient client = TreeClient.connect(address)) {
+            List<String> batch = new ArrayList<>();
+            batch.add("Initialize()");
+            for (int key = 0; key < keys; key += 2) {
+                batch.add("Insert(" + key + ")");
+                if (batch.size() == 1000) {
+                    client.pipeline(batch);
+                    batch.clear();
+                }
+            }
+            client.pipeline(batch);
+        }
+    }
+
+    /**
+     * Run the connections until the deadline and merge their latencies.
+     */
+    private static Histogram run(SocketAddress address, int connections, int pipeline, long nanos, int keys, int writes)
+            throws Exception {
+        Histogram[] latencies = new Histogram[connections];
+        Throwable[] failures = new Throwable[connections];
+        Thread[] threads = new Thread[connections];
+        long deadline = System.nanoTime() + nanos;
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            latencies[c] = new Histogram();
+            threads[c] = new Thread(() -> {
+                try {
+                    load(address, pipeline, deadline, keys, writes, new Random(connection), latencies[connection]);
+                } catch (Throwable e) {
+                    failures[connection] = e;
+                }
+            }, "load-" + c);
+            threads[c].start();
+        }
+        Histogram latency = new Histogram();
+        for (int c = 0; c < connections; c++) {
+            threads[c].join();
+            if (failures[c] != null) {
+                throw new IllegalStateException("connection " + c + " failed", failures[c]);
+            }
+            latency.add(latencies[c]);
+        }
+        return latency;
+    }
+
+    private static void load(SocketAddress address, int pipeline, long deadline, int keys, int writes, Random random,
+                             Histogram latency) throws IOException {
+        try (TreeClient client = TreeClient.connect(address)) {
+            List<String> batch = new ArrayList<>(pipeline);
+            while (System.nanoTime() < deadline) {
+                batch.clear();
+                for (int i = 0; i < pipeline; i++) {
+                    int key = random.nextInt(keys);
+                    int op = random.nextInt(100);
+                    if (op < writes / 2) {
+                        batch.add("Insert(" + key + ")");
+                    } else if (op < writes) {
+                        batch.add("Delete(" + key + ")");
+                    } else if (op < 90) {
+                        batch.add("Search(" + key + ")");
+                    } else {
+                        batch.add("Search(" + key + "," + (key + 20) + ")");
+                    }
+                }
+                long start = System.nanoTime();
+                List<String> responses = client.pipeline(batch);
+                long roundTrip = System.nanoTime() - start;
+                for (String response : responses) {
+                    if (response.startsWith("ERROR")) {
+                        throw new IllegalStateException(response);
+                    }
+                    latency.record(roundTrip);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package greed.datastruct;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link TreeListener} that aggregates the operations of a tree: rotations per rebalancing case, operation counts,
+ * latency and path length histograms per operation, and the tree height. {@link #snapshot()} exports everything as an
+ * immutable {@link Snapshot}. Recording allocates nothing.
+ * Not thread-safe, like the tree it listens to: take snapshots from the thread that uses the tree.
+ */
+public final class TreeMetrics implements TreeListener {
+
+    private static final Rotation[] ROTATIONS = Rotation.values();
+
+    private final long[] rotations;
+    private final Histogram insertNanos;
+    private final Histogram deleteNanos;
+    private final Histogram searchNanos;
+    private final Histogram insertPathLength;
+    private final Histogram deletePathLength;
+    private final Histogram searchPathLength;
+    private long inserted;
+    private long deleted;
+    private long found;
+    private int height;
+    private int maxHeight;
+
+    /**
+     * Construct empty metrics.
+     */
+    public TreeMetrics() {
+        this.rotations = new long[ROTATIONS.length];
+        this.insertNanos = new Histogram();
+        this.deleteNanos = new Histogram();
+        this.searchNanos = new Histogram();
+        this.insertPathLength = new Histogram();
+        this.deletePathLength = new Histogram();
+        this.searchPathLength = new Histogram();
+    }
+
+    @Override
+    public void onRotation(Rotation rotation) {
+        rotations[rotation.ordinal()]++;
+    }
+
+    @Override
+    public void onInsert(boolean inserted, int pathLength, int height, long nanos) {
+        if (inserted) {
+            this.inserted++;
+        }
+        insertNanos.record(nanos);
+        insertPathLength.record(pathLength);
+        updateHeight(height);
+    }
+
+    @Override
+    public void onDelete(boolean deleted, int pathLength, int height, long nanos) {
+        if (deleted) {
+            this.deleted++;
+        }
+        deleteNanos.record(nanos);
+        deletePathLength.record(pathLength);
+        updateHeight(height);
+    }
+
+    @Override
+    public void onSearch(boolean found, int pathLength, long nanos) {
+        if (found) {
+            this.found++;
+        }
+        searchNanos.record(nanos);
+        searchPathLength.record(pathLength);
+    }
+
+    private void updateHeight(int height) {
+        this.height = height;
+        if (height > maxHeight) {
+            maxHeight = height;
+        }
+    }
+
+    /**
+     * Copy of the metrics recorded so far.
+     * @return immutable snapshot.
+     */
+    public Snapshot snapshot() {
+        Map<Rotation, Long> rotationCounts = new EnumMap<>(Rotation.class);
+        for (Rotation rotation : ROTATIONS) {
+            rotationCounts.put(rotation, rotations[rotation.ordinal()]);
+        }
+        return new Snapshot(rotationCounts, inserted, deleted, found, height, maxHeight,
+                insertNanos.copy(), deleteNanos.copy(), searchNanos.copy(),
+                insertPathLength.copy(), deletePathLength.copy(), searchPathLength.copy());
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(rotations, 0);
+        inserted = 0;
+        deleted = 0;
+        found = 0;
+        maxHeight = height;
+        insertNanos.reset();
+        deleteNanos.reset();
+        searchNanos.reset();
+        insertPathLength.reset();
+        deletePathLength.reset();
+        searchPathLength.reset();
+    }
+
+    /**
+     * Metrics of a tree at one point in time. The histograms are copies, later operations do not change them.
+     */
+    public static final class Snapshot {
+
+        private final Map<Rotation, Long> rotations;
+        private final long inserted;
+        private final long deleted;
+        private final long found;
+        private final int height;
+        private final int maxHeight;
+        private final Histogram insertNanos;
+        private final Histogram deleteNanos;
+        private final Histogram searchNanos;
+        private final Histogram insertPathLength;
+        private final Histogram deletePathLength;
+        private final Histogram searchPathLength;
+
+        private Snapshot(Map<Rotation, Long> rotations, long inserted, long deleted, long found, int height, int maxHeight,
+                         Histogram insertNanos, Histogram deleteNanos, Histogram searchNanos,
+                         Histogram insertPathLength, Histogram deletePathLength, Histogram searchPathLength) {
+            this.rotations = rotations;
+            this.inserted = inserted;
+            this.deleted = deleted;
+            this.found = found;
+            this.height = height;
+            this.maxHeight = maxHeight;
+            this.insertNanos = insertNanos;
+            this.deleteNanos = deleteNanos;
+            this.searchNanos = searchNanos;
+            this.insertPathLength = insertPathLength;
+            this.deletePathLength = deletePathLength;
+            this.searchPathLength = searchPathLength;
+        }
+
+        /**
+         * Number of rebalancings of one case.
+         * @param rotation rebalancing case.
+         * @return number of times the case was applied.
+         */
+        public long getRotations(Rotation rotation) {
+            return rotations.get(rotation);
+        }
+
+        /**
+         * Number of rebalancings of all cases.
+         * @return total number of rebalancings.
+         */
+        public long getTotalRotations() {
+            long total = 0;
+            for (long count : rotations.values()) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Inserts that added a key, {@link #getInsertNanos()} counts all inserts.
+         * @return number of keys inserted.
+         */
+        public long getInserted() {
+            return inserted;
+        }
+
+        /**
+         * Deletes that removed a key, {@link #getDeleteNanos()} counts all deletes.
+         * @return number of keys deleted.
+         */
+        public long getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * Searches that found their key, {@link #getSearchNanos()} counts all searches.
+         * @return number of successful searches.
+         */
+        public long getFound() {
+            return found;
+        }
+
+        /**
+         * Height of the tree after the last insert or delete.
+         * @return height of the tree.
+         */
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Greatest height the tree reached.
+         * @return maximum height.
+         */
+        public int getMaxHeight() {
+            return maxHeight;
+        }
+
+        /**
+         * Latencies of every insert, in nanoseconds.
+         * @return copy of the histogram.
+         */
+        public Histogram getInsertNanos() {
+            return insertNanos.copy();
+        }
+
+        /**
+         * Latencies of every delete, in nanoseconds.
+         * @return copy of the histogram.
+         */
+        public Histogram getDeleteNanos() {
+            return deleteNanos.copy();
+        }
+
+        /**
+         * Latencies of every search, in nanoseconds.
+         * @return copy of the histogram.
+         */
+        public Histogram getSearchNanos() {
+            return searchNanos.copy();
+        }
+
+        /**
+         * Number of nodes visited by every insert.
+         * @return copy of the histogram.
+         */
+        public Histogram getInsertPathLength() {
+            return insertPathLength.copy();
+        }
+
+        /**
+         * Number of nodes visited by every delete.
+         * @return copy of the histogram.
+         */
+        public Histogram getDeletePathLength() {
+            return deletePathLength.copy();
+        }
+
+        /**
+         * Number of nodes visited by every search.
+         * @return copy of the histogram.
+         */
+        public Histogram getSearchPathLength() {
+            return searchPathLength.copy();
+        }
+
+        @Override
+        public String toString() {
+            return "height=" + height + " maxHeight=" + maxHeight + " rotations=" + rotations + System.lineSeparator()
+                    + "insert: inserted=" + inserted + " nanos[" + insertNanos + "] path[" + insertPathLength + "]" + System.lineSeparator()
+                    + "delete: deleted=" + deleted + " nanos[" + deleteNanos + "] path[" + deletePathLength + "]" + System.lineSeparator()
+                    + "search: found=" + found + " nanos[" + searchNanos + "] path[" + searchPathLength + "]";
+        }
+    }
+}
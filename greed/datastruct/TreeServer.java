@@ -0,0 +1,300 @@
+package greed.datastruct;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static greed.datastruct.CommandDecoder.OP_DELETE;
+import static greed.datastruct.CommandDecoder.OP_INITIALIZE;
+import static greed.datastruct.CommandDecoder.OP_INSERT;
+import static greed.datastruct.CommandDecoder.OP_SEARCH;
+
+/**
+ * Server of one tree over a local TCP port or a Unix domain socket, speaking the command language of
+ * {@link Main#decodeAndRunCommands(String, AVLTree, java.io.BufferedWriter)}.
+ * <p>
+ * Requests are commands, one per line. Every request gets one response line, in order: the result of a search as in
+ * output.txt, OK for the other commands, or ERROR and the message of a command that failed. Clients may pipeline:
+ * the server runs every complete request it has read, then writes all their responses back at once.
+ * <p>
+ * The tree is a {@link ConcurrentAVLTree}: one writer at a time, searches run lock-free in parallel with each other.
+ * Initialize() swaps in a new empty tree for every connection. Each connection is served by its own thread, a virtual
+ * thread when the runtime has them (Java 21), a platform thread otherwise.
+ */
+public final class TreeServer implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] OK = {'O', 'K'};
+    private static final byte[] NULL = {'N', 'U', 'L', 'L'};
+    private static final byte[] ERROR = {'E', 'R', 'R', 'O', 'R', ' '};
+
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final ExecutorService connections;
+    private final Set<SocketChannel> channels;
+    private final Thread acceptor;
+    private volatile ConcurrentAVLTree tree;
+
+    /**
+     * private constructor, {@link #start(SocketAddress)} is to start a server.
+     */
+    private TreeServer(ServerSocketChannel server, ConcurrentAVLTree tree) throws IOException {
+        this.server = server;
+        this.address = server.getLocalAddress();
+        this.connections = connectionExecutor();
+        this.channels = ConcurrentHashMap.newKeySet();
+        this.tree = tree;
+        this.acceptor = new Thread(this::accept, "tree-server-acceptor");
+        this.acceptor.setDaemon(true);
+    }
+
+    /**
+     * Serve an empty tree.
+     * @param address TCP address (port 0 picks a free port) or {@link UnixDomainSocketAddress}, the socket file must not exist.
+     * @return running server.
+     * @throws IOException if the address cannot be bound.
+     */
+    public static TreeServer start(SocketAddress address) throws IOException {
+        return start(address, ConcurrentAVLTree.initialize());
+    }
+
+    /**
+     * Serve an existing tree, until a client sends Initialize().
+     * @param address TCP address (port 0 picks a free port) or {@link UnixDomainSocketAddress}, the socket file must not exist.
+     * @param tree tree to be served.
+     * @return running server.
+     * @throws IOException if the address cannot be bound.
+     */
+    public static TreeServer start(SocketAddress address, ConcurrentAVLTree tree) throws IOException {
+        ServerSocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        TreeServer server = new TreeServer(channel, tree);
+        server.acceptor.start();
+        return server;
+    }
+
+    /**
+     * Address the server listens on, with the actual port if it was started on port 0.
+     * @return bound address.
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Tree currently served, replaced by every Initialize().
+     * @return current tree.
+     */
+    public ConcurrentAVLTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Stop accepting, disconnect every client and remove the socket file of a Unix domain socket.
+     * @throws IOException if the socket file cannot be removed.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        connections.shutdown();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            Files.deleteIfExists(unix.getPath());
+        }
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                if (channel.getLocalAddress() instanceof InetSocketAddress) {
+                    // responses are written once per batch, there is nothing to coalesce.
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                channels.add(channel);
+                try {
+                    connections.execute(new Connection(channel)::serve);
+                } catch (RejectedExecutionException e) {
+                    channels.remove(channel);
+                    channel.close();
+                }
+            }
+        } catch (IOException e) {
+            // closed.
+        }
+    }
+
+    /**
+     * One virtual thread per connection on Java 21 and later, a cached pool of daemon threads before.
+     */
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "tree-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * State of one client: its decoder and the buffers of its requests and responses.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final CommandDecoder decoder;
+        private byte[] out;
+        private int outLength;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.decoder = new CommandDecoder(true);
+            this.out = new byte[BUFFER_SIZE];
+        }
+
+        private void serve() {
+            try (channel) {
+                ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+                byte[] bytes = in.array();
+                while (channel.read(in) >= 0) {
+                    int length = in.position();
+                    int lineStart = 0;
+                    for (int i = 0; i < length; i++) {
+                        if (bytes[i] == '\n') {
+                            runLine(bytes, lineStart, i);
+                            lineStart = i + 1;
+                        }
+                    }
+                    if (lineStart == 0 && length == bytes.length) {
+                        write(ERROR);
+                        write(("request longer than " + BUFFER_SIZE + " bytes.\n").getBytes(StandardCharsets.US_ASCII));
+                        flush();
+                        return;
+                    }
+                    flush();
+                    System.arraycopy(bytes, lineStart, bytes, 0, length - lineStart);
+                    in.position(length - lineStart);
+                }
+            } catch (IOException e) {
+                // client gone or server closed.
+            } finally {
+                channels.remove(channel);
+            }
+        }
+
+        /**
+         * Run one request and buffer its response.
+         */
+        private void runLine(byte[] line, int from, int to) {
+            int op;
+            try {
+                op = decoder.decode(line, from, to);
+            } catch (RuntimeException e) {
+                write(ERROR);
+                write(String.valueOf(e.getMessage()).getBytes(StandardCharsets.US_ASCII));
+                writeByte('\n');
+                return;
+            }
+            int key = decoder.key;
+            ConcurrentAVLTree current = tree;
+            switch (op) {
+                case OP_INITIALIZE -> {
+                    tree = ConcurrentAVLTree.initialize();
+                    write(OK);
+                }
+                case OP_INSERT -> {
+                    current.insert(key);
+                    write(OK);
+                }
+                case OP_DELETE -> {
+                    current.delete(key);
+                    write(OK);
+                }
+                case OP_SEARCH -> {
+                    if (current.search(key) != null) {
+                        writeInt(key);
+                    } else {
+                        write(NULL);
+                    }
+                }
+                default -> {
+                    List<Integer> keys = current.searchRange(key, decoder.bigKey);
+                    if (keys.isEmpty()) {
+                        write(NULL);
+                    }
+                    for (int i = 0; i < keys.size(); i++) {
+                        if (i > 0) {
+                            writeByte(',');
+                        }
+                        writeInt(keys.get(i));
+                    }
+                }
+            }
+            writeByte('\n');
+        }
+
+        private void writeInt(int value) {
+            ensure(CommandReplayer.MAX_INT_CHARS);
+            outLength = CommandReplayer.formatInt(out, outLength, value);
+        }
+
+        private void writeByte(char c) {
+            ensure(1);
+            out[outLength++] = (byte) c;
+        }
+
+        private void write(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, out, outLength, bytes.length);
+            outLength += bytes.length;
+        }
+
+        /**
+         * Grow the response buffer, the responses of one batch are written at once.
+         */
+        private void ensure(int length) {
+            if (outLength + length > out.length) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, outLength + length));
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(out, 0, outLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            outLength = 0;
+            if (out.length > BUFFER_SIZE) {
+                // one huge range result must not pin its buffer for the life of the connection.
+                out = new byte[BUFFER_SIZE];
+            }
+        }
+    }
+}
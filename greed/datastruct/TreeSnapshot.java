@@ -0,0 +1,61 @@
+package greed.datastruct;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Snapshot of an {@link AVLTree} as written by {@link DurableAVLTree#checkpoint()}: the tree in the compact format of
+ * {@link TreeCodec}, tagged with the sequence number of the last log record it includes.
+ * <p>
+ * Layout: magic (8 bytes), sequence (8 bytes), then the tree as written by {@link AVLTree#writeTo(WritableByteChannel)}.
+ */
+final class TreeSnapshot {
+
+    private static final long MAGIC = 0x41564C534E415032L; // "AVLSNAP2"
+    private static final int HEADER_BYTES = 16;
+
+    // tree and sequence of a snapshot read back.
+    final AVLTree tree;
+    final long sequence;
+
+    private TreeSnapshot(AVLTree tree, long sequence) {
+        this.tree = tree;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Write a snapshot of a tree.
+     * @param output channel receiving the snapshot.
+     * @param tree tree to be saved.
+     * @param sequence sequence number of the last log record applied to the tree.
+     * @throws IOException if the channel cannot be written.
+     */
+    static void write(WritableByteChannel output, AVLTree tree, long sequence) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC).putLong(sequence).flip();
+        while (header.hasRemaining()) {
+            output.write(header);
+        }
+        tree.writeTo(output);
+    }
+
+    /**
+     * Read a snapshot back and rebuild its tree.
+     * @param input channel positioned at the start of a snapshot.
+     * @return the tree and the sequence number of the snapshot.
+     * @throws IOException if the snapshot is truncated or corrupt.
+     */
+    static TreeSnapshot read(ReadableByteChannel input) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (input.read(header) < 0) {
+                throw new IOException("truncated tree snapshot.");
+            }
+        }
+        if (header.getLong(0) != MAGIC) {
+            throw new IOException("not a tree snapshot.");
+        }
+        return new TreeSnapshot(AVLTree.readFrom(input), header.getLong(8));
+    }
+}
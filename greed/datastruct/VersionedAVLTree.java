@@ -0,0 +1,86 @@
+package greed.datastruct;
+
+import greed.datastruct.common.SearchTree;
+
+import java.util.List;
+
+/**
+ * Mutable front end of {@link PersistentAVLTree}. Every write builds the next version by path-copying and publishes it
+ * through a volatile field, writers are serialised by the monitor of the tree. Reads never lock: they run on the
+ * version current when they start, and {@link #snapshot()} hands out that version in O(1) as a consistent view that
+ * later writes cannot change.
+ */
+public class VersionedAVLTree implements SearchTree {
+
+    private volatile PersistentAVLTree current;
+
+    /**
+     * private constructor, {@link #initialize() initialize()} is to initialize a tree.
+     */
+    private VersionedAVLTree(PersistentAVLTree current) {
+        this.current = current;
+    }
+
+    /**
+     * Construct an empty tree.
+     * @return empty tree.
+     */
+    public static VersionedAVLTree initialize() {
+        return new VersionedAVLTree(PersistentAVLTree.empty());
+    }
+
+    /**
+     * Construct a tree starting from a version, eg -: a snapshot of another tree.
+     * @param version first version of the tree.
+     * @return tree holding the keys of the version.
+     */
+    public static VersionedAVLTree of(PersistentAVLTree version) {
+        return new VersionedAVLTree(version);
+    }
+
+    /**
+     * Current version, in O(1). It never changes, later writes build new versions.
+     * @return current version of the tree.
+     */
+    public PersistentAVLTree snapshot() {
+        return current;
+    }
+
+    /**
+     * Number of keys in the current version.
+     * @return number of keys.
+     */
+    public int size() {
+        return current.size();
+    }
+
+    @Override
+    public synchronized boolean insert(int key) {
+        PersistentAVLTree next = current.insert(key);
+        if (next == current) {
+            return false;
+        }
+        current = next;
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(int key) {
+        PersistentAVLTree next = current.delete(key);
+        if (next == current) {
+            return false;
+        }
+        current = next;
+        return true;
+    }
+
+    @Override
+    public Integer search(int key) {
+        return current.search(key);
+    }
+
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        return current.searchRange(smallKey, bigKey);
+    }
+}
@@ -0,0 +1,21 @@
+package greed.datastruct;
+
+/**
+ * Node of a weak AVL {@link AVLTree}, see {@link AVLTree.Balancing#WAVL}. Its height field holds its rank plus one,
+ * promoted and demoted by the rebalancing of the tree instead of recalculated from the children: setLeft, setRight and
+ * the rotations only refresh the subtree size.
+ */
+final class WAVLNode extends AVLNode {
+
+    WAVLNode() {
+        super();
+    }
+
+    /**
+     * calculate subtree size of the node from its children, the rank is left alone.
+     */
+    @Override
+    public void recalculate() {
+        calculateSize();
+    }
+}
@@ -0,0 +1,328 @@
+package greed.datastruct;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Binary append-only log of the inserts and deletes of a {@link DurableAVLTree}.
+ * <p>
+ * Records are 5 bytes (operation, key) and numbered by a sequence: the log header holds the sequence of the state the
+ * log starts from, record i of the log has sequence base + i. Records are grouped: they pile up in a buffer and are
+ * written as one frame (length, CRC32, records) once groupCommitSize records are pending or the first of them is one
+ * flush interval old, so a batch costs one write. The flush interval is forceIntervalNanos, or 10 ms if the log forces
+ * every frame or never forces. Written frames are forced to disk with {@link FileChannel#force(boolean)} once
+ * forceIntervalNanos passed since the last force. A daemon flusher thread applies the same two deadlines to a log that
+ * receives no more records, so every record is written within about two flush intervals and, unless the log never
+ * forces, forced within about two force intervals after that: this bounds how much a crash can lose without paying a
+ * force per write. Recovery replays the frames and cuts the log at the first torn or corrupt frame.
+ * Not thread-safe apart from the flusher: records are appended by one thread at a time.
+ */
+final class WriteAheadLog implements Closeable {
+
+    static final byte INSERT = 1;
+    static final byte DELETE = 2;
+
+    private static final long MAGIC = 0x41564C57414C3031L; // "AVLWAL01"
+    private static final int HEADER_BYTES = 16;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 5;
+    /**
+     * Largest group commit, so that any frame fits in the recovery buffer.
+     */
+    static final int MAX_GROUP_COMMIT = 1 << 16;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final long DEFAULT_FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final FileChannel channel;
+    private final ByteBuffer batch;
+    private final int groupCommitSize;
+    // < 0: never force, 0: force every frame.
+    private final long forceIntervalNanos;
+    // longest time a record stays in the batch.
+    private final long flushIntervalNanos;
+    private final CRC32 crc;
+    private long sequence;
+    private int pending;
+    private long firstPending;
+    private boolean unforced;
+    private long lastForce;
+    private Thread flusher;
+    private volatile boolean closed;
+    // failure of the flusher, reported by the next append or sync.
+    private IOException flushFailure;
+
+    private WriteAheadLog(FileChannel channel, int groupCommitSize, long forceIntervalNanos) {
+        this.channel = channel;
+        this.groupCommitSize = groupCommitSize;
+        this.forceIntervalNanos = forceIntervalNanos;
+        this.flushIntervalNanos = forceIntervalNanos > 0 ? forceIntervalNanos : DEFAULT_FLUSH_INTERVAL_NANOS;
+        this.batch = ByteBuffer.allocateDirect(FRAME_HEADER_BYTES + groupCommitSize * RECORD_BYTES);
+        this.batch.position(FRAME_HEADER_BYTES);
+        this.crc = new CRC32();
+        this.lastForce = System.nanoTime();
+    }
+
+    /**
+     * Open a log, replaying the records newer than a snapshot. A new log starts at the snapshot sequence.
+     * @param file log file, created if missing.
+     * @param snapshotSequence sequence of the snapshot the records are replayed on, older records are skipped.
+     * @param inserted receives the keys of replayed inserts.
+     * @param deleted receives the keys of replayed deletes.
+     * @param groupCommitSize records per frame, 1 to {@link #MAX_GROUP_COMMIT}.
+     * @param forceIntervalNanos least time between two forces, 0 to force every frame, negative to never force.
+     * @return log positioned after its last valid record, with its flusher running.
+     * @throws IOException if the file cannot be read or written, or the log starts after the snapshot.
+     */
+    static WriteAheadLog open(Path file, long snapshotSequence, IntConsumer inserted, IntConsumer deleted,
+                              int groupCommitSize, long forceIntervalNanos) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            WriteAheadLog log = new WriteAheadLog(channel, groupCommitSize, forceIntervalNanos);
+            if (channel.size() < HEADER_BYTES) {
+                log.reset(snapshotSequence);
+            } else {
+                log.replay(file, snapshotSequence, inserted, deleted);
+                if (log.sequence < snapshotSequence) {
+                    // the snapshot holds every record of the log and more, the log is obsolete.
+                    log.reset(snapshotSequence);
+                }
+            }
+            log.startFlusher(file);
+            return log;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sequence of the last record appended.
+     * @return last sequence.
+     */
+    long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Append a record, writing the pending frame if this record completes it or the first pending record is one flush
+     * interval old.
+     * @param operation {@link #INSERT} or {@link #DELETE}.
+     * @param key key inserted or deleted.
+     * @throws IOException if the log cannot be written, now or by the flusher.
+     */
+    synchronized void append(byte operation, int key) throws IOException {
+        checkFlusher();
+        long now = System.nanoTime();
+        if (pending == 0) {
+            firstPending = now;
+        }
+        batch.put(operation).putInt(key);
+        sequence++;
+        if (++pending == groupCommitSize || now - firstPending >= flushIntervalNanos) {
+            writeFrame();
+            forceIfDue(now);
+        }
+    }
+
+    /**
+     * Write the pending records and force the log, every record appended so far is durable on return.
+     * @throws IOException if the log cannot be written, now or by the flusher.
+     */
+    synchronized void sync() throws IOException {
+        checkFlusher();
+        writeFrame();
+        force();
+    }
+
+    /**
+     * Drop every record, the log restarts at the given sequence. Called once a snapshot holds all the records.
+     * @param baseSequence sequence of the state the log starts from.
+     * @throws IOException if the log cannot be written.
+     */
+    synchronized void reset(long baseSequence) throws IOException {
+        batch.clear().position(FRAME_HEADER_BYTES);
+        pending = 0;
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putLong(MAGIC).putLong(baseSequence).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.position(HEADER_BYTES);
+        channel.force(true);
+        sequence = baseSequence;
+        unforced = false;
+        lastForce = System.nanoTime();
+    }
+
+    /**
+     * Stop the flusher, write the pending records and force them to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            boolean interrupted = false;
+            while (flusher.isAlive()) {
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Start the daemon thread that writes and forces the records of an idle log. It parks instead of sleeping: an
+     * interrupt during a write would close the channel.
+     */
+    private void startFlusher(Path file) {
+        flusher = new Thread(() -> {
+            while (!closed) {
+                LockSupport.parkNanos(this, flushIntervalNanos / 2);
+                if (closed) {
+                    break;
+                }
+                try {
+                    flushIfDue();
+                } catch (IOException e) {
+                    synchronized (this) {
+                        flushFailure = e;
+                    }
+                    break;
+                }
+            }
+        }, "wal-flusher-" + file.getFileName());
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Write the pending records once the first of them is one flush interval old, and force the written frames once
+     * the force interval passed.
+     */
+    private synchronized void flushIfDue() throws IOException {
+        long now = System.nanoTime();
+        if (pending > 0 && now - firstPending >= flushIntervalNanos) {
+            writeFrame();
+        }
+        if (unforced) {
+            forceIfDue(now);
+        }
+    }
+
+    private void checkFlusher() throws IOException {
+        if (flushFailure != null) {
+            throw new IOException("the log could not be written in the background.", flushFailure);
+        }
+    }
+
+    private void forceIfDue(long now) throws IOException {
+        if (forceIntervalNanos >= 0 && now - lastForce >= forceIntervalNanos) {
+            force();
+        }
+    }
+
+    private void writeFrame() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        int length = batch.position() - FRAME_HEADER_BYTES;
+        crc.reset();
+        crc.update(batch.duplicate().position(FRAME_HEADER_BYTES).limit(batch.position()));
+        batch.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        batch.clear().position(FRAME_HEADER_BYTES);
+        pending = 0;
+        unforced = true;
+    }
+
+    private void force() throws IOException {
+        if (unforced) {
+            channel.force(false);
+            unforced = false;
+        }
+        lastForce = System.nanoTime();
+    }
+
+    /**
+     * Read the frames of the log, pass the records newer than the snapshot on and truncate the log after the last
+     * valid frame.
+     */
+    private void replay(Path file, long snapshotSequence, IntConsumer inserted, IntConsumer deleted) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        CRC32 check = new CRC32();
+        channel.read(buffer, 0);
+        buffer.flip();
+        if (buffer.getLong() != MAGIC) {
+            throw new IOException(file + " is not a write-ahead log.");
+        }
+        sequence = buffer.getLong();
+        if (sequence > snapshotSequence) {
+            throw new IOException(file + " starts at record " + sequence + ", after the snapshot at record " + snapshotSequence + ".");
+        }
+        long validEnd = HEADER_BYTES;
+        long filePosition = HEADER_BYTES;
+        while (true) {
+            if (buffer.remaining() < FRAME_HEADER_BYTES || buffer.remaining() < FRAME_HEADER_BYTES + buffer.getInt(buffer.position())) {
+                // refill from the start of the frame.
+                buffer.clear();
+                long readPosition = filePosition;
+                int read;
+                while (buffer.hasRemaining() && (read = channel.read(buffer, readPosition)) > 0) {
+                    readPosition += read;
+                }
+                buffer.flip();
+                if (buffer.remaining() < FRAME_HEADER_BYTES) {
+                    break;
+                }
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length <= 0 || length % RECORD_BYTES != 0 || length > MAX_GROUP_COMMIT * RECORD_BYTES
+                    || buffer.remaining() < FRAME_HEADER_BYTES + length) {
+                break;
+            }
+            int start = buffer.position() + FRAME_HEADER_BYTES;
+            check.reset();
+            check.update(buffer.duplicate().position(start).limit(start + length));
+            if ((int) check.getValue() != buffer.getInt(buffer.position() + 4)) {
+                break;
+            }
+            for (int at = start; at < start + length; at += RECORD_BYTES) {
+                if (++sequence > snapshotSequence) {
+                    int key = buffer.getInt(at + 1);
+                    if (buffer.get(at) == INSERT) {
+                        inserted.accept(key);
+                    } else {
+                        deleted.accept(key);
+                    }
+                }
+            }
+            buffer.position(start + length);
+            filePosition += FRAME_HEADER_BYTES + length;
+            validEnd = filePosition;
+        }
+        // anything after the last valid frame is a torn write.
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+    }
+}
@@ -2,11 +2,19 @@ package greed.datastruct.common;
 
 import greed.datastruct.AVLNode;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.Stack;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Data structure for Binary Search Tree. This class is presented as abstract class because actual instances of BST is not needed.
@@ -14,184 +22,359 @@ import java.util.function.Supplier;
  * @param <T> generic parameter for any concrete node type that inherited from abstract {@link Node greed.datastruct.common.Node.class}. {@link AVLNode greed.datastruct.AVLNode}
  *            is an example for a value T can take.
  */
-public abstract class BinarySearchTree<T extends Node<T>> {
+public abstract class BinarySearchTree<T extends Node<T>> implements SearchTree {
 
     // root of the BST.
     private T root;
     //factory to create concrete classes.
     private final Supplier<? extends T> ctor;
+    // path from the root recorded by the last insert or delete, reused so updates do not allocate.
+    private T[] path;
+    private int pathLength;
+    // changes on every structural update, a cursor walking a stale path finds its key again from the root.
+    private int modCount;
 
     /**
-     * Standard BST insertion operation. Implemented as recursive function in {@link #insert(int, Node, Stack)}.
+     * Standard BST insertion operation. Implemented as an iterative walk that records the path in {@link #getPathNode(int)}.
+     * Allocates nothing but the new node.
      *
      * @param key key of the new node to be inserted (Do not support duplicate keys).
-     * @return stack that trace the path from root to the newly inserted node.
+     * @return true if the key was inserted, false if it was already in the tree.
      */
-    public Stack<T> insert(int key) {
-        Stack<T> stk = new Stack<>();
-        this.root = insert(key, this.root, stk);
-        return stk;
+    @Override
+    public boolean insert(int key) {
+        pathLength = 0;
+        T parent = null;
+        T node = this.root;
+        while (node != null) {
+            if (key == node.getKey()) {
+                return false;
+            }
+            pushPath(node);
+            parent = node;
+            node = key < node.getKey() ? node.getLeft() : node.getRight();
+        }
+        T newNode = ctor.get();
+        newNode.setKey(key);
+        if (parent == null) {
+            this.root = newNode;
+        } else if (key < parent.getKey()) {
+            parent.setLeft(newNode);
+        } else {
+            parent.setRight(newNode);
+        }
+        modCount++;
+        pushPath(newNode);
+        return true;
     }
 
     /**
-     * Standard BST deletion. Implemented as recursive function in {@link #delete(int, Node, Stack)}.
+     * Standard BST deletion. Implemented as an iterative walk that records the path in {@link #getPathNode(int)}.
+     * A node with two children takes the key of its in-order predecessor and the predecessor node is removed instead.
      *
      * @param key key of the node to be deleted (Will do nothing if the key is not in the tree).
-     * @return stack that trace the path from root to the deleted node.
+     * @return true if the key was removed, false if it was not in the tree.
+     */
+    @Override
+    public boolean delete(int key) {
+        T node = find(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Walk down to a key, recording the nodes above it in {@link #getPathNode(int)}.
+     *
+     * @param key key to be found.
+     * @return node holding the key, null if it is not in the tree.
+     */
+    protected T find(int key) {
+        pathLength = 0;
+        T node = this.root;
+        while (node != null && key != node.getKey()) {
+            pushPath(node);
+            node = key < node.getKey() ? node.getLeft() : node.getRight();
+        }
+        return node;
+    }
+
+    /**
+     * Remove the node returned by the last {@link #find(int)}, the second half of {@link #delete(int)}.
+     * The recorded path is extended down to the parent of the node actually removed.
+     *
+     * @param node node holding the key to be deleted.
+     * @return node actually removed, the in-order predecessor if the node had two children.
+     */
+    protected T unlink(T node) {
+        modCount++;
+        if (node.getLeft() != null && node.getRight() != null) {
+            pushPath(node);
+            T predecessor = node.getLeft();
+            while (predecessor.getRight() != null) {
+                pushPath(predecessor);
+                predecessor = predecessor.getRight();
+            }
+            moveKey(predecessor, node);
+            node = predecessor;
+        }
+        T child = node.getLeft() != null ? node.getLeft() : node.getRight();
+        if (pathLength == 0) {
+            this.root = child;
+        } else {
+            T parent = path[pathLength - 1];
+            if (parent.getLeft() == node) {
+                parent.setLeft(child);
+            } else {
+                parent.setRight(child);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Move the key of the in-order predecessor into the node it replaces on delete. Node types carrying more per-key
+     * data than the key move it here as well.
+     *
+     * @param from predecessor, about to be removed.
+     * @param to node whose key is deleted.
      */
-    public Stack<T> delete(int key) {
-        Stack<T> stk = new Stack<>();
-        delete(key, this.root, stk);
-        return stk;
+    protected void moveKey(T from, T to) {
+        to.setKey(from.getKey());
     }
 
     /**
-     * Standard BST search. Implemented as recursive function in {@link #search(int, Node)} (int, greed.datastruct.common.Node, Stack)}.
+     * Standard BST search. Implemented as an iterative walk, like {@link #contains(int)}.
      *
      * @param key key of the node to be searched (Will return null if the node is not found)
      * @return returns the key if present in the tree else NULL.
      */
+    @Override
     public Integer search(int key) {
-        T searchedNode = search(key, this.root);
-        return searchedNode != null ? searchedNode.getKey() : null;
+        return contains(key) ? key : null;
     }
 
     /**
-     * Standard BST range search. Implemented as recursive function in {@link #searchRange(int, int, Node, List)} (int, greed.datastruct.common.Node, Stack)}.
+     * Membership test, same walk as {@link #search(int)} without boxing the result.
+     * The loop reads the child fields directly, it has no call to inline and no recursion.
      *
-     * @param smallKey lower bound of the range.
-     * @param bigKey   upper bound of the key.
-     * @return returns keys that are in the range smallKey ≤key ≤bigKey.
+     * @param key key to be searched.
+     * @return true if the key is in the tree.
      */
-    public List<Integer> searchRange(int smallKey, int bigKey) {
-        List<Integer> keys = new ArrayList<>();
-        searchRange(smallKey, bigKey, this.root, keys);
-        return keys;
+    public boolean contains(int key) {
+        T node = this.root;
+        while (node != null) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return true;
+            }
+            node = key < nodeKey ? node.left : node.right;
+        }
+        return false;
     }
 
     /**
-     * To string is override to pre order traversal.
+     * Smallest key greater than or equal to the given key, in O(height).
      *
-     * @return string containing tree visualization.
+     * @param key key to be compared.
+     * @return the ceiling key, null if every key is smaller.
      */
-    @Override
-    public String toString() {
-        return traversePreOrder(this.root);
+    public Integer ceiling(int key) {
+        T node = this.root;
+        T best = null;
+        while (node != null) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return key;
+            }
+            if (key < nodeKey) {
+                best = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return best == null ? null : best.getKey();
     }
 
     /**
-     * Standard BST insert as a recursive function.
+     * Greatest key less than or equal to the given key, in O(height).
      *
-     * @param key  key of the new node to be inserted (Do not support duplicate keys).
-     * @param root root of the subtree.
-     * @param stk  stack for retracing path.
-     * @return root of the subtree after insertion.
+     * @param key key to be compared.
+     * @return the floor key, null if every key is greater.
      */
-    private T insert(int key, T root, Stack<T> stk) {
-        if (root != null) {
-            stk.push(root);
-        }
-        if (root == null) {
-            root = ctor.get();
-            root.setKey(key);
-            stk.push(root);
-            return root;
-        } else if (key < root.getKey()) {
-            root.setLeft(insert(key, root.getLeft(), stk));
-        } else {
-            root.setRight(insert(key, root.getRight(), stk));
+    public Integer floor(int key) {
+        T node = this.root;
+        T best = null;
+        while (node != null) {
+            int nodeKey = node.getKey();
+            if (key == nodeKey) {
+                return key;
+            }
+            if (key > nodeKey) {
+                best = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
         }
-        return root;
+        return best == null ? null : best.getKey();
     }
 
     /**
-     * Standard BST delete as a recursive function.
+     * Smallest key strictly greater than the given key, in O(height).
      *
-     * @param key  key of the new node to be inserted (Do not support duplicate keys).
-     * @param root root of the subtree.
-     * @param stk  stack for retracing path.
-     * @return root of the subtree after deletion.
+     * @param key key to be compared.
+     * @return the next key, null if there is none.
      */
-    private T delete(int key, T root, Stack<T> stk) {
+    public Integer higher(int key) {
+        return key == Integer.MAX_VALUE ? null : ceiling(key + 1);
+    }
 
-        if (root == null) {
+    /**
+     * Greatest key strictly less than the given key, in O(height).
+     *
+     * @param key key to be compared.
+     * @return the previous key, null if there is none.
+     */
+    public Integer lower(int key) {
+        return key == Integer.MIN_VALUE ? null : floor(key - 1);
+    }
+
+    /**
+     * Smallest key of the tree, in O(height).
+     *
+     * @return the first key, null if the tree is empty.
+     */
+    public Integer first() {
+        T node = this.root;
+        if (node == null) {
             return null;
-        } else {
-            if (key < root.getKey()) {
-                stk.push(root);
-                root.setLeft(delete(key, root.getLeft(), stk));
-            } else if (key > root.getKey()) {
-                stk.push(root);
-                root.setRight(delete(key, root.getRight(), stk));
-            } else {
-                if (root.getLeft() == null) {
-                    return root.getRight();
-                } else if (root.getRight() == null) {
-                    return root.getLeft();
-                } else {
-                    root.setKey(getMax(root.getLeft()));
-                    root.setLeft(delete(root.getKey(), root.getLeft(), stk));
-                }
-            }
         }
-        return root;
+        while (node.left != null) {
+            node = node.left;
+        }
+        return node.getKey();
     }
 
     /**
-     * Standard BST search as a recursive function.
+     * Greatest key of the tree, in O(height).
      *
-     * @param key  key to be searched.
-     * @param root root of the subtree.
-     * @return returns the key if present in the tree else NULL.
+     * @return the last key, null if the tree is empty.
      */
-    private T search(int key, T root) {
-        if (root == null || key == root.getKey()) {
-            return root;
-        } else if (key < root.getKey()) {
-            return search(key, root.getLeft());
-        } else {
-            return search(key, root.getRight());
+    public Integer last() {
+        T node = this.root;
+        if (node == null) {
+            return null;
         }
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node.getKey();
+    }
+
+    /**
+     * Finger into the tree for navigation near the previous position, see {@link TreeCursor}.
+     *
+     * @return cursor on no key, to be positioned by a seek.
+     */
+    public TreeCursor cursor() {
+        return new Finger();
+    }
+
+    /**
+     * Standard BST range search. Implemented on top of {@link #forEachInRange(int, int, IntConsumer)}.
+     *
+     * @param smallKey lower bound of the range.
+     * @param bigKey   upper bound of the key.
+     * @return returns keys that are in the range smallKey ≤key ≤bigKey.
+     */
+    @Override
+    public List<Integer> searchRange(int smallKey, int bigKey) {
+        List<Integer> keys = new ArrayList<>();
+        forEachInRange(smallKey, bigKey, keys::add);
+        return keys;
     }
 
     /**
-     * Standard BST range search as a recursive function.
+     * Lazy range search. Keys are produced one by one in ascending order by an in-order walk with an explicit stack,
+     * nothing is boxed and nothing is materialised. The tree must not be modified while iterating.
      *
      * @param smallKey lower bound of the range.
      * @param bigKey   upper bound of the range.
-     * @param root     root of the subtree.
-     * @param keys     returns keys that are in the range smallKey ≤key ≤bigKey.
+     * @return iterator over the keys in the range smallKey ≤key ≤bigKey.
      */
-    private void searchRange(int smallKey, int bigKey, T root, List<Integer> keys) {
-        if (root == null) {
-            return;
+    public PrimitiveIterator.OfInt rangeIterator(int smallKey, int bigKey) {
+        return new RangeIterator(smallKey, bigKey);
+    }
+
+    /**
+     * Lazy range search as a sequential stream, see {@link #rangeIterator(int, int)}. Short-circuiting operations
+     * such as limit or findFirst stop the walk early.
+     *
+     * @param smallKey lower bound of the range.
+     * @param bigKey   upper bound of the range.
+     * @return ordered stream of the keys in the range smallKey ≤key ≤bigKey.
+     */
+    public IntStream rangeStream(int smallKey, int bigKey) {
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(rangeIterator(smallKey, bigKey),
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Pass every key in the range to the given action, in ascending order, without boxing.
+     *
+     * @param smallKey lower bound of the range.
+     * @param bigKey   upper bound of the range.
+     * @param action   receives the keys in the range smallKey ≤key ≤bigKey.
+     * @return number of keys passed to the action.
+     */
+    public int forEachInRange(int smallKey, int bigKey, IntConsumer action) {
+        return forEachInRange(smallKey, bigKey, 0, Integer.MAX_VALUE, action);
+    }
+
+    /**
+     * Pass one page of the keys in the range to the given action, in ascending order, without boxing.
+     * The walk stops as soon as the page is full.
+     *
+     * @param smallKey lower bound of the range.
+     * @param bigKey   upper bound of the range.
+     * @param offset   number of keys of the range to skip.
+     * @param limit    maximum number of keys to pass to the action.
+     * @param action   receives the keys of the page.
+     * @return number of keys passed to the action.
+     */
+    public int forEachInRange(int smallKey, int bigKey, int offset, int limit, IntConsumer action) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("offset and limit must not be negative.");
         }
-        if (smallKey < root.getKey()) {
-            searchRange(smallKey, bigKey, root.getLeft(), keys);
+        RangeIterator iterator = new RangeIterator(smallKey, bigKey);
+        for (int skipped = 0; skipped < offset && iterator.hasNext(); skipped++) {
+            iterator.nextInt();
         }
-        if (smallKey <= root.getKey() && bigKey >= root.getKey()) {
-            keys.add(root.getKey());
+        int count = 0;
+        while (count < limit && iterator.hasNext()) {
+            action.accept(iterator.nextInt());
+            count++;
         }
-        searchRange(smallKey, bigKey, root.getRight(), keys);
+        return count;
     }
 
     /**
-     * Get maximum of the given subtree
+     * To string is override to pre order traversal.
      *
-     * @param root root of the subtree.
-     * @return node with maximum key value in the subtree.
+     * @return string containing tree visualization.
      */
-    private int getMax(T root) {
-        int max = root.getKey();
-        while (root.getRight() != null) {
-            max = root.getRight().getKey();
-            root = root.getRight();
-        }
-        return max;
+    @Override
+    public String toString() {
+        return traversePreOrder(this.root);
     }
 
     /**
      * Standard preorder traversal. ( Used for validation of the implementation)
+     * Implemented with an explicit stack, so degenerate trees do not overflow the call stack.
      *
      * @param root root of the subtree.
      * @return string visualization of the BST.
@@ -205,44 +388,52 @@ public abstract class BinarySearchTree<T extends Node<T>> {
         StringBuilder sb = new StringBuilder();
         sb.append(root.getKey());
 
-        String pointerRight = "└──";
-        String pointerLeft = (root.getRight() != null) ? "├──" : "└──";
-
-        traverseNodes(sb, "", pointerLeft, root.getLeft(), root.getRight() != null);
-        traverseNodes(sb, "", pointerRight, root.getRight(), false);
-
+        ArrayDeque<Line> stack = new ArrayDeque<>();
+        pushChildren(stack, root, "");
+        while (!stack.isEmpty()) {
+            Line line = stack.pop();
+            T node = line.node;
+            sb.append("\n");
+            sb.append(line.padding);
+            sb.append(line.pointer);
+            sb.append(node.getKey());
+            pushChildren(stack, node, line.hasRightSibling ? line.padding + "│  " : line.padding + "   ");
+        }
         return sb.toString();
     }
 
     /**
-     * traverse nodes recursive function.
+     * Push the lines of the children of a node, the right one first so the left one is printed first.
      *
-     * @param sb              string builder
-     * @param padding         padding
-     * @param pointer         pointer
-     * @param node            root of subtree.
-     * @param hasRightSibling boolean
+     * @param stack   lines still to be printed.
+     * @param node    node whose children are pushed.
+     * @param padding padding of the lines of the children.
      */
-    private void traverseNodes(StringBuilder sb, String padding, String pointer, T node, boolean hasRightSibling) {
-        if (node != null) {
-            sb.append("\n");
-            sb.append(padding);
-            sb.append(pointer);
-            sb.append(node.getKey());
-
-            StringBuilder paddingBuilder = new StringBuilder(padding);
-            if (hasRightSibling) {
-                paddingBuilder.append("│  ");
-            } else {
-                paddingBuilder.append("   ");
-            }
+    private void pushChildren(ArrayDeque<Line> stack, T node, String padding) {
+        String pointerRight = "└──";
+        String pointerLeft = (node.right != null) ? "├──" : "└──";
+        if (node.right != null) {
+            stack.push(new Line(node.right, padding, pointerRight, false));
+        }
+        if (node.left != null) {
+            stack.push(new Line(node.left, padding, pointerLeft, node.right != null));
+        }
+    }
 
-            String paddingForBoth = paddingBuilder.toString();
-            String pointerRight = "└──";
-            String pointerLeft = (node.getRight() != null) ? "├──" : "└──";
+    /**
+     * One line of {@link #traversePreOrder(Node)} still to be printed.
+     */
+    private final class Line {
+        private final T node;
+        private final String padding;
+        private final String pointer;
+        private final boolean hasRightSibling;
 
-            traverseNodes(sb, paddingForBoth, pointerLeft, node.getLeft(), node.getRight() != null);
-            traverseNodes(sb, paddingForBoth, pointerRight, node.getRight(), false);
+        Line(T node, String padding, String pointer, boolean hasRightSibling) {
+            this.node = node;
+            this.padding = padding;
+            this.pointer = pointer;
+            this.hasRightSibling = hasRightSibling;
         }
     }
 
@@ -254,6 +445,8 @@ public abstract class BinarySearchTree<T extends Node<T>> {
     protected BinarySearchTree(Supplier<? extends T> ctor) {
         this.ctor = Objects.requireNonNull(ctor);
         this.root = null;
+        this.path = newPath(MAX_DEPTH);
+        this.pathLength = 0;
     }
 
     protected T getRoot() {
@@ -262,6 +455,377 @@ public abstract class BinarySearchTree<T extends Node<T>> {
 
     protected void setRoot(T root) {
         this.root = root;
+        modCount++;
+    }
+
+    /**
+     * Number of nodes recorded by the last {@link #insert(int)} or {@link #delete(int)}.
+     *
+     * @return length of the recorded path.
+     */
+    protected int getPathLength() {
+        return pathLength;
+    }
+
+    /**
+     * Node on the path recorded by the last update. Index 0 is the root. After an insert the last node is the new node,
+     * after a delete it is the parent of the removed node.
+     *
+     * @param index position on the path.
+     * @return node at the given position.
+     */
+    protected T getPathNode(int index) {
+        return path[index];
+    }
+
+    private void pushPath(T node) {
+        if (pathLength == path.length) {
+            // only a degenerate (unbalanced) tree gets this deep.
+            path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[pathLength++] = node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T[] newPath(int capacity) {
+        return (T[]) new Node<?>[capacity];
     }
 
+    /**
+     * In-order walk over a key range. The stack holds the nodes whose key and right subtree are still to be visited,
+     * its top is always the next key, so the walk never goes past bigKey.
+     */
+    private final class RangeIterator implements PrimitiveIterator.OfInt {
+        private final int smallKey;
+        private final int bigKey;
+        private T[] stack;
+        private int top;
+
+        RangeIterator(int smallKey, int bigKey) {
+            this.smallKey = smallKey;
+            this.bigKey = bigKey;
+            this.stack = newPath(MAX_DEPTH);
+            this.top = 0;
+            descend(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0 && stack[top - 1].getKey() <= bigKey;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T node = stack[--top];
+            descend(node.right);
+            return node.getKey();
+        }
+
+        /**
+         * Push the left spine of the subtree, skipping the nodes below smallKey.
+         */
+        private void descend(T node) {
+            while (node != null) {
+                if (node.getKey() < smallKey) {
+                    node = node.right;
+                } else {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = node;
+                    node = node.left;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@link TreeCursor} keeping the path from the root to its node, with the exclusive key bounds of the subtree at
+     * every level. A seek climbs to the first ancestor whose subtree can hold the target, then walks down from there.
+     */
+    private final class Finger implements TreeCursor {
+        private T[] stack;
+        private long[] low;
+        private long[] high;
+        // the cursor is on stack[top - 1], on no key if top is 0.
+        private int top;
+        // key of the current node, to find the position again after an update.
+        private int key;
+        private int expectedModCount;
+
+        Finger() {
+            this.stack = newPath(MAX_DEPTH);
+            this.low = new long[MAX_DEPTH];
+            this.high = new long[MAX_DEPTH];
+            this.expectedModCount = modCount;
+        }
+
+        @Override
+        public boolean isValid() {
+            relocate();
+            return top > 0;
+        }
+
+        @Override
+        public int key() {
+            relocate();
+            if (top == 0) {
+                throw new NoSuchElementException();
+            }
+            return key;
+        }
+
+        @Override
+        public boolean seekCeiling(int target) {
+            if (isStale()) {
+                top = 0;
+            }
+            return ceilingFrom(target);
+        }
+
+        @Override
+        public boolean seekFloor(int target) {
+            if (isStale()) {
+                top = 0;
+            }
+            return floorFrom(target);
+        }
+
+        @Override
+        public boolean seekFirst() {
+            expectedModCount = modCount;
+            top = 0;
+            T node = root;
+            if (node == null) {
+                return false;
+            }
+            push(node, Long.MIN_VALUE, Long.MAX_VALUE);
+            while (node.left != null) {
+                push(node.left, low[top - 1], node.getKey());
+                node = node.left;
+            }
+            return moveTo(top - 1);
+        }
+
+        @Override
+        public boolean seekLast() {
+            expectedModCount = modCount;
+            top = 0;
+            T node = root;
+            if (node == null) {
+                return false;
+            }
+            push(node, Long.MIN_VALUE, Long.MAX_VALUE);
+            while (node.right != null) {
+                push(node.right, node.getKey(), high[top - 1]);
+                node = node.right;
+            }
+            return moveTo(top - 1);
+        }
+
+        @Override
+        public boolean next() {
+            if (isStale() && top > 0) {
+                int current = key;
+                top = 0;
+                if (!ceilingFrom(current) || key != current) {
+                    // the key was deleted, the cursor already is on the one after it.
+                    return top > 0;
+                }
+            }
+            if (top == 0) {
+                return false;
+            }
+            T node = stack[top - 1];
+            if (node.right != null) {
+                push(node.right, node.getKey(), high[top - 1]);
+                node = node.right;
+                while (node.left != null) {
+                    push(node.left, low[top - 1], node.getKey());
+                    node = node.left;
+                }
+                return moveTo(top - 1);
+            }
+            // up to the first ancestor reached from its left subtree.
+            while (top > 1) {
+                T child = stack[--top];
+                if (stack[top - 1].left == child) {
+                    return moveTo(top - 1);
+                }
+            }
+            top = 0;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            if (isStale() && top > 0) {
+                int current = key;
+                top = 0;
+                if (!floorFrom(current) || key != current) {
+                    return top > 0;
+                }
+            }
+            if (top == 0) {
+                return false;
+            }
+            T node = stack[top - 1];
+            if (node.left != null) {
+                push(node.left, low[top - 1], node.getKey());
+                node = node.left;
+                while (node.right != null) {
+                    push(node.right, node.getKey(), high[top - 1]);
+                    node = node.right;
+                }
+                return moveTo(top - 1);
+            }
+            while (top > 1) {
+                T child = stack[--top];
+                if (stack[top - 1].right == child) {
+                    return moveTo(top - 1);
+                }
+            }
+            top = 0;
+            return false;
+        }
+
+        private boolean ceilingFrom(int target) {
+            int start = climb(target);
+            if (start < 0) {
+                return false;
+            }
+            int best = -1;
+            T node = stack[start];
+            while (true) {
+                int nodeKey = node.getKey();
+                if (target <= nodeKey) {
+                    best = top - 1;
+                    if (target == nodeKey || node.left == null) {
+                        break;
+                    }
+                    push(node.left, low[top - 1], nodeKey);
+                    node = node.left;
+                } else {
+                    if (node.right == null) {
+                        break;
+                    }
+                    push(node.right, nodeKey, high[top - 1]);
+                    node = node.right;
+                }
+            }
+            if (best < 0) {
+                // the whole subtree is below the target, the ceiling is the ancestor bounding it on the right.
+                best = ancestor(start, high[start]);
+            }
+            return moveTo(best);
+        }
+
+        private boolean floorFrom(int target) {
+            int start = climb(target);
+            if (start < 0) {
+                return false;
+            }
+            int best = -1;
+            T node = stack[start];
+            while (true) {
+                int nodeKey = node.getKey();
+                if (target >= nodeKey) {
+                    best = top - 1;
+                    if (target == nodeKey || node.right == null) {
+                        break;
+                    }
+                    push(node.right, nodeKey, high[top - 1]);
+                    node = node.right;
+                } else {
+                    if (node.left == null) {
+                        break;
+                    }
+                    push(node.left, low[top - 1], nodeKey);
+                    node = node.left;
+                }
+            }
+            if (best < 0) {
+                best = ancestor(start, low[start]);
+            }
+            return moveTo(best);
+        }
+
+        /**
+         * Pop the path up to the first node whose subtree bounds hold the target, the root if the path is empty.
+         *
+         * @return level to walk down from, -1 if the tree is empty.
+         */
+        private int climb(int target) {
+            while (top > 0 && (target <= low[top - 1] || target >= high[top - 1])) {
+                top--;
+            }
+            if (top == 0) {
+                if (root == null) {
+                    return -1;
+                }
+                push(root, Long.MIN_VALUE, Long.MAX_VALUE);
+            }
+            return top - 1;
+        }
+
+        /**
+         * Level of the ancestor of stack[level] holding a bound of its subtree, -1 if the bound is infinite.
+         */
+        private int ancestor(int level, long bound) {
+            for (int i = level - 1; i >= 0; i--) {
+                if (stack[i].getKey() == bound) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean moveTo(int level) {
+            top = level + 1;
+            if (level < 0) {
+                return false;
+            }
+            key = stack[level].getKey();
+            return true;
+        }
+
+        private void push(T node, long lower, long upper) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+                low = Arrays.copyOf(low, top * 2);
+                high = Arrays.copyOf(high, top * 2);
+            }
+            stack[top] = node;
+            low[top] = lower;
+            high[top] = upper;
+            top++;
+        }
+
+        /**
+         * Forget the path if the tree changed since it was walked.
+         *
+         * @return true if the tree changed.
+         */
+        private boolean isStale() {
+            if (expectedModCount == modCount) {
+                return false;
+            }
+            expectedModCount = modCount;
+            return true;
+        }
+
+        /**
+         * After an update, find the current key again, or the key after it if it was deleted.
+         */
+        private void relocate() {
+            if (isStale() && top > 0) {
+                int current = key;
+                top = 0;
+                ceilingFrom(current);
+            }
+        }
+    }
 }
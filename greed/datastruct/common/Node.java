@@ -10,6 +10,7 @@ import greed.datastruct.AVLNode;
  */
 public abstract class Node<N extends Node<N>> {
     private int key;
+    // getters are final, so walks over any node type stay monomorphic and inline.
     protected N left, right;
 
     public Node() {
@@ -26,7 +27,7 @@ public abstract class Node<N extends Node<N>> {
         this.right = right;
     }
 
-    public int getKey() {
+    public final int getKey() {
         return key;
     }
 
@@ -34,7 +35,7 @@ public abstract class Node<N extends Node<N>> {
         this.key = key;
     }
 
-    public N getLeft() {
+    public final N getLeft() {
         return left;
     }
 
@@ -42,7 +43,7 @@ public abstract class Node<N extends Node<N>> {
         this.left = left;
     }
 
-    public N getRight() {
+    public final N getRight() {
         return right;
     }
 
@@ -0,0 +1,50 @@
+package greed.datastruct.common;
+
+import java.util.List;
+
+/**
+ * Operations shared by every tree in this project, whatever the node representation is.
+ * {@link BinarySearchTree} implements it for trees made of {@link Node} objects.
+ */
+public interface SearchTree {
+
+    /**
+     * Greatest depth of the balanced trees of this project, the size of their path and walk stacks. An AVL tree of n
+     * keys is at most 1.44 log2(n) levels deep and a WAVL tree at most 2 log2(n), so no tree of fewer than 2^31 keys
+     * goes deeper than 62 levels, and a walk that does is on a corrupt or torn tree.
+     */
+    int MAX_DEPTH = 64;
+
+    /**
+     * Insert a key.
+     *
+     * @param key key to be inserted (Do not support duplicate keys).
+     * @return true if the key was inserted, false if it was already in the tree.
+     */
+    boolean insert(int key);
+
+    /**
+     * Delete a key.
+     *
+     * @param key key to be deleted (Will do nothing if the key is not in the tree).
+     * @return true if the key was removed, false if it was not in the tree.
+     */
+    boolean delete(int key);
+
+    /**
+     * Search a key.
+     *
+     * @param key key to be searched.
+     * @return returns the key if present in the tree else NULL.
+     */
+    Integer search(int key);
+
+    /**
+     * Range search.
+     *
+     * @param smallKey lower bound of the range.
+     * @param bigKey   upper bound of the range.
+     * @return returns keys that are in the range smallKey ≤key ≤bigKey in ascending order.
+     */
+    List<Integer> searchRange(int smallKey, int bigKey);
+}
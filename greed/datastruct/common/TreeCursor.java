@@ -0,0 +1,74 @@
+package greed.datastruct.common;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Finger into a search tree: a position on one of its keys that is remembered between calls, from
+ * {@link BinarySearchTree#cursor()}.
+ * <p>
+ * Stepping with {@link #next()} and {@link #previous()} takes amortised O(1), a seek close to the current key takes
+ * O(log d) in a balanced tree, d being the number of keys between them, instead of O(log n) from the root. A cursor
+ * survives updates of its tree: the next call finds its key again from the root, or the key after it if it was deleted.
+ * Not thread-safe, like the tree.
+ */
+public interface TreeCursor {
+
+    /**
+     * Whether the cursor is on a key. A new cursor, and a seek or a step that found nothing, is on no key.
+     *
+     * @return true if {@link #key()} can be called.
+     */
+    boolean isValid();
+
+    /**
+     * Key the cursor is on.
+     *
+     * @return current key.
+     * @throws NoSuchElementException if the cursor is on no key.
+     */
+    int key();
+
+    /**
+     * Move to the smallest key greater than or equal to the given key.
+     *
+     * @param key key to be sought.
+     * @return true if there is such a key, false if the cursor is now on no key.
+     */
+    boolean seekCeiling(int key);
+
+    /**
+     * Move to the greatest key less than or equal to the given key.
+     *
+     * @param key key to be sought.
+     * @return true if there is such a key, false if the cursor is now on no key.
+     */
+    boolean seekFloor(int key);
+
+    /**
+     * Move to the smallest key of the tree.
+     *
+     * @return false if the tree is empty.
+     */
+    boolean seekFirst();
+
+    /**
+     * Move to the greatest key of the tree.
+     *
+     * @return false if the tree is empty.
+     */
+    boolean seekLast();
+
+    /**
+     * Move to the next key in ascending order.
+     *
+     * @return false if the cursor was on the last key or on no key, it is now on no key.
+     */
+    boolean next();
+
+    /**
+     * Move to the previous key in ascending order.
+     *
+     * @return false if the cursor was on the first key or on no key, it is now on no key.
+     */
+    boolean previous();
+}